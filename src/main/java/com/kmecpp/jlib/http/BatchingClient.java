@@ -0,0 +1,361 @@
+package com.kmecpp.jlib.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reduces the number of requests sent by an {@link HttpClient} by combining
+ * small POST payloads to the same URL into a single request, and by sharing
+ * the response of identical GET requests which are in flight at the same
+ * time.
+ *
+ * <br>
+ * <br>
+ *
+ * Posted payloads are buffered per URL and joined with a separator, a new
+ * line by default, so the receiving endpoint must accept batched bodies. A
+ * batch is sent once it reaches the maximum number of payloads or bytes, or
+ * once the maximum delay has passed since its first payload. Every payload of
+ * a batch is completed with the response to the batch. The number of
+ * payloads which are buffered or in flight is bounded, and {@link #post(URL,
+ * byte[])} blocks once the bound is reached.
+ */
+public class BatchingClient implements Closeable {
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+	public static final int DEFAULT_MAX_BATCH_BYTES = 1 << 20;
+	public static final long DEFAULT_MAX_DELAY = 50;
+	public static final int DEFAULT_MAX_PENDING = 10000;
+
+	private static volatile BatchingClient defaultClient;
+
+	private final HttpClient client;
+	private final int maxBatchSize;
+	private final int maxBatchBytes;
+	private final long maxDelay;
+	private final int maxPending;
+	private final Semaphore permits;
+	private final ScheduledExecutorService timer;
+
+	private final HashMap<String, Batch> batches = new HashMap<>();
+	private final ConcurrentHashMap<String, CompletableFuture<HttpResponse>> inFlightGets = new ConcurrentHashMap<>();
+
+	private final AtomicLong posts = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong coalescedGets = new AtomicLong();
+
+	private volatile byte[] separator = { '\n' };
+	private volatile String contentType = "text/plain; charset=UTF-8";
+	private boolean closed;
+
+	/**
+	 * Creates a batching client with the default thresholds
+	 *
+	 * @param client
+	 *            the client used to send requests
+	 */
+	public BatchingClient(HttpClient client) {
+		this(client, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES, DEFAULT_MAX_DELAY, TimeUnit.MILLISECONDS, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * Creates a batching client
+	 *
+	 * @param client
+	 *            the client used to send requests
+	 * @param maxBatchSize
+	 *            the number of payloads at which a batch is sent
+	 * @param maxBatchBytes
+	 *            the number of bytes at which a batch is sent
+	 * @param maxDelay
+	 *            the longest a payload waits for its batch to fill up
+	 * @param unit
+	 *            the unit of the maximum delay
+	 * @param maxPending
+	 *            the maximum number of payloads which are buffered or in
+	 *            flight
+	 */
+	public BatchingClient(HttpClient client, int maxBatchSize, int maxBatchBytes, long maxDelay, TimeUnit unit, int maxPending) {
+		this.client = client;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchBytes = maxBatchBytes;
+		this.maxDelay = unit.toMillis(maxDelay);
+		this.maxPending = maxPending;
+		this.permits = new Semaphore(maxPending);
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "BatchingClient-Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Gets the batching client shared by the HTTP utilities of this library,
+	 * which sends requests with the {@link HttpClient#getDefault() default}
+	 * {@link HttpClient}
+	 *
+	 * @return the default batching client
+	 */
+	public static BatchingClient getDefault() {
+		BatchingClient client = defaultClient;
+		if (client == null) {
+			synchronized (BatchingClient.class) {
+				if ((client = defaultClient) == null) {
+					defaultClient = client = new BatchingClient(HttpClient.getDefault());
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Sets the bytes inserted between the payloads of a batch
+	 *
+	 * @param separator
+	 *            the separator
+	 * @return this client
+	 */
+	public BatchingClient setSeparator(String separator) {
+		this.separator = separator.getBytes(StandardCharsets.UTF_8);
+		return this;
+	}
+
+	/**
+	 * Sets the Content-Type of batch requests
+	 *
+	 * @param contentType
+	 *            the media type of the joined payloads
+	 * @return this client
+	 */
+	public BatchingClient setContentType(String contentType) {
+		this.contentType = contentType;
+		return this;
+	}
+
+	/**
+	 * Adds a payload to the batch for the given URL, blocking while the
+	 * maximum number of payloads are pending
+	 *
+	 * @param url
+	 *            the URL to post to
+	 * @param data
+	 *            the payload
+	 * @return a future completed with the response to the batch containing
+	 *         the payload
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for space
+	 */
+	public CompletableFuture<HttpResponse> post(URL url, byte[] data) throws InterruptedException {
+		permits.acquire();
+		return add(url, data);
+	}
+
+	public CompletableFuture<HttpResponse> post(URL url, String data) throws InterruptedException {
+		return post(url, data.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Adds a payload to the batch for the given URL if fewer than the maximum
+	 * number of payloads are pending
+	 *
+	 * @param url
+	 *            the URL to post to
+	 * @param data
+	 *            the payload
+	 * @return a future completed with the response to the batch containing
+	 *         the payload, or null if too many payloads are pending
+	 */
+	public CompletableFuture<HttpResponse> tryPost(URL url, byte[] data) {
+		return permits.tryAcquire() ? add(url, data) : null;
+	}
+
+	private CompletableFuture<HttpResponse> add(URL url, byte[] data) {
+		CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+		String key = url.toString();
+		Batch ready = null;
+		synchronized (batches) {
+			if (closed) {
+				permits.release();
+				future.completeExceptionally(new RejectedExecutionException("Client is closed"));
+				return future;
+			}
+			Batch batch = batches.get(key);
+			if (batch == null) {
+				final Batch created = batch = new Batch(url);
+				batches.put(key, batch);
+				batch.timeout = timer.schedule(() -> flush(key, created), maxDelay, TimeUnit.MILLISECONDS);
+			}
+			batch.add(data, future);
+			if (batch.futures.size() >= maxBatchSize || batch.body.size() >= maxBatchBytes) {
+				batches.remove(key);
+				batch.timeout.cancel(false);
+				ready = batch;
+			}
+		}
+		posts.incrementAndGet();
+		if (ready != null) {
+			send(ready);
+		}
+		return future;
+	}
+
+	private void flush(String key, Batch batch) {
+		synchronized (batches) {
+			if (batches.get(key) != batch) {
+				return; //Already sent because it filled up
+			}
+			batches.remove(key);
+		}
+		send(batch);
+	}
+
+	/**
+	 * Sends every buffered batch immediately
+	 */
+	public void flush() {
+		ArrayList<Batch> pending;
+		synchronized (batches) {
+			pending = new ArrayList<>(batches.values());
+			batches.clear();
+		}
+		for (Batch batch : pending) {
+			batch.timeout.cancel(false);
+			send(batch);
+		}
+	}
+
+	private void send(Batch batch) {
+		requests.incrementAndGet();
+		HttpRequest request = HttpRequest.post(batch.url, batch.body.toByteArray(), contentType);
+		client.sendAsync(request).whenComplete((response, error) -> {
+			permits.release(batch.futures.size());
+			for (CompletableFuture<HttpResponse> future : batch.futures) {
+				if (error != null) {
+					future.completeExceptionally(error);
+				} else {
+					future.complete(response);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sends a GET request, or joins an identical request which is already in
+	 * flight. Callers of a coalesced request share the same response, whose
+	 * body must therefore not be modified.
+	 *
+	 * @param url
+	 *            the URL to get
+	 * @return a future completed with the response
+	 */
+	public CompletableFuture<HttpResponse> get(URL url) {
+		String key = url.toString();
+		CompletableFuture<HttpResponse> shared = inFlightGets.get(key);
+		if (shared == null) {
+			CompletableFuture<HttpResponse> created = new CompletableFuture<>();
+			shared = inFlightGets.putIfAbsent(key, created);
+			if (shared == null) {
+				client.sendAsync(HttpRequest.get(url)).whenComplete((response, error) -> {
+					inFlightGets.remove(key, created);
+					if (error != null) {
+						created.completeExceptionally(error);
+					} else {
+						created.complete(response);
+					}
+				});
+				shared = created;
+			} else {
+				coalescedGets.incrementAndGet();
+			}
+		} else {
+			coalescedGets.incrementAndGet();
+		}
+		return shared.thenApply(Function.identity()); //Cancelling one caller must not cancel the others
+	}
+
+	/**
+	 * Gets the number of payloads accepted by {@link #post(URL, byte[])}
+	 *
+	 * @return the number of posted payloads
+	 */
+	public long getPosts() {
+		return posts.get();
+	}
+
+	/**
+	 * Gets the number of batch requests sent
+	 *
+	 * @return the number of batches
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Gets the number of GET requests which joined a request already in
+	 * flight instead of being sent
+	 *
+	 * @return the number of coalesced requests
+	 */
+	public long getCoalescedGets() {
+		return coalescedGets.get();
+	}
+
+	/**
+	 * Gets the number of payloads which are buffered or in flight
+	 *
+	 * @return the number of pending payloads
+	 */
+	public int getPending() {
+		return maxPending - permits.availablePermits();
+	}
+
+	/**
+	 * Sends every buffered batch and stops accepting new payloads
+	 */
+	@Override
+	public void close() {
+		synchronized (batches) {
+			closed = true;
+		}
+		flush();
+		timer.shutdown();
+	}
+
+	private final class Batch {
+
+		private final URL url;
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+		private ScheduledFuture<?> timeout;
+
+		private Batch(URL url) {
+			this.url = url;
+		}
+
+		private void add(byte[] data, CompletableFuture<HttpResponse> future) {
+			if (!futures.isEmpty()) {
+				body.write(separator, 0, separator.length);
+			}
+			body.write(data, 0, data.length);
+			futures.add(future);
+		}
+
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.kmecpp.jlib.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the body of a single response from a connection according to its
+ * framing. When the end of the body is reached the connection is handed back
+ * to its pool. Closing the stream early drains a small remainder so the
+ * connection can still be reused, and closes the connection otherwise.
+ */
+abstract class BodyInputStream extends InputStream {
+
+	private static final int MAX_DRAIN = 65536;
+
+	protected final HttpConnection connection;
+	protected final InputStream in;
+	private boolean finished;
+
+	BodyInputStream(HttpConnection connection, InputStream in) {
+		this.connection = connection;
+		this.in = in;
+	}
+
+	/**
+	 * Reads from the body, returning -1 once its end has been reached
+	 *
+	 * @param b
+	 *            the buffer
+	 * @param off
+	 *            the offset in the buffer
+	 * @param len
+	 *            the maximum number of bytes to read
+	 * @return the number of bytes read, or -1 at the end of the body
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected abstract int readBody(byte[] b, int off, int len) throws IOException;
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			return -1;
+		} else if (len == 0) {
+			return 0;
+		}
+		try {
+			int read = readBody(b, off, len);
+			if (read == -1) {
+				finish(true);
+			}
+			return read;
+		} catch (IOException e) {
+			finish(false);
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (finished) {
+			return;
+		}
+		byte[] buffer = new byte[4096];
+		int drained = 0;
+		try {
+			int read;
+			while (drained < MAX_DRAIN && (read = readBody(buffer, 0, buffer.length)) != -1) {
+				drained += read;
+			}
+			finish(drained < MAX_DRAIN);
+		} catch (IOException e) {
+			finish(false);
+		}
+	}
+
+	void finish(boolean reusable) {
+		if (!finished) {
+			finished = true;
+			connection.exchangeFinished(reusable);
+		}
+	}
+
+	static final class Fixed extends BodyInputStream {
+
+		private long remaining;
+
+		Fixed(HttpConnection connection, InputStream in, long length) {
+			super(connection, in);
+			this.remaining = length;
+		}
+
+		@Override
+		protected int readBody(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1) {
+				throw new EOFException("Connection closed with " + remaining + " bytes of the body remaining");
+			}
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(remaining, in.available());
+		}
+
+	}
+
+	static final class Chunked extends BodyInputStream {
+
+		private long remaining;
+		private boolean done;
+
+		Chunked(HttpConnection connection, InputStream in) {
+			super(connection, in);
+		}
+
+		@Override
+		protected int readBody(byte[] b, int off, int len) throws IOException {
+			if (done) {
+				return -1;
+			}
+			if (remaining == 0) {
+				if (!nextChunk()) {
+					return -1;
+				}
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1) {
+				throw new EOFException("Connection closed in the middle of a chunk");
+			}
+			remaining -= read;
+			if (remaining == 0) {
+				connection.readLine(); //CRLF after the chunk data
+			}
+			return read;
+		}
+
+		private boolean nextChunk() throws IOException {
+			String line = connection.readLine();
+			if (line == null) {
+				throw new EOFException("Connection closed before the last chunk");
+			}
+			int extension = line.indexOf(';');
+			String size = (extension == -1 ? line : line.substring(0, extension)).trim();
+			try {
+				remaining = Long.parseLong(size, 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size: " + line);
+			}
+			if (remaining < 0) {
+				throw new IOException("Invalid chunk size: " + line);
+			} else if (remaining == 0) {
+				String trailer;
+				while ((trailer = connection.readLine()) != null && !trailer.isEmpty()) {
+					//Trailers are not exposed
+				}
+				done = true;
+				return false;
+			}
+			return true;
+		}
+
+	}
+
+	static final class UntilClose extends BodyInputStream {
+
+		UntilClose(HttpConnection connection, InputStream in) {
+			super(connection, in);
+		}
+
+		@Override
+		protected int readBody(byte[] b, int off, int len) throws IOException {
+			return in.read(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			finish(false); //The connection cannot be reused anyway
+		}
+
+	}
+
+}
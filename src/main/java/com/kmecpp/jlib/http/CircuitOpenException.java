@@ -0,0 +1,25 @@
+package com.kmecpp.jlib.http;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown instead of sending a request when the circuit breaker of a
+ * {@link RequestPolicy} is open for the host of the request
+ */
+public class CircuitOpenException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final URL url;
+
+	public CircuitOpenException(URL url) {
+		super("Circuit breaker is open for URL: " + url);
+		this.url = url;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+}
@@ -0,0 +1,284 @@
+package com.kmecpp.jlib.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of persistent HTTP connections shared by one or more
+ * {@link HttpClient}s. The number of connections to each host is limited, and
+ * callers wait for a connection to be released once the limit is reached.
+ * Idle connections are reused most recently used first and are closed by a
+ * background thread once they have been idle for longer than the keep-alive
+ * time.
+ */
+public class ConnectionPool implements Closeable {
+
+	public static final int DEFAULT_MAX_PER_HOST = 8;
+	public static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+
+	private final int maxPerHost;
+	private final long keepAlive;
+	private final HashMap<Route, Host> hosts = new HashMap<>();
+	private final ScheduledExecutorService evictor;
+
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+
+	private boolean closed;
+
+	public ConnectionPool() {
+		this(DEFAULT_MAX_PER_HOST, DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a connection pool
+	 *
+	 * @param maxPerHost
+	 *            the maximum number of connections to each host, both leased
+	 *            and idle
+	 * @param keepAlive
+	 *            how long an idle connection is kept open
+	 * @param unit
+	 *            the unit of the keep-alive time
+	 */
+	public ConnectionPool(int maxPerHost, long keepAlive, TimeUnit unit) {
+		if (maxPerHost < 1) {
+			throw new IllegalArgumentException("maxPerHost must be positive: " + maxPerHost);
+		}
+		this.maxPerHost = maxPerHost;
+		this.keepAlive = unit.toMillis(keepAlive);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ConnectionPool-Evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, this.keepAlive / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Leases a connection to the given route, reusing an idle connection if
+	 * one is available and opening a new one if the host limit allows it
+	 *
+	 * @param route
+	 *            the route to connect to
+	 * @param connectTimeout
+	 *            the connect timeout in milliseconds
+	 * @param acquireTimeout
+	 *            how long to wait for a connection when the host limit has
+	 *            been reached, in milliseconds
+	 * @return the leased connection
+	 * @throws IOException
+	 *             if the pool is closed, no connection became available in
+	 *             time or a new connection could not be established
+	 */
+	HttpConnection acquire(Route route, int connectTimeout, long acquireTimeout) throws IOException {
+		long deadline = System.currentTimeMillis() + acquireTimeout;
+		while (true) {
+			HttpConnection idle = null;
+			synchronized (this) {
+				while (true) {
+					if (closed) {
+						throw new IOException("Connection pool is closed");
+					}
+					Host host = hosts.get(route);
+					if (host == null) {
+						hosts.put(route, host = new Host());
+					}
+					if (!host.idle.isEmpty()) {
+						idle = host.idle.pollFirst();
+						host.leased++;
+						break;
+					} else if (host.leased < maxPerHost) {
+						host.leased++;
+						break;
+					}
+
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new IOException("Timed out waiting for a connection to " + route);
+					}
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting for a connection to " + route, e);
+					}
+				}
+			}
+
+			if (idle != null) {
+				if (idle.isHealthy()) {
+					reused.incrementAndGet();
+					idle.lease();
+					return idle;
+				}
+				discard(idle);
+				continue;
+			}
+
+			try {
+				HttpConnection connection = HttpConnection.open(route, connectTimeout, this);
+				created.incrementAndGet();
+				connection.lease();
+				return connection;
+			} catch (IOException | RuntimeException e) {
+				synchronized (this) {
+					hosts.get(route).leased--;
+					notifyAll();
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Returns a leased connection to the pool. This is only called through
+	 * {@link HttpConnection#release(boolean)}, which guards against releasing
+	 * a connection twice.
+	 *
+	 * @param connection
+	 *            the connection
+	 * @param reusable
+	 *            whether the connection can carry another exchange
+	 */
+	void release(HttpConnection connection, boolean reusable) {
+		synchronized (this) {
+			Host host = hosts.get(connection.getRoute());
+			host.leased--;
+			notifyAll();
+			if (reusable && !closed) {
+				connection.setIdleSince(System.currentTimeMillis());
+				host.idle.addFirst(connection);
+				return;
+			}
+		}
+		connection.closeQuietly();
+	}
+
+	private void discard(HttpConnection connection) {
+		synchronized (this) {
+			hosts.get(connection.getRoute()).leased--;
+			notifyAll();
+		}
+		connection.closeQuietly();
+	}
+
+	/**
+	 * Closes every connection which has been idle for longer than the
+	 * keep-alive time. This is called periodically by the pool.
+	 *
+	 * @return the number of connections closed
+	 */
+	public int evictIdle() {
+		ArrayList<HttpConnection> expired = new ArrayList<>();
+		long cutoff = System.currentTimeMillis() - keepAlive;
+		synchronized (this) {
+			for (Iterator<Host> hostIterator = hosts.values().iterator(); hostIterator.hasNext();) {
+				Host host = hostIterator.next();
+				for (Iterator<HttpConnection> it = host.idle.descendingIterator(); it.hasNext();) {
+					HttpConnection connection = it.next();
+					if (connection.getIdleSince() > cutoff) {
+						break; //Remaining connections were used more recently
+					}
+					it.remove();
+					expired.add(connection);
+				}
+				if (host.idle.isEmpty() && host.leased == 0) {
+					hostIterator.remove();
+				}
+			}
+		}
+		for (HttpConnection connection : expired) {
+			connection.closeQuietly();
+		}
+		return expired.size();
+	}
+
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Gets the number of open connections, both leased and idle
+	 *
+	 * @return the number of connections
+	 */
+	public synchronized int getConnectionCount() {
+		int count = 0;
+		for (Host host : hosts.values()) {
+			count += host.leased + host.idle.size();
+		}
+		return count;
+	}
+
+	public synchronized int getIdleCount() {
+		int count = 0;
+		for (Host host : hosts.values()) {
+			count += host.idle.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the number of connections opened by this pool
+	 *
+	 * @return the number of new connections
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * Gets the number of times an idle connection was reused
+	 *
+	 * @return the number of reused connections
+	 */
+	public long getReused() {
+		return reused.get();
+	}
+
+	/**
+	 * Closes every idle connection and stops the eviction thread. Leased
+	 * connections are closed when they are released.
+	 */
+	@Override
+	public void close() {
+		ArrayList<HttpConnection> idle = new ArrayList<>();
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (Host host : hosts.values()) {
+				idle.addAll(host.idle);
+				host.idle.clear();
+			}
+			notifyAll();
+		}
+		evictor.shutdownNow();
+		for (HttpConnection connection : idle) {
+			connection.closeQuietly();
+		}
+	}
+
+	private static final class Host {
+
+		private final ArrayDeque<HttpConnection> idle = new ArrayDeque<>();
+		private int leased;
+
+	}
+
+}
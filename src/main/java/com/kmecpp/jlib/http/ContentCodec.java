@@ -0,0 +1,121 @@
+package com.kmecpp.jlib.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes response bodies according to their <code>Content-Encoding</code>
+ * and determines their charset from their <code>Content-Type</code>
+ */
+final class ContentCodec {
+
+	/**
+	 * The value of the <code>Accept-Encoding</code> header sent by default
+	 */
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private ContentCodec() {
+	}
+
+	/**
+	 * Wraps the body in a decoder for its content encoding. If the body is
+	 * decoded, the <code>Content-Encoding</code> and
+	 * <code>Content-Length</code> headers are removed since they no longer
+	 * describe the data returned by the stream.
+	 *
+	 * @param body
+	 *            the raw body
+	 * @param headers
+	 *            the response headers
+	 * @return the decoded body
+	 * @throws IOException
+	 *             if the encoding is unsupported or the gzip header is invalid
+	 */
+	static InputStream decode(InputStream body, Headers headers) throws IOException {
+		String encoding = headers.get("Content-Encoding");
+		if (encoding == null || encoding.trim().equalsIgnoreCase("identity")) {
+			return body;
+		}
+
+		encoding = encoding.trim().toLowerCase();
+		boolean gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+		if (!gzip && !encoding.equals("deflate")) {
+			body.close();
+			throw new IOException("Unsupported Content-Encoding: " + encoding);
+		}
+		headers.remove("Content-Encoding");
+		headers.remove("Content-Length");
+
+		PushbackInputStream in = new PushbackInputStream(body, 2);
+		int first = in.read();
+		if (first == -1) {
+			return in; //Empty bodies, such as responses to HEAD requests, have no header
+		}
+		int second = in.read();
+		if (second != -1) {
+			in.unread(second);
+		}
+		in.unread(first);
+
+		if (gzip) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+
+		//The spec requires a zlib wrapper, but some servers send raw deflate data
+		boolean zlib = (first & 0x0F) == 8 && second != -1 && ((first << 8) | second) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+
+		};
+	}
+
+	/**
+	 * Gets the charset named by the <code>charset</code> parameter of the
+	 * <code>Content-Type</code> header
+	 *
+	 * @param headers
+	 *            the response headers
+	 * @return the charset, or UTF-8 if none is specified or it is not
+	 *         supported
+	 */
+	static Charset getCharset(Headers headers) {
+		String type = headers.get("Content-Type");
+		if (type != null) {
+			for (String parameter : type.split(";")) {
+				int equals = parameter.indexOf('=');
+				if (equals != -1 && parameter.substring(0, equals).trim().equalsIgnoreCase("charset")) {
+					String name = parameter.substring(equals + 1).trim();
+					if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+						name = name.substring(1, name.length() - 1);
+					}
+					try {
+						return Charset.forName(name);
+					} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+						break;
+					}
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+}
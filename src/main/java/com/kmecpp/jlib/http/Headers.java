@@ -0,0 +1,159 @@
+package com.kmecpp.jlib.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered collection of HTTP header fields. Names are matched case
+ * insensitively and a name may appear more than once.
+ */
+public final class Headers {
+
+	private final ArrayList<String> names = new ArrayList<>();
+	private final ArrayList<String> values = new ArrayList<>();
+
+	public Headers() {
+	}
+
+	public Headers(Headers headers) {
+		names.addAll(headers.names);
+		values.addAll(headers.values);
+	}
+
+	/**
+	 * Adds a header field without replacing existing fields of the same name
+	 *
+	 * @param name
+	 *            the field name
+	 * @param value
+	 *            the field value
+	 * @return this instance
+	 */
+	public Headers add(String name, String value) {
+		names.add(name);
+		values.add(value);
+		return this;
+	}
+
+	/**
+	 * Replaces every field of the given name with a single field
+	 *
+	 * @param name
+	 *            the field name
+	 * @param value
+	 *            the field value
+	 * @return this instance
+	 */
+	public Headers set(String name, String value) {
+		remove(name);
+		return add(name, value);
+	}
+
+	/**
+	 * Removes every field of the given name
+	 *
+	 * @param name
+	 *            the field name
+	 * @return true if any field was removed
+	 */
+	public boolean remove(String name) {
+		boolean removed = false;
+		for (int i = names.size() - 1; i >= 0; i--) {
+			if (names.get(i).equalsIgnoreCase(name)) {
+				names.remove(i);
+				values.remove(i);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Gets the value of the first field with the given name
+	 *
+	 * @param name
+	 *            the field name
+	 * @return the value, or null if there is no such field
+	 */
+	public String get(String name) {
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equalsIgnoreCase(name)) {
+				return values.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the values of every field with the given name
+	 *
+	 * @param name
+	 *            the field name
+	 * @return the values in the order they were added
+	 */
+	public List<String> getAll(String name) {
+		List<String> result = Collections.emptyList();
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equalsIgnoreCase(name)) {
+				if (result.isEmpty()) {
+					result = new ArrayList<>(2);
+				}
+				result.add(values.get(i));
+			}
+		}
+		return result;
+	}
+
+	public void clear() {
+		names.clear();
+		values.clear();
+	}
+
+	public boolean contains(String name) {
+		return get(name) != null;
+	}
+
+	/**
+	 * Checks whether the given field contains the given comma separated
+	 * token, such as <code>close</code> in <code>Connection</code>
+	 *
+	 * @param name
+	 *            the field name
+	 * @param token
+	 *            the token to look for
+	 * @return true if any field of the given name lists the token
+	 */
+	public boolean hasToken(String name, String token) {
+		for (String value : getAll(name)) {
+			for (String part : value.split(",")) {
+				if (part.trim().equalsIgnoreCase(token)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	public String getName(int index) {
+		return names.get(index);
+	}
+
+	public String getValue(int index) {
+		return values.get(index);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < names.size(); i++) {
+			sb.append(names.get(i)).append(": ").append(values.get(i)).append("\r\n");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,588 @@
+package com.kmecpp.jlib.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.kmecpp.jlib.utils.IOUtil;
+import com.kmecpp.jlib.utils.SystemUtil;
+
+/**
+ * A minimal HTTP/1.1 client which keeps connections alive and reuses them
+ * through a {@link ConnectionPool}, so repeated requests to the same host do
+ * not pay for a new TCP (and TLS) handshake each time. Requests can be sent
+ * synchronously, asynchronously on a configurable executor, or pipelined on a
+ * single connection. Clients are thread safe and should be shared.
+ *
+ * <br>
+ * <br>
+ *
+ * TLS connections verify that the server certificate was issued for the
+ * requested host, like {@link javax.net.ssl.HttpsURLConnection}. Requests
+ * always connect directly, the <code>http.proxyHost</code> and
+ * <code>https.proxyHost</code> system properties are not used.
+ */
+public class HttpClient implements Closeable {
+
+	public static final int DEFAULT_TIMEOUT = 5000;
+	public static final int MAX_REDIRECTS = 5;
+
+	/**
+	 * The number of platform threads used for asynchronous requests when
+	 * virtual threads are not available
+	 */
+	public static final int DEFAULT_THREADS = 64;
+
+	private static volatile HttpClient defaultClient;
+
+	private final ConnectionPool pool;
+	private final boolean ownsPool;
+	private final Headers defaultHeaders = new Headers();
+
+	private volatile int connectTimeout = DEFAULT_TIMEOUT;
+	private volatile int readTimeout = DEFAULT_TIMEOUT;
+	private volatile long acquireTimeout = 2 * DEFAULT_TIMEOUT;
+	private volatile boolean followRedirects = true;
+	private volatile ResponseCache cache;
+	private volatile RequestPolicy policy;
+
+	private Executor executor;
+	private boolean ownsExecutor;
+
+	/**
+	 * Creates a client with its own connection pool
+	 */
+	public HttpClient() {
+		this(new ConnectionPool(), true);
+	}
+
+	/**
+	 * Creates a client which uses the given connection pool. The pool is not
+	 * closed when the client is closed.
+	 *
+	 * @param pool
+	 *            the connection pool
+	 */
+	public HttpClient(ConnectionPool pool) {
+		this(pool, false);
+	}
+
+	private HttpClient(ConnectionPool pool, boolean ownsPool) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		defaultHeaders.add("User-Agent", "Mozilla/5.0");
+		defaultHeaders.add("Accept", "*/*");
+		defaultHeaders.add("Accept-Encoding", ContentCodec.ACCEPT_ENCODING);
+	}
+
+	/**
+	 * Gets the client shared by the HTTP utilities of this library, which
+	 * retries failed idempotent requests and stops sending requests to hosts
+	 * that keep failing, as configured by a default {@link RequestPolicy}.
+	 * After 5 consecutive I/O errors or 502, 503 or 504 responses from a host,
+	 * requests to it fail with a {@link CircuitOpenException} for 10 seconds.
+	 *
+	 * @return the default client
+	 */
+	public static HttpClient getDefault() {
+		HttpClient client = defaultClient;
+		if (client == null) {
+			synchronized (HttpClient.class) {
+				if ((client = defaultClient) == null) {
+					defaultClient = client = new HttpClient().setPolicy(new RequestPolicy());
+				}
+			}
+		}
+		return client;
+	}
+
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	public HttpClient setConnectTimeout(long timeout, TimeUnit unit) {
+		this.connectTimeout = (int) unit.toMillis(timeout);
+		return this;
+	}
+
+	public HttpClient setReadTimeout(long timeout, TimeUnit unit) {
+		this.readTimeout = (int) unit.toMillis(timeout);
+		return this;
+	}
+
+	/**
+	 * Sets how long a request waits for a pooled connection once the
+	 * per-host limit has been reached
+	 *
+	 * @param timeout
+	 *            the timeout
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return this client
+	 */
+	public HttpClient setAcquireTimeout(long timeout, TimeUnit unit) {
+		this.acquireTimeout = unit.toMillis(timeout);
+		return this;
+	}
+
+	/**
+	 * Sets the executor asynchronous requests run on. By default each request
+	 * runs on its own virtual thread when the JVM supports them, and on a
+	 * shared pool of platform threads otherwise.
+	 *
+	 * @param executor
+	 *            the executor, which is not shut down when the client is
+	 *            closed
+	 * @return this client
+	 */
+	public synchronized HttpClient setExecutor(Executor executor) {
+		if (ownsExecutor) {
+			((ExecutorService) this.executor).shutdown();
+		}
+		this.executor = executor;
+		this.ownsExecutor = false;
+		return this;
+	}
+
+	public synchronized Executor getExecutor() {
+		if (executor == null) {
+			executor = SystemUtil.newVirtualThreadExecutor("HttpClient", DEFAULT_THREADS);
+			ownsExecutor = true;
+		}
+		return executor;
+	}
+
+	/**
+	 * Sets the cache used for GET requests sent with {@link #send(HttpRequest)}
+	 * and {@link #sendAsync(HttpRequest)}. Streamed and pipelined requests
+	 * always go to the network.
+	 *
+	 * @param cache
+	 *            the cache, or null to disable caching
+	 * @return this client
+	 */
+	public HttpClient setCache(ResponseCache cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	public ResponseCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the retry, hedging and circuit breaking policy for requests sent
+	 * with {@link #send(HttpRequest)} and {@link #sendAsync(HttpRequest)}.
+	 * Streamed and pipelined requests are always sent once.
+	 *
+	 * @param policy
+	 *            the policy, or null to send every request once
+	 * @return this client
+	 */
+	public HttpClient setPolicy(RequestPolicy policy) {
+		this.policy = policy;
+		return this;
+	}
+
+	public RequestPolicy getPolicy() {
+		return policy;
+	}
+
+	public HttpClient setFollowRedirects(boolean followRedirects) {
+		this.followRedirects = followRedirects;
+		return this;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public HttpResponse get(URL url) throws IOException {
+		return send(HttpRequest.get(url));
+	}
+
+	/**
+	 * Sends the request and reads the whole response body
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return the response
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public HttpResponse send(HttpRequest request) throws IOException {
+		return send(request, null);
+	}
+
+	private HttpResponse send(HttpRequest request, Call call) throws IOException {
+		RequestPolicy policy = this.policy;
+		if (policy == null) {
+			return sendCached(request, call);
+		}
+		return policy.send(request, new RequestPolicy.Transport() {
+
+			@Override
+			public HttpResponse send(HttpRequest attempt) throws IOException {
+				return sendCached(attempt, call);
+			}
+
+			@Override
+			public CompletableFuture<HttpResponse> sendAsync(HttpRequest attempt) {
+				Call hedge = submit(attempt, HttpClient.this::sendCached);
+				if (call != null) {
+					call.whenComplete((response, error) -> {
+						if (call.isCancelled()) {
+							hedge.cancel(true);
+						}
+					});
+				}
+				return hedge;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return call != null && call.isCancelled();
+			}
+
+		});
+	}
+
+	private HttpResponse sendCached(HttpRequest request, Call call) throws IOException {
+		ResponseCache cache = this.cache;
+		if (cache != null) {
+			return cache.send(request, network -> sendUncached(network, call));
+		}
+		return sendUncached(request, call);
+	}
+
+	private HttpResponse sendUncached(HttpRequest request, Call call) throws IOException {
+		Exchange exchange = execute(request, call);
+		return new HttpResponse(exchange.request.getUrl(), exchange.status, exchange.reason, exchange.headers, readBody(exchange));
+	}
+
+	/**
+	 * Sends the request and returns once the response head has been read,
+	 * leaving the body to be streamed from the connection
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return the response, which must be closed
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public StreamingResponse stream(HttpRequest request) throws IOException {
+		Exchange exchange = execute(request, null);
+		return new StreamingResponse(exchange.request.getUrl(), exchange.status, exchange.reason, exchange.headers, exchange.body);
+	}
+
+	/**
+	 * Sends the request on the executor of this client. Cancelling the
+	 * returned future aborts the request, closing its connection if the
+	 * request has already been sent.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return a future completed with the response
+	 */
+	public CompletableFuture<HttpResponse> sendAsync(HttpRequest request) {
+		return submit(request, this::send);
+	}
+
+	private Call submit(HttpRequest request, Sender sender) {
+		Call call = new Call();
+		try {
+			getExecutor().execute(() -> {
+				if (call.isDone()) {
+					return;
+				}
+				try {
+					call.complete(sender.send(request, call));
+				} catch (Throwable t) {
+					call.completeExceptionally(t);
+				}
+			});
+		} catch (RuntimeException e) {
+			call.completeExceptionally(e); //Rejected
+		}
+		return call;
+	}
+
+	/**
+	 * Sends the requests back to back on a single connection without waiting
+	 * for each response, and reads the responses in order. The requests must
+	 * be idempotent and go to the same host. If the server closes the
+	 * connection before every response has been received, the remaining
+	 * requests are sent again individually.
+	 *
+	 * @param requests
+	 *            the requests to pipeline
+	 * @return futures completed with the responses, in the order of the
+	 *         requests
+	 * @throws IllegalArgumentException
+	 *             if a request is not idempotent or the requests target
+	 *             different hosts
+	 */
+	public List<CompletableFuture<HttpResponse>> sendPipelined(List<HttpRequest> requests) {
+		ArrayList<CompletableFuture<HttpResponse>> futures = new ArrayList<>(requests.size());
+		if (requests.isEmpty()) {
+			return futures;
+		}
+		Route route = Route.of(requests.get(0).getUrl());
+		for (HttpRequest request : requests) {
+			if (!request.isIdempotent() || !route.equals(Route.of(request.getUrl()))) {
+				throw new IllegalArgumentException("Only idempotent requests to the same host can be pipelined: " + request);
+			}
+			futures.add(new CompletableFuture<HttpResponse>());
+		}
+		try {
+			getExecutor().execute(() -> pipeline(route, requests, futures));
+		} catch (RuntimeException e) {
+			for (CompletableFuture<HttpResponse> future : futures) {
+				future.completeExceptionally(e);
+			}
+		}
+		return futures;
+	}
+
+	private void pipeline(Route route, List<HttpRequest> requests, List<CompletableFuture<HttpResponse>> futures) {
+		int completed = 0;
+		HttpConnection connection = null;
+		try {
+			connection = pool.acquire(route, connectTimeout, acquireTimeout);
+			for (HttpRequest request : requests) {
+				connection.writeRequest(request, defaultHeaders, readTimeout);
+			}
+			connection.flush();
+
+			for (; completed < requests.size(); completed++) {
+				HttpRequest request = requests.get(completed);
+				Exchange exchange = readExchange(connection, request);
+				byte[] body = readBody(exchange);
+				HttpRequest redirect = getRedirect(request, exchange, 0);
+				if (redirect != null) {
+					futures.get(completed).complete(send(redirect));
+				} else {
+					futures.get(completed).complete(new HttpResponse(request.getUrl(), exchange.status, exchange.reason, exchange.headers, body));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			if (connection != null) {
+				connection.release(false);
+			}
+			if (completed == 0 && !(e instanceof IOException)) {
+				for (CompletableFuture<HttpResponse> future : futures) {
+					future.completeExceptionally(e);
+				}
+				return;
+			}
+			for (int i = completed; i < requests.size(); i++) {
+				CompletableFuture<HttpResponse> future = futures.get(i);
+				if (future.isDone()) {
+					continue;
+				}
+				try {
+					future.complete(send(requests.get(i)));
+				} catch (IOException | RuntimeException retry) {
+					future.completeExceptionally(retry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the request, following redirects if enabled, and returns once the
+	 * response head has been read. The body stream of the returned exchange
+	 * must be closed to release the connection.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @param call
+	 *            the asynchronous call the request belongs to, or null
+	 * @return the exchange
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	Exchange execute(HttpRequest request, Call call) throws IOException {
+		for (int redirects = 0;; redirects++) {
+			Exchange exchange = executeOnce(request, call);
+			HttpRequest next = getRedirect(request, exchange, redirects);
+			if (next == null) {
+				return exchange;
+			}
+			exchange.body.close();
+			request = next;
+		}
+	}
+
+	private HttpRequest getRedirect(HttpRequest request, Exchange exchange, int redirects) throws IOException {
+		String location = exchange.headers.get("Location");
+		if (!followRedirects || location == null || !isRedirect(exchange.status) || redirects >= MAX_REDIRECTS) {
+			return null;
+		}
+
+		String method = exchange.status == 307 || exchange.status == 308 || request.getMethod().equals("HEAD") ? request.getMethod() : "GET";
+		HttpRequest next = new HttpRequest(request, method, new URL(request.getUrl(), location));
+		if (!next.getUrl().getHost().equalsIgnoreCase(request.getUrl().getHost())) {
+			next.getHeaders().remove("Authorization");
+			next.getHeaders().remove("Cookie");
+		}
+		if (next.getBody() == null) {
+			next.getHeaders().remove("Content-Type");
+		}
+		return next;
+	}
+
+	private Exchange executeOnce(HttpRequest request, Call call) throws IOException {
+		Route route = Route.of(request.getUrl());
+		while (true) {
+			HttpConnection connection = pool.acquire(route, connectTimeout, acquireTimeout);
+			boolean reused = connection.getExchanges() > 0;
+			try {
+				if (call != null) {
+					call.attach(connection);
+				}
+				connection.writeRequest(request, defaultHeaders, readTimeout);
+				connection.flush();
+				return readExchange(connection, request);
+			} catch (IOException | RuntimeException e) {
+				connection.release(false);
+				if (reused && request.isIdempotent() && e instanceof IOException && (call == null || !call.isCancelled())) {
+					continue; //The server closed the kept alive connection, retry on a fresh one
+				}
+				throw e;
+			}
+		}
+	}
+
+	private static Exchange readExchange(HttpConnection connection, HttpRequest request) throws IOException {
+		Headers headers = new Headers();
+		String[] status = connection.readResponseHead(headers);
+		int code = Integer.parseInt(status[1]);
+		InputStream body = connection.openBody(request.getMethod(), code, headers);
+		if (!request.getHeaders().contains("Accept-Encoding")) {
+			body = ContentCodec.decode(body, headers); //Only decode what this client asked for
+		}
+		return new Exchange(request, code, status[2], headers, body);
+	}
+
+	private static byte[] readBody(Exchange exchange) throws IOException {
+		try (InputStream in = exchange.body) {
+			return IOUtil.readBytes(in);
+		}
+	}
+
+	private static boolean isRedirect(int status) {
+		return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+	}
+
+	/**
+	 * Closes the connection pool and executor if they were created by this
+	 * client
+	 */
+	@Override
+	public void close() {
+		if (ownsPool) {
+			pool.close();
+		}
+		synchronized (this) {
+			if (ownsExecutor && executor instanceof ExecutorService) {
+				((ExecutorService) executor).shutdown();
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Sender {
+
+		HttpResponse send(HttpRequest request, Call call) throws IOException;
+
+	}
+
+	/**
+	 * The future of an asynchronous request, which closes the connection of
+	 * the request when it is cancelled
+	 */
+	static final class Call extends CompletableFuture<HttpResponse> {
+
+		private HttpConnection connection; //Guarded by this
+
+		void attach(HttpConnection connection) throws IOException {
+			synchronized (this) {
+				this.connection = connection;
+			}
+			connection.setOwner(this);
+			if (isCancelled()) {
+				throw new InterruptedIOException("Request cancelled");
+			}
+		}
+
+		/**
+		 * Gives up ownership of a connection which is being released, so a
+		 * later cancellation cannot close it after it was leased again
+		 *
+		 * @param released
+		 *            the connection being released
+		 * @return false if the call was cancelled and the connection is
+		 *         being closed
+		 */
+		synchronized boolean detach(HttpConnection released) {
+			if (connection != released) {
+				return !isCancelled();
+			}
+			connection = null;
+			return true;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (!cancelled) {
+				return false;
+			}
+			HttpConnection current;
+			synchronized (this) {
+				current = connection;
+				connection = null;
+			}
+			if (current != null) {
+				current.closeQuietly();
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * A response whose head has been read and whose body is still streaming
+	 */
+	static final class Exchange {
+
+		final HttpRequest request;
+		final int status;
+		final String reason;
+		final Headers headers;
+		final InputStream body;
+
+		Exchange(HttpRequest request, int status, String reason, Headers headers, InputStream body) {
+			this.request = request;
+			this.status = status;
+			this.reason = reason;
+			this.headers = headers;
+			this.body = body;
+		}
+
+	}
+
+}
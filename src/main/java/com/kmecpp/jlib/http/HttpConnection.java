@@ -0,0 +1,417 @@
+package com.kmecpp.jlib.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A persistent HTTP/1.1 connection to a single {@link Route}. Connections
+ * are leased from a {@link ConnectionPool} for one exchange at a time and
+ * returned to it once the response body has been consumed.
+ */
+final class HttpConnection implements Closeable {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_LINE_LENGTH = 65536;
+	private static final int MAX_HEADERS = 256;
+
+	/**
+	 * How long a connection has to be idle, in milliseconds, before reusing it
+	 * waits briefly to find out whether the server closed it
+	 */
+	static final long PROBE_IDLE_TIME = 1000;
+
+	private final Route route;
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private final ConnectionPool pool;
+
+	private long idleSince;
+	private int exchanges;
+	private int inFlight;
+	private boolean leased;
+	private boolean keepAlive;
+	private HttpClient.Call owner;
+
+	private HttpConnection(Route route, Socket socket, ConnectionPool pool) throws IOException {
+		this.route = route;
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+		this.pool = pool;
+	}
+
+	/**
+	 * Opens a new connection, performing the TLS handshake for secure routes.
+	 * The server certificate must be trusted and issued for the host of the
+	 * route. Connections are always direct, proxy system properties are not
+	 * used.
+	 *
+	 * @param route
+	 *            the route to connect to
+	 * @param connectTimeout
+	 *            the connect timeout in milliseconds
+	 * @param pool
+	 *            the pool the connection is returned to
+	 * @return the connection
+	 * @throws IOException
+	 *             if the connection cannot be established
+	 */
+	static HttpConnection open(Route route, int connectTimeout, ConnectionPool pool) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(route.getHost(), route.getPort()), connectTimeout);
+			if (route.isSecure()) {
+				SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, route.getHost(), route.getPort(), true);
+				SSLParameters parameters = ssl.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS"); //Match the certificate against the host name
+				if (!isIpLiteral(route.getHost())) {
+					parameters.setServerNames(Collections.<SNIServerName> singletonList(new SNIHostName(route.getHost())));
+				}
+				ssl.setSSLParameters(parameters);
+				ssl.setSoTimeout(connectTimeout);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			return new HttpConnection(route, socket, pool);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	private static boolean isIpLiteral(String host) {
+		if (host.indexOf(':') != -1 || host.startsWith("[")) {
+			return true; //IPv6
+		}
+		for (int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			if (c != '.' && (c < '0' || c > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	Route getRoute() {
+		return route;
+	}
+
+	long getIdleSince() {
+		return idleSince;
+	}
+
+	void setIdleSince(long idleSince) {
+		this.idleSince = idleSince;
+	}
+
+	/**
+	 * Gets the number of exchanges started on this connection
+	 *
+	 * @return the number of requests written to this connection
+	 */
+	int getExchanges() {
+		return exchanges;
+	}
+
+	/**
+	 * Checks whether an idle connection can still be used, by verifying that
+	 * the server has not sent unexpected data and, for connections which have
+	 * been idle for longer than {@link #PROBE_IDLE_TIME}, has not closed it.
+	 * Recently used connections are not probed, since waiting for the probe
+	 * would delay every request. If the server closed one of them anyway,
+	 * idempotent requests are retried on a new connection.
+	 *
+	 * @return true if the connection appears usable
+	 */
+	boolean isHealthy() {
+		if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+			return false;
+		}
+		try {
+			if (in.available() > 0) {
+				return false; //Data on an idle connection means the stream is out of sync
+			}
+			if (System.currentTimeMillis() - idleSince < PROBE_IDLE_TIME) {
+				return true;
+			}
+
+			int timeout = socket.getSoTimeout();
+			try {
+				socket.setSoTimeout(1);
+				in.mark(1);
+				if (in.read() == -1) {
+					return false;
+				}
+				in.reset();
+				return false; //Data on an idle connection means the stream is out of sync
+			} finally {
+				socket.setSoTimeout(timeout);
+			}
+		} catch (SocketTimeoutException e) {
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Marks the connection as leased by the pool
+	 */
+	void lease() {
+		leased = true;
+		inFlight = 0;
+		keepAlive = true;
+		owner = null;
+	}
+
+	/**
+	 * Sets the asynchronous call which may close this connection when it is
+	 * cancelled, until the connection is released
+	 *
+	 * @param owner
+	 *            the call the current exchange belongs to
+	 */
+	void setOwner(HttpClient.Call owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * Writes the request line, headers and body of the given request without
+	 * flushing them, so several requests can be pipelined in one write
+	 *
+	 * @param request
+	 *            the request to write
+	 * @param defaults
+	 *            headers added when the request does not set them
+	 * @param readTimeout
+	 *            the read timeout in milliseconds
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void writeRequest(HttpRequest request, Headers defaults, int readTimeout) throws IOException {
+		exchanges++;
+		inFlight++;
+		socket.setSoTimeout(readTimeout);
+
+		String path = request.getUrl().getFile();
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(request.getMethod()).append(' ').append(path.isEmpty() ? "/" : path).append(" HTTP/1.1\r\n");
+
+		Headers headers = request.getHeaders();
+		if (!headers.contains("Host")) {
+			sb.append("Host: ").append(route.getAuthority()).append("\r\n");
+		}
+		for (int i = 0; i < defaults.size(); i++) {
+			if (!headers.contains(defaults.getName(i))) {
+				sb.append(defaults.getName(i)).append(": ").append(defaults.getValue(i)).append("\r\n");
+			}
+		}
+		for (int i = 0; i < headers.size(); i++) {
+			if (!headers.getName(i).equalsIgnoreCase("Content-Length")) {
+				sb.append(headers.getName(i)).append(": ").append(headers.getValue(i)).append("\r\n");
+			}
+		}
+
+		byte[] body = request.getBody();
+		if (body != null) {
+			sb.append("Content-Length: ").append(body.length).append("\r\n");
+		} else if (request.getMethod().equals("POST") || request.getMethod().equals("PUT")) {
+			sb.append("Content-Length: 0\r\n");
+		}
+		sb.append("\r\n");
+
+		out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (body != null) {
+			out.write(body);
+		}
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Reads the status line and headers of the next response, skipping
+	 * informational responses
+	 *
+	 * @param headers
+	 *            the headers to fill in
+	 * @return the status line split into the version, status code and reason
+	 * @throws IOException
+	 *             if an I/O error occurs or the response is malformed
+	 */
+	String[] readResponseHead(Headers headers) throws IOException {
+		while (true) {
+			String statusLine = readLine();
+			if (statusLine == null) {
+				throw new EOFException("Connection closed by " + route + " before a response was received");
+			}
+			String[] parts = statusLine.split(" ", 3);
+			if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+				throw new IOException("Malformed status line from " + route + ": " + statusLine);
+			}
+			String[] status = new String[] { parts[0], parts[1], parts.length > 2 ? parts[2] : "" };
+			int code = parseStatus(status[1]);
+
+			String line;
+			int count = 0;
+			while ((line = readLine()) != null && !line.isEmpty()) {
+				int colon = line.indexOf(':');
+				if (colon <= 0 || ++count > MAX_HEADERS) {
+					throw new IOException("Malformed header from " + route + ": " + line);
+				}
+				headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+			}
+			if (line == null) {
+				throw new EOFException("Connection closed by " + route + " while reading headers");
+			}
+
+			if (code >= 100 && code < 200 && code != 101) {
+				headers.clear(); //Discard informational responses such as 100 Continue
+				continue;
+			}
+
+			keepAlive = status[0].equals("HTTP/1.1") ? !headers.hasToken("Connection", "close") : headers.hasToken("Connection", "keep-alive");
+			return status;
+		}
+	}
+
+	/**
+	 * Creates a stream over the body of the response whose head was just
+	 * read. The connection is returned to its pool once the stream has been
+	 * read to the end or closed.
+	 *
+	 * @param method
+	 *            the request method
+	 * @param status
+	 *            the response status code
+	 * @param headers
+	 *            the response headers
+	 * @return the body stream
+	 * @throws IOException
+	 *             if the framing headers are invalid
+	 */
+	InputStream openBody(String method, int status, Headers headers) throws IOException {
+		if (method.equals("HEAD") || status == 204 || status == 304) {
+			return new BodyInputStream.Fixed(this, in, 0);
+		}
+		if (headers.hasToken("Transfer-Encoding", "chunked")) {
+			return new BodyInputStream.Chunked(this, in);
+		}
+		String length = headers.get("Content-Length");
+		if (length != null) {
+			try {
+				return new BodyInputStream.Fixed(this, in, Long.parseLong(length.trim()));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid Content-Length from " + route + ": " + length);
+			}
+		}
+		keepAlive = false;
+		return new BodyInputStream.UntilClose(this, in);
+	}
+
+	/**
+	 * Called by the body stream once an exchange is over. The connection is
+	 * returned to its pool after the last pipelined exchange, or immediately
+	 * if it cannot be reused.
+	 *
+	 * @param reusable
+	 *            whether the body was consumed completely
+	 */
+	void exchangeFinished(boolean reusable) {
+		inFlight--;
+		if (!reusable || !keepAlive) {
+			release(false);
+		} else if (inFlight <= 0) {
+			release(true);
+		}
+	}
+
+	/**
+	 * Returns the connection to its pool if it is still leased
+	 *
+	 * @param reusable
+	 *            whether the connection can carry another exchange
+	 */
+	void release(boolean reusable) {
+		if (!leased) {
+			return;
+		}
+		leased = false;
+		HttpClient.Call call = owner;
+		owner = null;
+		if (call != null && !call.detach(this)) {
+			reusable = false; //The call was cancelled and is closing the connection
+		}
+		if (pool != null) {
+			pool.release(this, reusable && keepAlive && inFlight <= 0);
+		} else {
+			closeQuietly();
+		}
+	}
+
+	String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				int length = sb.length();
+				if (length > 0 && sb.charAt(length - 1) == '\r') {
+					sb.setLength(length - 1);
+				}
+				return sb.toString();
+			}
+			if (sb.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("Line too long from " + route);
+			}
+			sb.append((char) b);
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	private int parseStatus(String status) throws IOException {
+		try {
+			return Integer.parseInt(status);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status code from " + route + ": " + status);
+		}
+	}
+
+	void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			//Ignore
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	@Override
+	public String toString() {
+		return "HttpConnection[" + route + ", " + socket.getLocalPort() + "]";
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.kmecpp.jlib.http;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown when a server responds with an error status code
+ */
+public class HttpException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+	private final URL url;
+
+	public HttpException(int status, URL url) {
+		super("Server returned HTTP response code: " + status + " for URL: " + url);
+		this.status = status;
+		this.url = url;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.kmecpp.jlib.http;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An HTTP request to be sent by an {@link HttpClient}
+ */
+public final class HttpRequest {
+
+	private final String method;
+	private final URL url;
+	private final Headers headers;
+	private byte[] body;
+
+	public HttpRequest(String method, URL url) {
+		this.method = method.toUpperCase();
+		this.url = url;
+		this.headers = new Headers();
+	}
+
+	/**
+	 * Creates a copy of the given request with a different method and URL,
+	 * which is used to follow redirects
+	 *
+	 * @param request
+	 *            the request to copy the headers of
+	 * @param method
+	 *            the new method
+	 * @param url
+	 *            the new URL
+	 */
+	HttpRequest(HttpRequest request, String method, URL url) {
+		this.method = method;
+		this.url = url;
+		this.headers = new Headers(request.headers);
+		this.body = method.equals(request.method) ? request.body : null;
+	}
+
+	public static HttpRequest get(URL url) {
+		return new HttpRequest("GET", url);
+	}
+
+	/**
+	 * Creates a POST request with the given body
+	 *
+	 * @param url
+	 *            the URL to post to
+	 * @param body
+	 *            the request body
+	 * @param contentType
+	 *            the media type of the body
+	 * @return the request
+	 */
+	public static HttpRequest post(URL url, byte[] body, String contentType) {
+		return new HttpRequest("POST", url).header("Content-Type", contentType).body(body);
+	}
+
+	/**
+	 * Creates a POST request with a UTF-8 encoded body
+	 *
+	 * @param url
+	 *            the URL to post to
+	 * @param body
+	 *            the request body
+	 * @param contentType
+	 *            the media type of the body, without a charset
+	 * @return the request
+	 */
+	public static HttpRequest post(URL url, String body, String contentType) {
+		return post(url, body.getBytes(StandardCharsets.UTF_8), contentType + "; charset=UTF-8");
+	}
+
+	/**
+	 * Sets a header field, replacing any existing field of the same name
+	 *
+	 * @param name
+	 *            the field name
+	 * @param value
+	 *            the field value
+	 * @return this request
+	 */
+	public HttpRequest header(String name, String value) {
+		headers.set(name, value);
+		return this;
+	}
+
+	public HttpRequest body(byte[] body) {
+		this.body = body;
+		return this;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	public Headers getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Gets the request body
+	 *
+	 * @return the body, or null if the request has none
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Checks whether sending this request more than once has the same effect
+	 * as sending it once, which allows it to be retried safely
+	 *
+	 * @return true if the method is idempotent
+	 */
+	public boolean isIdempotent() {
+		switch (method) {
+		case "GET":
+		case "HEAD":
+		case "PUT":
+		case "DELETE":
+		case "OPTIONS":
+		case "TRACE":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + url;
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.kmecpp.jlib.http;
+
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * A response received by an {@link HttpClient} whose body has been read
+ * completely and decoded. Use {@link HttpClient#stream(HttpRequest)} to read
+ * large bodies incrementally instead.
+ */
+public class HttpResponse {
+
+	private final URL url;
+	private final int status;
+	private final String reason;
+	private final Headers headers;
+	private final byte[] body;
+
+	HttpResponse(URL url, int status, String reason, Headers headers, byte[] body) {
+		this.url = url;
+		this.status = status;
+		this.reason = reason;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * Gets the URL the response was received from, which differs from the
+	 * request URL if a redirect was followed
+	 *
+	 * @return the URL of the response
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public Headers getHeaders() {
+		return headers;
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * Gets the charset of the body as specified by its Content-Type
+	 *
+	 * @return the charset, or UTF-8 if none is specified
+	 */
+	public Charset getCharset() {
+		return ContentCodec.getCharset(headers);
+	}
+
+	/**
+	 * Decodes the body using the charset of the response
+	 *
+	 * @return the body as a string
+	 */
+	public String getBodyAsString() {
+		return new String(body, getCharset());
+	}
+
+	/**
+	 * Checks whether the status code is in the 2xx range
+	 *
+	 * @return true if the request succeeded
+	 */
+	public boolean isSuccessful() {
+		return status >= 200 && status < 300;
+	}
+
+	/**
+	 * Throws an {@link HttpException} if the status code indicates an error
+	 *
+	 * @return this response
+	 * @throws HttpException
+	 *             if the status code is 400 or higher
+	 */
+	public HttpResponse checkStatus() throws HttpException {
+		if (status >= 400) {
+			throw new HttpException(status, url);
+		}
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "HTTP " + status + " " + reason + " (" + url + ")";
+	}
+
+}
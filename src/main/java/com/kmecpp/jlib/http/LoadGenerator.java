@@ -0,0 +1,270 @@
+package com.kmecpp.jlib.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.kmecpp.jlib.utils.HTTP;
+import com.kmecpp.jlib.utils.NetworkUtil;
+
+/**
+ * Runs an operation at a fixed target rate and measures its latency and
+ * throughput.
+ *
+ * <br>
+ * <br>
+ *
+ * Operations are started on a schedule which does not depend on how long
+ * earlier operations took, and the latency of each operation is measured from
+ * the time it was scheduled to start. When the workers cannot keep up, the
+ * time spent waiting for a worker is therefore included in the reported
+ * latencies instead of silently lowering the request rate.
+ *
+ * <br>
+ * <br>
+ *
+ * The {@link #main(String[])} method benchmarks the HTTP utilities of this
+ * library against a local {@link StubServer}.
+ */
+public class LoadGenerator {
+
+	private final int concurrency;
+
+	/**
+	 * Creates a load generator
+	 *
+	 * @param concurrency
+	 *            the maximum number of operations which run at the same time
+	 */
+	public LoadGenerator(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Runs the operation at the given rate for the given duration, then waits
+	 * for every started operation to finish
+	 *
+	 * @param operation
+	 *            the operation to run
+	 * @param rate
+	 *            the number of operations to start per second
+	 * @param duration
+	 *            how long to keep starting operations
+	 * @param unit
+	 *            the unit of the duration
+	 * @return the measurements
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while generating load
+	 */
+	public Report run(Operation operation, double rate, long duration, TimeUnit unit) throws InterruptedException {
+		if (rate <= 0) {
+			throw new IllegalArgumentException("Rate must be positive: " + rate);
+		}
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		int count = (int) Math.max(1, unit.toNanos(duration) / Math.max(1, interval));
+		long[] latencies = new long[count];
+		AtomicInteger completed = new AtomicInteger();
+		AtomicLong errors = new AtomicLong();
+
+		AtomicInteger threadId = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+			Thread thread = new Thread(r, "LoadGenerator-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long start = System.nanoTime();
+		try {
+			for (int i = 0; i < count; i++) {
+				final long scheduled = start + i * interval;
+				long wait;
+				while ((wait = scheduled - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+				}
+				executor.execute(() -> {
+					try {
+						operation.run();
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+					latencies[completed.getAndIncrement()] = System.nanoTime() - scheduled;
+				});
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		int samples = completed.get();
+		long[] sorted = Arrays.copyOf(latencies, samples);
+		Arrays.sort(sorted);
+		return new Report(sorted, errors.get(), elapsed);
+	}
+
+	/**
+	 * Benchmarks {@link HTTP#read(URL)}, {@link HTTP#postAndRead(URL, String)},
+	 * {@link NetworkUtil#get(URL)} and {@link NetworkUtil#post(URL, String)}
+	 * against a local {@link StubServer} and prints a report for each. The
+	 * optional arguments are, in order: the rate in requests per second, the
+	 * duration in seconds, the number of concurrent requests, the response
+	 * payload size in bytes and the server latency in milliseconds.
+	 *
+	 * @param args
+	 *            the optional arguments
+	 * @throws IOException
+	 *             if the stub server cannot be started
+	 * @throws InterruptedException
+	 *             if the benchmark is interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		double rate = args.length > 0 ? Double.parseDouble(args[0]) : 1000;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+		int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		int payloadSize = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+		long latency = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+		try (StubServer server = new StubServer()) {
+			server.setPayloadSize(payloadSize).setLatency(latency, TimeUnit.MILLISECONDS);
+			URL url = server.getUrl("/");
+			StringBuilder sb = new StringBuilder(payloadSize);
+			for (int i = 0; i < payloadSize; i++) {
+				sb.append('x');
+			}
+			String data = sb.toString();
+
+			LoadGenerator generator = new LoadGenerator(concurrency);
+			Operation[] operations = {
+					() -> HTTP.read(url),
+					() -> HTTP.postAndRead(url, data),
+					() -> NetworkUtil.get(url),
+					() -> NetworkUtil.post(url, data) };
+			String[] names = { "HTTP.read", "HTTP.postAndRead", "NetworkUtil.get", "NetworkUtil.post" };
+
+			System.out.println("Rate: " + rate + "/s, duration: " + seconds + "s, concurrency: " + concurrency
+					+ ", payload: " + payloadSize + " bytes, server latency: " + latency + "ms");
+			for (int i = 0; i < operations.length; i++) {
+				generator.run(operations[i], rate, Math.min(seconds, 2), TimeUnit.SECONDS); //Warm up
+				System.out.println(names[i] + ": " + generator.run(operations[i], rate, seconds, TimeUnit.SECONDS));
+			}
+		}
+	}
+
+	/**
+	 * An operation whose latency is measured. Operations which throw an
+	 * exception are counted as errors.
+	 */
+	@FunctionalInterface
+	public interface Operation {
+
+		void run() throws Exception;
+
+	}
+
+	/**
+	 * The measurements of a {@link LoadGenerator} run. Latencies are measured
+	 * in nanoseconds.
+	 */
+	public static final class Report {
+
+		private final long[] latencies;
+		private final long errors;
+		private final long elapsed;
+
+		private Report(long[] latencies, long errors, long elapsed) {
+			this.latencies = latencies;
+			this.errors = errors;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Gets the number of operations which were run, including failed ones
+		 *
+		 * @return the number of operations
+		 */
+		public int getCount() {
+			return latencies.length;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Gets the time from the first scheduled operation until the last
+		 * operation finished
+		 *
+		 * @param unit
+		 *            the unit to convert to
+		 * @return the elapsed time
+		 */
+		public long getElapsed(TimeUnit unit) {
+			return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Gets the number of operations which completed per second
+		 *
+		 * @return the throughput
+		 */
+		public double getThroughput() {
+			return elapsed == 0 ? 0 : latencies.length * 1e9 / elapsed;
+		}
+
+		/**
+		 * Gets the latency which the given percentage of operations did not
+		 * exceed
+		 *
+		 * @param percentile
+		 *            the percentile, between 0 and 100
+		 * @return the latency in nanoseconds, or 0 if no operation was run
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("Percentile out of range: " + percentile);
+			}
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, index)];
+		}
+
+		public long getMean() {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			long sum = 0;
+			for (long latency : latencies) {
+				sum += latency;
+			}
+			return sum / latencies.length;
+		}
+
+		public long getMax() {
+			return latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d requests, %d errors, %.1f/s, latency mean %.2fms, p50 %.2fms, p90 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms",
+					getCount(), errors, getThroughput(), getMean() / 1e6, getPercentile(50) / 1e6, getPercentile(90) / 1e6,
+					getPercentile(99) / 1e6, getPercentile(99.9) / 1e6, getMax() / 1e6);
+		}
+
+	}
+
+}
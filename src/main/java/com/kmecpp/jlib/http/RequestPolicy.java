@@ -0,0 +1,445 @@
+package com.kmecpp.jlib.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controls how an {@link HttpClient} reacts to failing and slow hosts.
+ *
+ * <br>
+ * <br>
+ *
+ * <b>Retries:</b> idempotent requests which fail with an I/O error, or with a
+ * 429, 502, 503 or 504 response, are sent again a bounded number of times.
+ * Each retry waits for a random delay of up to the base backoff doubled for
+ * every previous attempt, capped at the maximum backoff, so clients which
+ * failed at the same time do not retry at the same time. A Retry-After header
+ * is honored up to the maximum backoff.
+ *
+ * <br>
+ * <br>
+ *
+ * <b>Hedging:</b> when enabled, an idempotent request which has not completed
+ * within the given percentile of the recent latencies of its host is sent a
+ * second time, and whichever response arrives first is used. Hedging only
+ * starts once enough latencies have been recorded for the host.
+ *
+ * <br>
+ * <br>
+ *
+ * <b>Circuit breaking:</b> once the given number of consecutive requests to a
+ * host have failed with an I/O error, or with a 502, 503 or 504 response,
+ * requests to that host fail immediately with a {@link CircuitOpenException}
+ * until the open duration has passed. A single probe request is then let
+ * through, which closes the circuit if it succeeds and opens it again
+ * otherwise. Other responses, including 500 and 429, show that the host is
+ * up and do not count as failures.
+ */
+public class RequestPolicy {
+
+	public static final int DEFAULT_MAX_RETRIES = 2;
+	public static final long DEFAULT_BASE_BACKOFF = 100;
+	public static final long DEFAULT_MAX_BACKOFF = 2000;
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_DURATION = 10000;
+
+	/**
+	 * The number of latencies recorded per host before requests are hedged
+	 */
+	public static final int MIN_HEDGE_SAMPLES = 20;
+
+	private static final int LATENCY_SAMPLES = 128;
+
+	private final ConcurrentHashMap<Route, Host> hosts = new ConcurrentHashMap<>();
+
+	private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+	private volatile long baseBackoff = DEFAULT_BASE_BACKOFF;
+	private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+	private volatile double hedgePercentile;
+	private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private volatile long openDuration = DEFAULT_OPEN_DURATION;
+
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+
+	/**
+	 * Sets how often failed idempotent requests are retried and how long to
+	 * wait between attempts
+	 *
+	 * @param maxRetries
+	 *            the maximum number of retries, or 0 to disable retries
+	 * @param baseBackoff
+	 *            the maximum delay before the first retry
+	 * @param maxBackoff
+	 *            the maximum delay before any retry
+	 * @param unit
+	 *            the unit of the delays
+	 * @return this policy
+	 */
+	public RequestPolicy setRetries(int maxRetries, long baseBackoff, long maxBackoff, TimeUnit unit) {
+		this.maxRetries = maxRetries;
+		this.baseBackoff = unit.toMillis(baseBackoff);
+		this.maxBackoff = unit.toMillis(maxBackoff);
+		return this;
+	}
+
+	/**
+	 * Sets the latency percentile after which idempotent requests are sent a
+	 * second time
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100, or 0 to disable hedging
+	 * @return this policy
+	 */
+	public RequestPolicy setHedging(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile out of range: " + percentile);
+		}
+		this.hedgePercentile = percentile;
+		return this;
+	}
+
+	/**
+	 * Sets when the circuit breaker of a host opens and how long it stays
+	 * open
+	 *
+	 * @param failureThreshold
+	 *            the number of consecutive failures which open the circuit,
+	 *            or 0 to disable circuit breaking
+	 * @param openDuration
+	 *            how long requests are rejected before a probe is let
+	 *            through
+	 * @param unit
+	 *            the unit of the open duration
+	 * @return this policy
+	 */
+	public RequestPolicy setCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+		this.failureThreshold = failureThreshold;
+		this.openDuration = unit.toMillis(openDuration);
+		return this;
+	}
+
+	/**
+	 * Gets the state of the circuit breaker for the host of the given URL
+	 *
+	 * @param url
+	 *            a URL of the host
+	 * @return the state of the circuit
+	 */
+	public CircuitState getCircuitState(URL url) {
+		Host host = hosts.get(Route.of(url));
+		if (host == null) {
+			return CircuitState.CLOSED;
+		}
+		synchronized (host) {
+			return host.state;
+		}
+	}
+
+	/**
+	 * Gets the number of times a request was sent again after failing
+	 *
+	 * @return the number of retries
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Gets the number of times a slow request was sent a second time
+	 *
+	 * @return the number of hedged requests
+	 */
+	public long getHedges() {
+		return hedges.get();
+	}
+
+	/**
+	 * Gets the number of requests rejected because a circuit was open
+	 *
+	 * @return the number of rejected requests
+	 */
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	HttpResponse send(HttpRequest request, Transport transport) throws IOException {
+		Route route = Route.of(request.getUrl());
+		Host host = hosts.get(route);
+		if (host == null) {
+			Host created = new Host();
+			host = hosts.putIfAbsent(route, created);
+			if (host == null) {
+				host = created;
+			}
+		}
+
+		for (int attempt = 0;; attempt++) {
+			if (!host.tryAcquire(failureThreshold, openDuration)) {
+				rejections.incrementAndGet();
+				throw new CircuitOpenException(request.getUrl());
+			}
+
+			HttpResponse response;
+			long start = System.nanoTime();
+			try {
+				long hedgeDelay = request.isIdempotent() && host.isClosed() ? host.getPercentile(hedgePercentile) : -1;
+				response = hedgeDelay >= 0 ? sendHedged(request, transport, hedgeDelay) : transport.send(request);
+			} catch (IOException | RuntimeException e) {
+				if (transport.isCancelled() || e instanceof CircuitOpenException) {
+					host.abort();
+					throw e;
+				}
+				host.onFailure(failureThreshold);
+				if (e instanceof IOException && !(e instanceof HttpException) && request.isIdempotent() && attempt < maxRetries) {
+					backoff(attempt, -1);
+					continue;
+				}
+				throw e;
+			}
+
+			int status = response.getStatus();
+			if (isUnavailable(status)) {
+				host.onFailure(failureThreshold);
+			} else {
+				host.onSuccess(System.nanoTime() - start);
+			}
+			if (request.isIdempotent() && attempt < maxRetries && isRetryable(status)) {
+				backoff(attempt, getRetryAfter(response));
+				continue;
+			}
+			return response;
+		}
+	}
+
+	private HttpResponse sendHedged(HttpRequest request, Transport transport, long delay) throws IOException {
+		CompletableFuture<HttpResponse> primary = transport.sendAsync(request);
+		CompletableFuture<HttpResponse> hedge = null;
+		try {
+			try {
+				return primary.get(delay, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				hedges.incrementAndGet();
+			}
+
+			hedge = transport.sendAsync(request);
+			CompletableFuture<HttpResponse> first = new CompletableFuture<>();
+			AtomicInteger failed = new AtomicInteger();
+			for (CompletableFuture<HttpResponse> future : Arrays.asList(primary, hedge)) {
+				future.whenComplete((response, error) -> {
+					if (error == null) {
+						first.complete(response);
+					} else if (failed.incrementAndGet() == 2) {
+						first.completeExceptionally(error);
+					}
+				});
+			}
+			return first.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a response");
+		} finally {
+			primary.cancel(true); //Abort whichever attempt lost, if it is still running
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+		}
+	}
+
+	private void backoff(int attempt, long retryAfter) throws InterruptedIOException {
+		retries.incrementAndGet();
+		long delay;
+		if (retryAfter >= 0) {
+			delay = Math.min(maxBackoff, retryAfter);
+		} else {
+			long limit = Math.min(maxBackoff, baseBackoff << Math.min(attempt, 30));
+			delay = limit > 0 ? ThreadLocalRandom.current().nextLong(limit + 1) : 0;
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off");
+		}
+	}
+
+	private static boolean isRetryable(int status) {
+		return status == 429 || isUnavailable(status);
+	}
+
+	/**
+	 * Checks whether a response status means that the host, rather than the
+	 * request, is failing
+	 *
+	 * @param status
+	 *            the response status
+	 * @return true if the status counts as a failure of the host
+	 */
+	private static boolean isUnavailable(int status) {
+		return status == 502 || status == 503 || status == 504;
+	}
+
+	private static long getRetryAfter(HttpResponse response) {
+		String value = response.getHeader("Retry-After");
+		if (value != null) {
+			try {
+				return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+			} catch (NumberFormatException e) {
+				//HTTP dates are not worth waiting for, use the regular backoff
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The state of the circuit breaker of a host
+	 */
+	public enum CircuitState {
+
+		/**
+		 * Requests are sent normally
+		 */
+		CLOSED,
+
+		/**
+		 * Requests are rejected without being sent
+		 */
+		OPEN,
+
+		/**
+		 * A single probe request is sent to decide whether to close the
+		 * circuit again
+		 */
+		HALF_OPEN;
+
+	}
+
+	/**
+	 * Sends the attempts of a request
+	 */
+	interface Transport {
+
+		HttpResponse send(HttpRequest request) throws IOException;
+
+		/**
+		 * Starts an attempt which is aborted when the returned future is
+		 * cancelled
+		 *
+		 * @param request
+		 *            the request to send
+		 * @return a future completed with the response
+		 */
+		CompletableFuture<HttpResponse> sendAsync(HttpRequest request);
+
+		/**
+		 * Checks whether the caller gave up on the request, in which case
+		 * its failure says nothing about the host
+		 *
+		 * @return true if the request was cancelled
+		 */
+		boolean isCancelled();
+
+	}
+
+	/**
+	 * The circuit breaker and recent latencies of a host
+	 */
+	private static final class Host {
+
+		private CircuitState state = CircuitState.CLOSED;
+		private int failures;
+		private long openedAt;
+		private boolean probing;
+
+		private final long[] latencies = new long[LATENCY_SAMPLES];
+		private int samples;
+
+		synchronized boolean tryAcquire(int threshold, long openDuration) {
+			if (threshold <= 0) {
+				return true;
+			}
+			if (state == CircuitState.OPEN) {
+				if (System.currentTimeMillis() - openedAt < openDuration) {
+					return false;
+				}
+				state = CircuitState.HALF_OPEN;
+				probing = false;
+			}
+			if (state == CircuitState.HALF_OPEN) {
+				if (probing) {
+					return false;
+				}
+				probing = true;
+			}
+			return true;
+		}
+
+		synchronized boolean isClosed() {
+			return state == CircuitState.CLOSED;
+		}
+
+		synchronized void onSuccess(long latency) {
+			state = CircuitState.CLOSED;
+			failures = 0;
+			probing = false;
+			latencies[samples++ % LATENCY_SAMPLES] = latency;
+			if (samples == 2 * LATENCY_SAMPLES) {
+				samples = LATENCY_SAMPLES; //Keep the index in range, the buffer is full either way
+			}
+		}
+
+		synchronized void onFailure(int threshold) {
+			if (threshold <= 0) {
+				return;
+			}
+			if (state == CircuitState.HALF_OPEN || ++failures >= threshold) {
+				state = CircuitState.OPEN;
+				openedAt = System.currentTimeMillis();
+				probing = false;
+			}
+		}
+
+		synchronized void abort() {
+			probing = false;
+		}
+
+		/**
+		 * Gets the given percentile of the recent latencies
+		 *
+		 * @param percentile
+		 *            the percentile, or 0 for none
+		 * @return the latency in nanoseconds, or -1 if the percentile is 0 or
+		 *         too few latencies have been recorded
+		 */
+		synchronized long getPercentile(double percentile) {
+			if (percentile <= 0 || samples < MIN_HEDGE_SAMPLES) {
+				return -1;
+			}
+			long[] sorted = Arrays.copyOf(latencies, Math.min(samples, LATENCY_SAMPLES));
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+			return sorted[Math.max(0, index)];
+		}
+
+	}
+
+}
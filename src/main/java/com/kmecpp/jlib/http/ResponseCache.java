@@ -0,0 +1,527 @@
+package com.kmecpp.jlib.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A private HTTP cache for GET responses, used by an {@link HttpClient} once
+ * it is set with {@link HttpClient#setCache(ResponseCache)}. Entries are kept
+ * in memory in least recently used order up to a maximum total size, and can
+ * also be written to a directory on disk which survives restarts.
+ *
+ * <br>
+ * <br>
+ *
+ * Freshness follows the <code>Cache-Control</code> <code>max-age</code>,
+ * <code>no-cache</code> and <code>no-store</code> directives and the
+ * <code>Expires</code> header, falling back to a tenth of the time since the
+ * <code>Last-Modified</code> date. Stale entries with an <code>ETag</code>
+ * or <code>Last-Modified</code> date are revalidated with a conditional
+ * request, so an unchanged resource only costs a 304 response. Requests
+ * which set their own <code>Accept-Encoding</code> bypass the cache, since
+ * the client does not decode their bodies.
+ *
+ * <br>
+ * <br>
+ *
+ * Responses served from the cache share their body array with the cache, so
+ * it must not be modified.
+ */
+public class ResponseCache {
+
+	private static final int DISK_MAGIC = 0x4A4C4843;
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+	private final long maxMemoryBytes;
+	private final File directory;
+	private final long maxDiskBytes;
+
+	private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+
+	private final Object diskLock = new Object();
+	private long diskBytes = -1;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong revalidated = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a cache which only keeps entries in memory
+	 *
+	 * @param maxMemoryBytes
+	 *            the maximum total size of the cached bodies
+	 */
+	public ResponseCache(long maxMemoryBytes) {
+		this(maxMemoryBytes, null, 0);
+	}
+
+	/**
+	 * Creates a cache with a disk tier
+	 *
+	 * @param maxMemoryBytes
+	 *            the maximum total size of the bodies kept in memory
+	 * @param directory
+	 *            the directory to store entries in, or null to only use
+	 *            memory
+	 * @param maxDiskBytes
+	 *            the maximum total size of the files in the directory
+	 */
+	public ResponseCache(long maxMemoryBytes, File directory, long maxDiskBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+	}
+
+	/**
+	 * Serves the request from the cache if possible, and otherwise sends it
+	 * with the given sender, conditionally if a stale entry can be
+	 * revalidated, and caches the response if it is cacheable
+	 *
+	 * @param request
+	 *            the GET request
+	 * @param sender
+	 *            sends requests to the network
+	 * @return the response
+	 * @throws IOException
+	 *             if the request fails
+	 */
+	HttpResponse send(HttpRequest request, Sender sender) throws IOException {
+		Headers headers = request.getHeaders();
+		if (!request.getMethod().equals("GET") || headers.contains("Authorization") || headers.contains("Accept-Encoding")
+				|| headers.contains("If-None-Match") || headers.contains("If-Modified-Since") || headers.hasToken("Cache-Control", "no-store")) {
+			return sender.send(request);
+		}
+
+		String key = request.getUrl().toString();
+		long now = System.currentTimeMillis();
+		Entry entry = get(key);
+		if (entry != null && !headers.hasToken("Cache-Control", "no-cache") && entry.isFresh(now)) {
+			hits.incrementAndGet();
+			return entry.toResponse();
+		}
+
+		HttpRequest network = request;
+		if (entry != null) {
+			String etag = entry.headers.get("ETag");
+			String lastModified = entry.headers.get("Last-Modified");
+			if (etag != null || lastModified != null) {
+				network = new HttpRequest(request, request.getMethod(), request.getUrl());
+				if (etag != null) {
+					network.header("If-None-Match", etag);
+				}
+				if (lastModified != null) {
+					network.header("If-Modified-Since", lastModified);
+				}
+			}
+		}
+
+		HttpResponse response = sender.send(network);
+		if (entry != null && response.getStatus() == 304) {
+			revalidated.incrementAndGet();
+			Entry updated = entry.revalidate(response.getHeaders(), System.currentTimeMillis());
+			put(key, updated);
+			return updated.toResponse();
+		}
+
+		misses.incrementAndGet();
+		if (isCacheable(response)) {
+			put(key, new Entry(response.getUrl(), response.getStatus(), response.getReason(), new Headers(response.getHeaders()), response.getBody(),
+					System.currentTimeMillis()));
+		} else if (entry != null) {
+			remove(key);
+		}
+		return response;
+	}
+
+	private static boolean isCacheable(HttpResponse response) {
+		switch (response.getStatus()) {
+		case 200:
+		case 203:
+		case 301:
+		case 404:
+		case 410:
+			break;
+		default:
+			return false;
+		}
+		Headers headers = response.getHeaders();
+		if (headers.hasToken("Cache-Control", "no-store")) {
+			return false;
+		}
+		for (String vary : headers.getAll("Vary")) {
+			for (String name : vary.split(",")) {
+				if (!name.trim().equalsIgnoreCase("Accept-Encoding")) {
+					return false; //Responses which vary on other request headers are not cached
+				}
+			}
+		}
+		return true;
+	}
+
+	private Entry get(String key) {
+		synchronized (this) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		Entry entry = readDisk(key);
+		if (entry != null) {
+			putMemory(key, entry);
+		}
+		return entry;
+	}
+
+	private void put(String key, Entry entry) {
+		putMemory(key, entry);
+		writeDisk(key, entry);
+	}
+
+	private synchronized void putMemory(String key, Entry entry) {
+		Entry previous = memory.remove(key);
+		if (previous != null) {
+			memoryBytes -= previous.body.length;
+		}
+		if (entry.body.length > maxMemoryBytes) {
+			return;
+		}
+		memory.put(key, entry);
+		memoryBytes += entry.body.length;
+		for (Iterator<Entry> it = memory.values().iterator(); memoryBytes > maxMemoryBytes && it.hasNext();) {
+			memoryBytes -= it.next().body.length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes the entry for the given URL from memory and disk
+	 *
+	 * @param url
+	 *            the URL of the entry
+	 */
+	public void remove(URL url) {
+		remove(url.toString());
+	}
+
+	private void remove(String key) {
+		synchronized (this) {
+			Entry previous = memory.remove(key);
+			if (previous != null) {
+				memoryBytes -= previous.body.length;
+			}
+		}
+		if (directory != null) {
+			synchronized (diskLock) {
+				File file = getFile(key);
+				long length = file.length();
+				if (file.delete() && diskBytes >= 0) {
+					diskBytes -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry from memory, leaving the disk tier intact
+	 */
+	public synchronized void clearMemory() {
+		memory.clear();
+		memoryBytes = 0;
+	}
+
+	public synchronized long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	public synchronized int getMemoryEntries() {
+		return memory.size();
+	}
+
+	/**
+	 * Gets the number of requests served from the cache without contacting
+	 * the server
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of requests served from the cache after the server
+	 * confirmed the entry with a 304 response
+	 *
+	 * @return the number of revalidated hits
+	 */
+	public long getRevalidated() {
+		return revalidated.get();
+	}
+
+	/**
+	 * Gets the number of requests whose full response had to be downloaded
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private Entry readDisk(String key) {
+		if (directory == null) {
+			return null;
+		}
+		synchronized (diskLock) {
+			File file = getFile(key);
+			if (!file.isFile()) {
+				return null;
+			}
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+				if (in.readInt() != DISK_MAGIC || !in.readUTF().equals(key)) {
+					return null;
+				}
+				URL url = new URL(in.readUTF());
+				int status = in.readInt();
+				String reason = in.readUTF();
+				long received = in.readLong();
+				Headers headers = new Headers();
+				for (int i = in.readInt(); i > 0; i--) {
+					headers.add(in.readUTF(), in.readUTF());
+				}
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+				file.setLastModified(System.currentTimeMillis()); //Keep recently used entries on disk
+				return new Entry(url, status, reason, headers, body, received);
+			} catch (IOException e) {
+				file.delete(); //Corrupt entry
+				return null;
+			}
+		}
+	}
+
+	private void writeDisk(String key, Entry entry) {
+		if (directory == null) {
+			return;
+		}
+		synchronized (diskLock) {
+			try {
+				directory.mkdirs();
+				File file = getFile(key);
+				Path temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(DISK_MAGIC);
+					out.writeUTF(key);
+					out.writeUTF(entry.url.toString());
+					out.writeInt(entry.status);
+					out.writeUTF(entry.reason);
+					out.writeLong(entry.received);
+					out.writeInt(entry.headers.size());
+					for (int i = 0; i < entry.headers.size(); i++) {
+						out.writeUTF(entry.headers.getName(i));
+						out.writeUTF(entry.headers.getValue(i));
+					}
+					out.writeInt(entry.body.length);
+					out.write(entry.body);
+				}
+
+				long previous = file.length();
+				Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				if (diskBytes < 0) {
+					diskBytes = computeDiskBytes();
+				} else {
+					diskBytes += file.length() - previous;
+				}
+				if (diskBytes > maxDiskBytes) {
+					trimDisk();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private long computeDiskBytes() {
+		long total = 0;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				total += file.length();
+			}
+		}
+		return total;
+	}
+
+	private void trimDisk() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (diskBytes <= maxDiskBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				diskBytes -= length;
+			}
+		}
+	}
+
+	private File getFile(String key) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder(hash.length * 2 + 6);
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return new File(directory, sb.append(".cache").toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long parseDate(String date) {
+		if (date == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Gets the value of a numeric <code>Cache-Control</code> directive
+	 */
+	private static long getDirective(Headers headers, String name) {
+		for (String value : headers.getAll("Cache-Control")) {
+			for (String directive : value.split(",")) {
+				int equals = directive.indexOf('=');
+				if (equals != -1 && directive.substring(0, equals).trim().equalsIgnoreCase(name)) {
+					try {
+						return Long.parseLong(directive.substring(equals + 1).trim().replace("\"", ""));
+					} catch (NumberFormatException e) {
+						return -1;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sends requests which could not be served from the cache
+	 */
+	@FunctionalInterface
+	interface Sender {
+
+		HttpResponse send(HttpRequest request) throws IOException;
+
+	}
+
+	private static final class Entry {
+
+		private final URL url;
+		private final int status;
+		private final String reason;
+		private final Headers headers;
+		private final byte[] body;
+		private final long received;
+
+		private Entry(URL url, int status, String reason, Headers headers, byte[] body, long received) {
+			this.url = url;
+			this.status = status;
+			this.reason = reason;
+			this.headers = headers;
+			this.body = body;
+			this.received = received;
+		}
+
+		private boolean isFresh(long now) {
+			if (headers.hasToken("Cache-Control", "no-cache")) {
+				return false;
+			}
+			long age = Math.max(0, now - received);
+			long ageHeader = headers.get("Age") == null ? -1 : parseLong(headers.get("Age"));
+			if (ageHeader > 0) {
+				age += ageHeader * 1000;
+			}
+			return age < getLifetime();
+		}
+
+		private long getLifetime() {
+			long maxAge = getDirective(headers, "max-age");
+			if (maxAge >= 0) {
+				return maxAge * 1000;
+			}
+			long date = parseDate(headers.get("Date"));
+			long served = date >= 0 ? date : received;
+			long expires = parseDate(headers.get("Expires"));
+			if (expires >= 0) {
+				return expires - served;
+			} else if (headers.get("Expires") != null) {
+				return 0; //Invalid dates such as "0" mean already expired
+			}
+			long lastModified = parseDate(headers.get("Last-Modified"));
+			if (lastModified >= 0 && lastModified < served) {
+				return Math.min((served - lastModified) / 10, MAX_HEURISTIC_LIFETIME);
+			}
+			return 0;
+		}
+
+		private Entry revalidate(Headers update, long now) {
+			Headers merged = new Headers(headers);
+			for (int i = 0; i < update.size(); i++) {
+				String name = update.getName(i);
+				if (!name.equalsIgnoreCase("Content-Length") && !name.equalsIgnoreCase("Content-Encoding")
+						&& !name.equalsIgnoreCase("Transfer-Encoding")) {
+					merged.set(name, update.getValue(i));
+				}
+			}
+			if (!update.contains("Age")) {
+				merged.remove("Age");
+			}
+			return new Entry(url, status, reason, merged, body, now);
+		}
+
+		private HttpResponse toResponse() {
+			return new HttpResponse(url, status, reason, new Headers(headers), body);
+		}
+
+		private static long parseLong(String value) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache[memory=" + getMemoryBytes() + "/" + maxMemoryBytes + (directory == null ? "" : ", disk=" + directory) + "]";
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.kmecpp.jlib.http;
+
+import java.net.URL;
+
+/**
+ * The scheme, host and port a pooled connection is bound to
+ */
+final class Route {
+
+	private final boolean secure;
+	private final String host;
+	private final int port;
+
+	Route(boolean secure, String host, int port) {
+		this.secure = secure;
+		this.host = host.toLowerCase();
+		this.port = port;
+	}
+
+	static Route of(URL url) {
+		String protocol = url.getProtocol().toLowerCase();
+		if (!protocol.equals("http") && !protocol.equals("https")) {
+			throw new IllegalArgumentException("Unsupported protocol: " + url);
+		}
+		return new Route(protocol.equals("https"), url.getHost(), url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+	}
+
+	boolean isSecure() {
+		return secure;
+	}
+
+	String getHost() {
+		return host;
+	}
+
+	int getPort() {
+		return port;
+	}
+
+	/**
+	 * Gets the value of the Host header for this route
+	 *
+	 * @return the host, followed by the port if it is not the default port
+	 */
+	String getAuthority() {
+		return port == (secure ? 443 : 80) ? host : host + ":" + port;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Route)) {
+			return false;
+		}
+		Route other = (Route) obj;
+		return secure == other.secure && port == other.port && host.equals(other.host);
+	}
+
+	@Override
+	public int hashCode() {
+		return (host.hashCode() * 31 + port) * 2 + (secure ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return (secure ? "https://" : "http://") + getAuthority();
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.kmecpp.jlib.http;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.stream.Stream;
+
+import com.kmecpp.jlib.io.BufferPool;
+import com.kmecpp.jlib.io.LineIterator;
+
+/**
+ * A response whose body is read incrementally from the connection instead of
+ * being held in memory. Compressed bodies are decoded transparently. The
+ * response must be closed, or its body read to the end, to return the
+ * connection to the pool.
+ */
+public class StreamingResponse implements Closeable {
+
+	private static final int CHUNK_SIZE = 16384;
+
+	private final URL url;
+	private final int status;
+	private final String reason;
+	private final Headers headers;
+	private final InputStream body;
+
+	StreamingResponse(URL url, int status, String reason, Headers headers, InputStream body) {
+		this.url = url;
+		this.status = status;
+		this.reason = reason;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public Headers getHeaders() {
+		return headers;
+	}
+
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Gets the charset of the body as specified by its Content-Type
+	 *
+	 * @return the charset, or UTF-8 if none is specified
+	 */
+	public Charset getCharset() {
+		return ContentCodec.getCharset(headers);
+	}
+
+	/**
+	 * Gets the decoded body. Closing the stream closes the response.
+	 *
+	 * @return the body stream
+	 */
+	public InputStream getBody() {
+		return body;
+	}
+
+	/**
+	 * Gets a reader over the body which decodes it with the charset of the
+	 * response
+	 *
+	 * @return the body reader
+	 */
+	public Reader getReader() {
+		return new BufferedReader(new InputStreamReader(body, getCharset()));
+	}
+
+	/**
+	 * Gets an iterator over the lines of the body. Closing the iterator
+	 * closes the response.
+	 *
+	 * @return the line iterator
+	 */
+	public LineIterator lineIterator() {
+		return new LineIterator(body, getCharset());
+	}
+
+	/**
+	 * Lazily streams the lines of the body. Closing the stream closes the
+	 * response.
+	 *
+	 * @return the stream of lines
+	 */
+	public Stream<String> lines() {
+		return lineIterator().stream();
+	}
+
+	/**
+	 * Reads the body in chunks, passing each chunk to the given consumer as a
+	 * buffer ready to be read. The buffer is reused for the next chunk once
+	 * the consumer returns and must not be retained. The response is closed
+	 * afterwards.
+	 *
+	 * @param consumer
+	 *            the consumer of each chunk
+	 * @return the total number of bytes read
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public long forEachChunk(ChunkConsumer consumer) throws IOException {
+		byte[] chunk = BufferPool.acquireBytes(CHUNK_SIZE);
+		try (InputStream in = body) {
+			ByteBuffer buffer = ByteBuffer.wrap(chunk);
+			long total = 0;
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				buffer.clear().limit(read);
+				consumer.accept(buffer);
+				total += read;
+			}
+			return total;
+		} finally {
+			BufferPool.release(chunk);
+		}
+	}
+
+	/**
+	 * Throws an {@link HttpException} and closes the response if the status
+	 * code indicates an error
+	 *
+	 * @return this response
+	 * @throws HttpException
+	 *             if the status code is 400 or higher
+	 */
+	public StreamingResponse checkStatus() throws HttpException {
+		if (status >= 400) {
+			try {
+				close();
+			} catch (IOException e) {
+				//Ignore
+			}
+			throw new HttpException(status, url);
+		}
+		return this;
+	}
+
+	/**
+	 * Closes the body, returning the connection to the pool if the rest of
+	 * the body is small enough to be skipped and closing it otherwise
+	 */
+	@Override
+	public void close() throws IOException {
+		body.close();
+	}
+
+	@Override
+	public String toString() {
+		return "HTTP " + status + " " + reason + " (" + url + ")";
+	}
+
+	/**
+	 * Receives chunks of a response body
+	 */
+	@FunctionalInterface
+	public interface ChunkConsumer {
+
+		void accept(ByteBuffer chunk) throws IOException;
+
+	}
+
+}
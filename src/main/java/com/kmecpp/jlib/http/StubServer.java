@@ -0,0 +1,481 @@
+package com.kmecpp.jlib.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.kmecpp.jlib.utils.SystemUtil;
+
+/**
+ * An embedded HTTP/1.1 server for tests and benchmarks which answers
+ * requests from in-process handlers. Connections are kept alive and each one
+ * is served on its own (virtual, where available) thread.
+ *
+ * <br>
+ * <br>
+ *
+ * Paths without a handler get the default response, which has a configurable
+ * status code, payload size and latency. The default response echoes the
+ * request body when there is one, so it can also stand in for POST
+ * endpoints.
+ */
+public class StubServer implements Closeable {
+
+	private static final int MAX_LINE_LENGTH = 65536;
+
+	private final ServerSocket server;
+	private final ExecutorService executor;
+	private final ConcurrentHashMap<String, Handler> handlers = new ConcurrentHashMap<>();
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+
+	private volatile long latency;
+	private volatile int status = 200;
+	private volatile byte[] payload = new byte[0];
+	private volatile boolean closed;
+
+	/**
+	 * Starts a server on an ephemeral port of the loopback interface
+	 *
+	 * @throws IOException
+	 *             if the server socket cannot be bound
+	 */
+	public StubServer() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Starts a server on the given port of the loopback interface
+	 *
+	 * @param port
+	 *            the port, or 0 for an ephemeral port
+	 * @throws IOException
+	 *             if the server socket cannot be bound
+	 */
+	public StubServer(int port) throws IOException {
+		this.server = new ServerSocket();
+		this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.executor = SystemUtil.newVirtualThreadExecutor("StubServer", 256);
+		Thread acceptor = new Thread(this::accept, "StubServer-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Gets the URL of the given path on this server
+	 *
+	 * @param path
+	 *            the absolute path, which may include a query
+	 * @return the URL
+	 */
+	public URL getUrl(String path) {
+		try {
+			return new URL("http", "localhost", getPort(), path);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Sets the handler for requests to the given path, ignoring the query
+	 *
+	 * @param path
+	 *            the path
+	 * @param handler
+	 *            the handler
+	 * @return this server
+	 */
+	public StubServer handle(String path, Handler handler) {
+		handlers.put(path, handler);
+		return this;
+	}
+
+	/**
+	 * Sets how long the server waits before sending each default response
+	 *
+	 * @param latency
+	 *            the latency
+	 * @param unit
+	 *            the unit of the latency
+	 * @return this server
+	 */
+	public StubServer setLatency(long latency, TimeUnit unit) {
+		this.latency = unit.toMillis(latency);
+		return this;
+	}
+
+	public StubServer setStatus(int status) {
+		this.status = status;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the default response body
+	 *
+	 * @param size
+	 *            the number of bytes to send
+	 * @return this server
+	 */
+	public StubServer setPayloadSize(int size) {
+		byte[] payload = new byte[size];
+		Arrays.fill(payload, (byte) 'x');
+		this.payload = payload;
+		return this;
+	}
+
+	/**
+	 * Gets the number of connections accepted so far
+	 *
+	 * @return the number of connections
+	 */
+	public long getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Gets the number of requests received so far
+	 *
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket socket = server.accept();
+				connections.incrementAndGet();
+				sockets.add(socket);
+				executor.execute(() -> serve(socket));
+			} catch (IOException | RuntimeException e) {
+				if (!closed) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(s.getInputStream());
+			OutputStream out = new BufferedOutputStream(s.getOutputStream());
+			while (!closed) {
+				Request request = readRequest(in);
+				if (request == null) {
+					break;
+				}
+				requests.incrementAndGet();
+
+				Response response;
+				try {
+					Handler handler = handlers.get(request.getPath());
+					response = handler != null ? handler.handle(request) : defaultResponse(request);
+				} catch (Exception e) {
+					response = Response.text(500, e.toString());
+				}
+				boolean close = request.getHeaders().hasToken("Connection", "close") || response.headers.hasToken("Connection", "close");
+				writeResponse(out, request, response);
+				if (close) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			//Client disconnected
+		} finally {
+			sockets.remove(socket);
+		}
+	}
+
+	private Response defaultResponse(Request request) throws InterruptedException {
+		if (latency > 0) {
+			Thread.sleep(latency);
+		}
+		return new Response(status, request.getBody().length > 0 ? request.getBody() : payload);
+	}
+
+	private static Request readRequest(InputStream in) throws IOException {
+		String line = readLine(in);
+		if (line == null) {
+			return null;
+		}
+		String[] parts = line.split(" ");
+		if (parts.length != 3) {
+			throw new IOException("Malformed request line: " + line);
+		}
+
+		Headers headers = new Headers();
+		while ((line = readLine(in)) != null && !line.isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+			}
+		}
+
+		byte[] body = new byte[0];
+		String length = headers.get("Content-Length");
+		if (length != null) {
+			body = new byte[Integer.parseInt(length.trim())];
+			for (int read = 0; read < body.length;) {
+				int count = in.read(body, read, body.length - read);
+				if (count == -1) {
+					throw new EOFException("Connection closed while reading the request body");
+				}
+				read += count;
+			}
+		}
+		return new Request(parts[0], parts[1], headers, body);
+	}
+
+	private static void writeResponse(OutputStream out, Request request, Response response) throws IOException {
+		boolean chunked = response.headers.hasToken("Transfer-Encoding", "chunked");
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("HTTP/1.1 ").append(response.status).append(' ').append(getReason(response.status)).append("\r\n");
+		sb.append(response.headers);
+		if (!chunked && response.status != 304 && response.status != 204) {
+			sb.append("Content-Length: ").append(response.body.length).append("\r\n");
+		}
+		sb.append("\r\n");
+		out.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+		if (!request.getMethod().equals("HEAD") && response.status != 304 && response.status != 204) {
+			if (chunked) {
+				String extension = response.chunkExtension == null ? "" : ";" + response.chunkExtension;
+				for (byte[] chunk : response.chunks != null ? response.chunks : new byte[][] { response.body }) {
+					if (chunk.length > 0) {
+						out.write((Integer.toHexString(chunk.length) + extension + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+						out.write(chunk);
+						out.write('\r');
+						out.write('\n');
+					}
+				}
+				out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+			} else {
+				out.write(response.body);
+			}
+		}
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int b;
+		while ((b = in.read()) != -1) {
+			if (b == '\n') {
+				int length = sb.length();
+				if (length > 0 && sb.charAt(length - 1) == '\r') {
+					sb.setLength(length - 1);
+				}
+				return sb.toString();
+			} else if (sb.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("Line too long");
+			}
+			sb.append((char) b);
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	private static String getReason(int status) {
+		switch (status) {
+		case 200:
+			return "OK";
+		case 204:
+			return "No Content";
+		case 301:
+			return "Moved Permanently";
+		case 302:
+			return "Found";
+		case 304:
+			return "Not Modified";
+		case 400:
+			return "Bad Request";
+		case 404:
+			return "Not Found";
+		case 500:
+			return "Internal Server Error";
+		case 503:
+			return "Service Unavailable";
+		default:
+			return "Status " + status;
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes every open connection
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		server.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Answers requests to a path of a {@link StubServer}
+	 */
+	@FunctionalInterface
+	public interface Handler {
+
+		Response handle(Request request) throws Exception;
+
+	}
+
+	/**
+	 * A request received by a {@link StubServer}
+	 */
+	public static final class Request {
+
+		private final String method;
+		private final String target;
+		private final Headers headers;
+		private final byte[] body;
+
+		private Request(String method, String target, Headers headers, byte[] body) {
+			this.method = method;
+			this.target = target;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Gets the path of the request target, without the query
+		 *
+		 * @return the path
+		 */
+		public String getPath() {
+			int query = target.indexOf('?');
+			return query == -1 ? target : target.substring(0, query);
+		}
+
+		/**
+		 * Gets the query of the request target
+		 *
+		 * @return the query, or null if there is none
+		 */
+		public String getQuery() {
+			int query = target.indexOf('?');
+			return query == -1 ? null : target.substring(query + 1);
+		}
+
+		public Headers getHeaders() {
+			return headers;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getBodyAsString() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+
+	}
+
+	/**
+	 * A response sent by a {@link StubServer} handler. A
+	 * <code>Content-Length</code> header is added automatically, unless a
+	 * <code>Transfer-Encoding: chunked</code> header is set, in which case the
+	 * body is sent as a single chunk. Use {@link #chunked(int, String...)} to
+	 * send a body in several chunks.
+	 */
+	public static final class Response {
+
+		private final int status;
+		private final Headers headers = new Headers();
+		private final byte[] body;
+		private final byte[][] chunks;
+		private String chunkExtension;
+
+		public Response(int status, byte[] body) {
+			this(status, body, null);
+		}
+
+		private Response(int status, byte[] body, byte[][] chunks) {
+			this.status = status;
+			this.body = body;
+			this.chunks = chunks;
+		}
+
+		/**
+		 * Creates a response with a UTF-8 text body
+		 *
+		 * @param status
+		 *            the status code
+		 * @param body
+		 *            the body
+		 * @return the response
+		 */
+		public static Response text(int status, String body) {
+			return new Response(status, body.getBytes(StandardCharsets.UTF_8)).header("Content-Type", "text/plain; charset=UTF-8");
+		}
+
+		/**
+		 * Creates a response with a UTF-8 text body which is sent with chunked
+		 * transfer encoding, one chunk per string
+		 *
+		 * @param status
+		 *            the status code
+		 * @param chunks
+		 *            the chunks of the body
+		 * @return the response
+		 */
+		public static Response chunked(int status, String... chunks) {
+			byte[][] data = new byte[chunks.length][];
+			for (int i = 0; i < chunks.length; i++) {
+				data[i] = chunks[i].getBytes(StandardCharsets.UTF_8);
+			}
+			return new Response(status, String.join("", chunks).getBytes(StandardCharsets.UTF_8), data).header("Transfer-Encoding", "chunked");
+		}
+
+		/**
+		 * Sets a chunk extension which is sent with every chunk of a chunked
+		 * response, and which clients have to ignore
+		 *
+		 * @param extension
+		 *            the extension, such as <code>name=value</code>
+		 * @return this response
+		 */
+		public Response chunkExtension(String extension) {
+			this.chunkExtension = extension;
+			return this;
+		}
+
+		public Response header(String name, String value) {
+			headers.add(name, value);
+			return this;
+		}
+
+	}
+
+}
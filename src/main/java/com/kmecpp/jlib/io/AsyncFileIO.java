@@ -0,0 +1,331 @@
+package com.kmecpp.jlib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.kmecpp.jlib.utils.IOUtil;
+
+/**
+ * Asynchronous counterparts of the file operations in {@link IOUtil}. Reads
+ * and writes are performed with {@link AsynchronousFileChannel}s and every
+ * operation returns a {@link CompletableFuture} instead of blocking the
+ * calling thread.
+ *
+ * <br>
+ * <br>
+ *
+ * The number of operations in flight is bounded. Operations submitted beyond
+ * the limit are queued, without blocking the caller, and started as earlier
+ * ones complete.
+ */
+public class AsyncFileIO implements Closeable {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final int maxInFlight;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Operation<?>> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Creates an instance with its own I/O thread pool, sized to the number of
+	 * processors, and the default in flight limit
+	 */
+	public AsyncFileIO() {
+		this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "AsyncFileIO");
+			thread.setDaemon(true);
+			return thread;
+		}), DEFAULT_MAX_IN_FLIGHT, true);
+	}
+
+	/**
+	 * Creates an instance using the given executor for I/O and completion
+	 * handlers. The executor is not shut down when this instance is closed.
+	 *
+	 * @param executor
+	 *            the executor to run I/O on
+	 * @param maxInFlight
+	 *            the maximum number of concurrent operations
+	 */
+	public AsyncFileIO(ExecutorService executor, int maxInFlight) {
+		this(executor, maxInFlight, false);
+	}
+
+	private AsyncFileIO(ExecutorService executor, int maxInFlight, boolean ownsExecutor) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("In flight limit must be positive: " + maxInFlight);
+		}
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Reads the file into an exactly sized byte array
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return a future completed with the contents of the file
+	 */
+	public CompletableFuture<byte[]> readBytes(File file) {
+		return submit(() -> {
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			try {
+				AsynchronousFileChannel channel = open(file, StandardOpenOption.READ);
+				ByteBuffer buffer;
+				try {
+					long size = channel.size();
+					if (size > Integer.MAX_VALUE - 8) {
+						throw new IOException("File is too large to be read into memory: " + file);
+					}
+					buffer = ByteBuffer.allocate((int) size);
+				} catch (Throwable t) {
+					IOUtil.close(channel);
+					throw t;
+				}
+				read(channel, buffer, future);
+			} catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		});
+	}
+
+	/**
+	 * Reads the file into a String
+	 *
+	 * @param file
+	 *            the file to read
+	 * @param charset
+	 *            the charset of the file
+	 * @return a future completed with the contents of the file
+	 */
+	public CompletableFuture<String> readString(File file, Charset charset) {
+		return readBytes(file).thenApply(data -> new String(data, charset));
+	}
+
+	/**
+	 * Writes the text to the file, replacing its contents
+	 *
+	 * @param file
+	 *            the file to write
+	 * @param text
+	 *            the text to write
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @return a future completed once the text has been written
+	 */
+	public CompletableFuture<Void> write(File file, CharSequence text, Charset charset) {
+		return submit(() -> {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			try {
+				ByteBuffer data = ChannelWriter.getEncoder(charset).encode(CharBuffer.wrap(text));
+				AsynchronousFileChannel channel = open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				write(channel, data, 0, future);
+			} catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		});
+	}
+
+	/**
+	 * Copies the file or directory tree on the I/O executor
+	 *
+	 * @param source
+	 *            the file or directory to copy
+	 * @param destination
+	 *            the destination
+	 * @return a future completed once the copy has finished
+	 * @see IOUtil#copyFile(File, File)
+	 */
+	public CompletableFuture<Void> copyFile(File source, File destination) {
+		return submit(() -> {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			executor.execute(() -> {
+				try {
+					IOUtil.copyFile(source, destination);
+					future.complete(null);
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				}
+			});
+			return future;
+		});
+	}
+
+	/**
+	 * Gets the number of operations currently running
+	 *
+	 * @return the number of operations in flight
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Gets the number of operations waiting for an in flight slot
+	 *
+	 * @return the number of queued operations
+	 */
+	public int getQueued() {
+		return pending.size();
+	}
+
+	/**
+	 * Shuts down the I/O thread pool if it was created by this instance
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private AsynchronousFileChannel open(File file, StandardOpenOption... options) throws IOException {
+		return AsynchronousFileChannel.open(file.toPath(), new HashSet<>(Arrays.asList(options)), executor);
+	}
+
+	private static void read(AsynchronousFileChannel channel, ByteBuffer buffer, CompletableFuture<byte[]> future) {
+		if (!buffer.hasRemaining()) {
+			IOUtil.close(channel);
+			future.complete(buffer.array());
+			return;
+		}
+		channel.read(buffer, buffer.position(), null, new CompletionHandler<Integer, Void>() {
+
+			@Override
+			public void completed(Integer result, Void attachment) {
+				if (result == -1) {
+					IOUtil.close(channel);
+					future.complete(Arrays.copyOf(buffer.array(), buffer.position()));
+				} else {
+					read(channel, buffer, future);
+				}
+			}
+
+			@Override
+			public void failed(Throwable t, Void attachment) {
+				IOUtil.close(channel);
+				future.completeExceptionally(t);
+			}
+
+		});
+	}
+
+	private static void write(AsynchronousFileChannel channel, ByteBuffer data, long position, CompletableFuture<Void> future) {
+		if (!data.hasRemaining()) {
+			try {
+				channel.close();
+				future.complete(null);
+			} catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+			return;
+		}
+		channel.write(data, position, null, new CompletionHandler<Integer, Void>() {
+
+			@Override
+			public void completed(Integer result, Void attachment) {
+				write(channel, data, position + result, future);
+			}
+
+			@Override
+			public void failed(Throwable t, Void attachment) {
+				IOUtil.close(channel);
+				future.completeExceptionally(t);
+			}
+
+		});
+	}
+
+	private <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+		Operation<T> task = new Operation<>(operation);
+		pending.add(task);
+		drain();
+		return task.result;
+	}
+
+	private void release() {
+		inFlight.decrementAndGet();
+		drain();
+	}
+
+	/**
+	 * Starts queued operations on the executor while there are free in flight
+	 * slots. Operations are never started on the calling thread, so neither
+	 * callers nor completion handlers run I/O, and an operation which fails
+	 * immediately cannot start the next one recursively.
+	 */
+	private void drain() {
+		while (!pending.isEmpty()) {
+			int current = inFlight.get();
+			if (current >= maxInFlight) {
+				return;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				Operation<?> task = pending.poll();
+				if (task == null) {
+					inFlight.decrementAndGet();
+					continue;
+				}
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					inFlight.decrementAndGet();
+					task.result.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	private final class Operation<T> implements Runnable {
+
+		private final Supplier<CompletableFuture<T>> operation;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		private Operation(Supplier<CompletableFuture<T>> operation) {
+			this.operation = operation;
+		}
+
+		@Override
+		public void run() {
+			CompletableFuture<T> future;
+			try {
+				future = operation.get();
+			} catch (Throwable t) {
+				future = new CompletableFuture<>();
+				future.completeExceptionally(t);
+			}
+			future.whenComplete((value, error) -> {
+				release();
+				if (error != null) {
+					result.completeExceptionally(error);
+				} else {
+					result.complete(value);
+				}
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.kmecpp.jlib.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.kmecpp.jlib.utils.SystemUtil;
+
+/**
+ * A pool of reusable byte arrays, char arrays and direct byte buffers used as
+ * scratch space for I/O. Buffers are grouped into size classes of 4 KB, 16
+ * KB, 64 KB and 256 KB. Each platform thread keeps a small cache of at most
+ * {@link #THREAD_CACHE_BYTES}, so most acquisitions never contend with other
+ * threads. Buffers which do not fit in that cache go to a small shared pool
+ * split into stripes by thread, which virtual threads use directly since a
+ * per thread cache is never reused by them. Requests larger than the largest
+ * size class are allocated normally and never cached.
+ *
+ * <br>
+ * <br>
+ *
+ * A buffer must not be used after it has been released, and must be
+ * released at most once.
+ */
+public final class BufferPool {
+
+	/**
+	 * The maximum number of bytes cached by a single platform thread
+	 */
+	public static final int THREAD_CACHE_BYTES = 1 << 19;
+
+	private static final int MIN_SHIFT = 12;
+	private static final int CLASSES = 4;
+	private static final int CLASS_STEP = 2;
+	private static final int MAX_SIZE = 1 << (MIN_SHIFT + (CLASSES - 1) * CLASS_STEP);
+	private static final int CACHED_PER_CLASS = 2;
+
+	private static final int BYTES = 0;
+	private static final int CHARS = 1;
+	private static final int DIRECT = 2;
+
+	private static final int STRIPE_BYTES = 1 << 20;
+	private static final Cache[] stripes = new Cache[Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), 8))];
+	private static final ThreadLocal<Cache> caches = ThreadLocal.withInitial(() -> new Cache(THREAD_CACHE_BYTES));
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+
+	static {
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Cache(STRIPE_BYTES);
+		}
+	}
+
+	private BufferPool() {
+	}
+
+	/**
+	 * Acquires a byte array of at least the given size
+	 *
+	 * @param size
+	 *            the minimum size
+	 * @return a byte array with unspecified contents
+	 */
+	public static byte[] acquireBytes(int size) {
+		int index = classOf(size);
+		if (index >= 0) {
+			Object cached = take(BYTES, index);
+			if (cached != null) {
+				hits.increment();
+				return (byte[]) cached;
+			}
+		}
+		misses.increment();
+		return new byte[index < 0 ? size : sizeOf(index)];
+	}
+
+	/**
+	 * Returns a byte array to the pool
+	 *
+	 * @param array
+	 *            the array to release
+	 */
+	public static void release(byte[] array) {
+		int index = exactClassOf(array.length);
+		if (index >= 0) {
+			give(BYTES, index, array);
+		}
+	}
+
+	/**
+	 * Acquires a char array of at least the given size
+	 *
+	 * @param size
+	 *            the minimum size
+	 * @return a char array with unspecified contents
+	 */
+	public static char[] acquireChars(int size) {
+		int index = classOf(size);
+		if (index >= 0) {
+			Object cached = take(CHARS, index);
+			if (cached != null) {
+				hits.increment();
+				return (char[]) cached;
+			}
+		}
+		misses.increment();
+		return new char[index < 0 ? size : sizeOf(index)];
+	}
+
+	/**
+	 * Returns a char array to the pool
+	 *
+	 * @param array
+	 *            the array to release
+	 */
+	public static void release(char[] array) {
+		int index = exactClassOf(array.length);
+		if (index >= 0) {
+			give(CHARS, index, array);
+		}
+	}
+
+	/**
+	 * Acquires a cleared direct byte buffer with a capacity of at least the
+	 * given size
+	 *
+	 * @param size
+	 *            the minimum capacity
+	 * @return a cleared direct buffer
+	 */
+	public static ByteBuffer acquireDirect(int size) {
+		int index = classOf(size);
+		if (index >= 0) {
+			ByteBuffer cached = (ByteBuffer) take(DIRECT, index);
+			if (cached != null) {
+				hits.increment();
+				cached.clear();
+				return cached;
+			}
+		}
+		misses.increment();
+		return ByteBuffer.allocateDirect(index < 0 ? size : sizeOf(index));
+	}
+
+	/**
+	 * Returns a direct buffer to the pool
+	 *
+	 * @param buffer
+	 *            the buffer to release
+	 */
+	public static void release(ByteBuffer buffer) {
+		int index = exactClassOf(buffer.capacity());
+		if (index >= 0 && buffer.isDirect() && !buffer.isReadOnly()) {
+			give(DIRECT, index, buffer);
+		}
+	}
+
+	/**
+	 * Gets the number of acquisitions served from the pool
+	 *
+	 * @return the number of pool hits
+	 */
+	public static long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of acquisitions which had to allocate a new buffer
+	 *
+	 * @return the number of pool misses
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the fraction of acquisitions served from the pool
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if nothing was acquired
+	 */
+	public static double getHitRate() {
+		long hitCount = getHits();
+		long total = hitCount + getMisses();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Resets the hit and miss counters
+	 */
+	public static void resetStatistics() {
+		hits.reset();
+		misses.reset();
+	}
+
+	private static int classOf(int size) {
+		if (size > MAX_SIZE) {
+			return -1;
+		}
+		for (int i = 0; i < CLASSES; i++) {
+			if (size <= sizeOf(i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int exactClassOf(int size) {
+		int index = classOf(size);
+		return index >= 0 && sizeOf(index) == size ? index : -1;
+	}
+
+	private static int sizeOf(int index) {
+		return 1 << (MIN_SHIFT + index * CLASS_STEP);
+	}
+
+	private static Object take(int kind, int index) {
+		Thread thread = Thread.currentThread();
+		if (!SystemUtil.isVirtual(thread)) {
+			Object cached = caches.get().pop(kind, index);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		Cache stripe = stripeOf(thread);
+		synchronized (stripe) {
+			return stripe.pop(kind, index);
+		}
+	}
+
+	private static void give(int kind, int index, Object value) {
+		Thread thread = Thread.currentThread();
+		if (!SystemUtil.isVirtual(thread) && caches.get().push(kind, index, value)) {
+			return;
+		}
+		Cache stripe = stripeOf(thread);
+		synchronized (stripe) {
+			stripe.push(kind, index, value);
+		}
+	}
+
+	private static Cache stripeOf(Thread thread) {
+		return stripes[(int) thread.getId() & (stripes.length - 1)];
+	}
+
+	private static final class Cache {
+
+		private final Object[][][] stacks = new Object[3][CLASSES][CACHED_PER_CLASS];
+		private final int[][] sizes = new int[3][CLASSES];
+		private final int capacity;
+		private int retained;
+
+		private Cache(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private Object pop(int kind, int index) {
+			int size = sizes[kind][index];
+			if (size == 0) {
+				return null;
+			}
+			sizes[kind][index] = --size;
+			Object value = stacks[kind][index][size];
+			stacks[kind][index][size] = null;
+			retained -= bytesOf(kind, index);
+			return value;
+		}
+
+		private boolean push(int kind, int index, Object value) {
+			int size = sizes[kind][index];
+			int bytes = bytesOf(kind, index);
+			if (size == CACHED_PER_CLASS || retained + bytes > capacity) {
+				return false;
+			}
+			stacks[kind][index][size] = value;
+			sizes[kind][index] = size + 1;
+			retained += bytes;
+			return true;
+		}
+
+		private static int bytesOf(int kind, int index) {
+			return kind == CHARS ? sizeOf(index) << 1 : sizeOf(index);
+		}
+
+	}
+
+}
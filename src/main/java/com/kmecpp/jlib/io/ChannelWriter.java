@@ -0,0 +1,233 @@
+package com.kmecpp.jlib.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes text to channels by encoding it straight into a direct
+ * {@link ByteBuffer} borrowed from the {@link BufferPool}, avoiding the
+ * intermediate char and byte arrays of {@link java.io.Writer}s. Unmappable
+ * characters are replaced.
+ */
+public final class ChannelWriter {
+
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	private static final ThreadLocal<HashMap<Charset, CharsetEncoder>> encoders = ThreadLocal.withInitial(HashMap::new);
+
+	private ChannelWriter() {
+	}
+
+	/**
+	 * Encodes the text and writes it to the channel
+	 *
+	 * @param channel
+	 *            the channel to write to
+	 * @param text
+	 *            the text to write
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @return the number of bytes written
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static long write(WritableByteChannel channel, CharSequence text, Charset charset) throws IOException {
+		ByteBuffer buffer = BufferPool.acquireDirect(BUFFER_SIZE);
+		CharsetEncoder encoder = getEncoder(charset);
+		CharBuffer in = CharBuffer.wrap(text);
+		long written = 0;
+		try {
+			while (encoder.encode(in, buffer, true).isOverflow()) {
+				written += drain(channel, buffer);
+			}
+			while (encoder.flush(buffer).isOverflow()) {
+				written += drain(channel, buffer);
+			}
+			return written + drain(channel, buffer);
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * Encodes the text and writes it to the file with the given options
+	 *
+	 * @param file
+	 *            the file to write to
+	 * @param text
+	 *            the text to write
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @param options
+	 *            the options to open the file with. If none are given the
+	 *            file is created or truncated.
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void write(Path file, CharSequence text, Charset charset, OpenOption... options) throws IOException {
+		if (options.length == 0) {
+			options = new OpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE };
+		}
+		try (FileChannel channel = FileChannel.open(file, options)) {
+			write(channel, text, charset);
+		}
+	}
+
+	/**
+	 * Atomically replaces the contents of the file. The text is written to a
+	 * temporary file in the same directory, which is forced to disk and then
+	 * renamed over the target, so readers and crashes only ever observe the
+	 * old or the new contents. The permissions and, where allowed, the owner
+	 * of an existing file are kept.
+	 *
+	 * @param file
+	 *            the file to replace
+	 * @param text
+	 *            the new contents of the file
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void writeAtomic(Path file, CharSequence text, Charset charset) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = directory.resolve("." + file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+		try {
+			//Created with the default permissions of a new file, rather than the private ones of a temporary file
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				copyAttributes(file, temp);
+				write(channel, text, charset);
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		syncDirectory(directory);
+	}
+
+	/**
+	 * Copies the permissions and owner of the file being replaced onto its
+	 * replacement, where the platform supports them
+	 *
+	 * @param source
+	 *            the file being replaced
+	 * @param target
+	 *            the replacement
+	 */
+	private static void copyAttributes(Path source, Path target) {
+		if (!Files.exists(source)) {
+			return;
+		}
+		try {
+			Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+		} catch (IOException | UnsupportedOperationException e) {
+			//Not a POSIX file system
+		}
+		try {
+			UserPrincipal owner = Files.getOwner(source);
+			if (!owner.equals(Files.getOwner(target))) {
+				Files.setOwner(target, owner);
+			}
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			//Only privileged users can change the owner
+		}
+	}
+
+	/**
+	 * Forces a directory entry change, such as a rename, to disk where the
+	 * platform supports opening directories
+	 *
+	 * @param directory
+	 *            the directory to sync
+	 */
+	static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			//Not supported on this platform
+		}
+	}
+
+	/**
+	 * Encodes the text into the given list of buffers, appending new direct
+	 * buffers to the list as needed. Encoding continues at the current
+	 * position of the buffer at the given index, and any following buffers are
+	 * cleared and reused.
+	 *
+	 * @param text
+	 *            the text to encode
+	 * @param encoder
+	 *            the encoder to use
+	 * @param buffers
+	 *            the reusable buffers
+	 * @param index
+	 *            the index of the buffer to continue encoding into
+	 * @return the index of the last buffer containing data
+	 */
+	static int encode(CharSequence text, CharsetEncoder encoder, List<ByteBuffer> buffers, int index) {
+		CharBuffer in = CharBuffer.wrap(text);
+		encoder.reset();
+		ByteBuffer buffer = buffers.get(index);
+		while (encoder.encode(in, buffer, true).isOverflow()) {
+			buffer = nextBuffer(buffers, ++index);
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			buffer = nextBuffer(buffers, ++index);
+		}
+		return index;
+	}
+
+	private static ByteBuffer nextBuffer(List<ByteBuffer> buffers, int index) {
+		if (index == buffers.size()) {
+			buffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		ByteBuffer buffer = buffers.get(index);
+		buffer.clear();
+		return buffer;
+	}
+
+	static CharsetEncoder getEncoder(Charset charset) {
+		HashMap<Charset, CharsetEncoder> cache = encoders.get();
+		CharsetEncoder encoder = cache.get(charset);
+		if (encoder == null) {
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			cache.put(charset, encoder);
+		}
+		return encoder.reset();
+	}
+
+	private static long drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		long written = 0;
+		while (buffer.hasRemaining()) {
+			written += channel.write(buffer);
+		}
+		buffer.clear();
+		return written;
+	}
+
+}
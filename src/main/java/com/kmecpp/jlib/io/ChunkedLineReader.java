@@ -0,0 +1,119 @@
+package com.kmecpp.jlib.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a byte source into lines by scanning large chunks for '\n' bytes.
+ * Both the chunk buffer and the buffer used for lines spanning multiple
+ * chunks are reused, so the only allocation per line is the resulting
+ * String. Lines may be terminated by "\n" or "\r\n".
+ *
+ * <br>
+ * <br>
+ *
+ * This only works for charsets in which '\n' and '\r' are encoded as single
+ * ASCII bytes which never appear inside other characters, see
+ * {@link #isSupported(Charset)}.
+ */
+abstract class ChunkedLineReader {
+
+	static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	private final Charset charset;
+
+	protected final byte[] chunk;
+	protected int offset;
+	protected int limit;
+
+	private byte[] line = new byte[128];
+	private int lineLength;
+
+	ChunkedLineReader(Charset charset, int chunkSize) {
+		this.charset = charset;
+		this.chunk = new byte[chunkSize];
+	}
+
+	/**
+	 * Refills the chunk buffer once it has been consumed
+	 *
+	 * @return the number of bytes read, or -1 at the end of the source
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	protected abstract int fill() throws IOException;
+
+	/**
+	 * Reads the next line
+	 *
+	 * @return the line, or null at the end of the source
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	String readLine() throws IOException {
+		lineLength = 0;
+		boolean partial = false;
+		while (true) {
+			if (offset >= limit) {
+				int read = fill();
+				if (read <= 0) {
+					offset = limit = 0;
+					return partial ? decode(line, 0, lineLength) : null;
+				}
+				offset = 0;
+				limit = read;
+			}
+
+			int start = offset;
+			for (int i = start; i < limit; i++) {
+				if (chunk[i] == '\n') {
+					offset = i + 1;
+					if (!partial) {
+						return decode(chunk, start, i - start);
+					}
+					append(start, i - start);
+					return decode(line, 0, lineLength);
+				}
+			}
+			append(start, limit - start);
+			offset = limit;
+			partial = true;
+		}
+	}
+
+	private void append(int start, int length) {
+		if (lineLength + length > line.length) {
+			line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+		}
+		System.arraycopy(chunk, start, line, lineLength, length);
+		lineLength += length;
+	}
+
+	private String decode(byte[] bytes, int start, int length) {
+		if (length > 0 && bytes[start + length - 1] == '\r') {
+			length--;
+		}
+		return new String(bytes, start, length, charset);
+	}
+
+	/**
+	 * Tests whether lines encoded with the given charset can be split on raw
+	 * '\n' bytes
+	 *
+	 * @param charset
+	 *            the charset
+	 * @return true if the charset is supported
+	 */
+	static boolean isSupported(Charset charset) {
+		if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII)) {
+			return true;
+		}
+		return charset.canEncode()
+				&& Arrays.equals("\n".getBytes(charset), new byte[] { '\n' })
+				&& Arrays.equals("\r".getBytes(charset), new byte[] { '\r' })
+				&& !charset.name().toUpperCase().startsWith("UTF-");
+	}
+
+}
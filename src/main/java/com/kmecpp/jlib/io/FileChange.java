@@ -0,0 +1,82 @@
+package com.kmecpp.jlib.io;
+
+import java.nio.file.Path;
+
+/**
+ * A coalesced change to a single path reported by a {@link FileWatcher}
+ */
+public final class FileChange {
+
+	private final Path path;
+	private final Kind kind;
+
+	FileChange(Path path, Kind kind) {
+		this.path = path;
+		this.kind = kind;
+	}
+
+	/**
+	 * Gets the path which changed. For {@link Kind#OVERFLOW} this is the
+	 * watched directory whose events were lost.
+	 *
+	 * @return the changed path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FileChange)) {
+			return false;
+		}
+		FileChange other = (FileChange) obj;
+		return path.equals(other.path) && kind == other.kind;
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode() * 31 + kind.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + path;
+	}
+
+	public enum Kind {
+
+		CREATED,
+		MODIFIED,
+		DELETED,
+
+		/**
+		 * Events were lost and the directory should be rescanned
+		 */
+		OVERFLOW;
+
+		/**
+		 * Merges a later change to the same path into this one
+		 *
+		 * @param next
+		 *            the later change
+		 * @return the net change, or null if the changes cancel out
+		 */
+		Kind merge(Kind next) {
+			if (this == OVERFLOW || next == OVERFLOW) {
+				return OVERFLOW;
+			} else if (this == CREATED) {
+				return next == DELETED ? null : CREATED;
+			} else if (this == DELETED) {
+				return next == CREATED ? MODIFIED : next;
+			}
+			return next;
+		}
+
+	}
+
+}
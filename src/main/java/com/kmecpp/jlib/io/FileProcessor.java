@@ -0,0 +1,303 @@
+package com.kmecpp.jlib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes large files line by line on a {@link ForkJoinPool}. The file is
+ * divided into line aligned byte ranges of roughly {@link #getChunkSize()}
+ * bytes, each range is memory mapped and scanned for lines by its own task,
+ * and the per chunk results are combined in file order, much like a
+ * {@link java.util.stream.Collector}.
+ *
+ * <pre>
+ * FileProcessor.Result&lt;long[]&gt; result = new FileProcessor().process(file,
+ * 		() -&gt; new long[1],
+ * 		(count, line) -&gt; count[0] += line.contains("ERROR") ? 1 : 0,
+ * 		(a, b) -&gt; new long[] { a[0] + b[0] });
+ * </pre>
+ *
+ * The charset must encode '\n' as a single byte that never appears inside
+ * another character, see {@link LineSpliterator#isSupported(Charset)}.
+ */
+public class FileProcessor {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 25;
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final Charset charset;
+
+	/**
+	 * Creates a processor which uses the common pool, 32 MB chunks and the
+	 * platform charset
+	 */
+	public FileProcessor() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, Charset.defaultCharset());
+	}
+
+	public FileProcessor(ForkJoinPool pool, int chunkSize, Charset charset) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		} else if (!LineSpliterator.isSupported(charset)) {
+			throw new IllegalArgumentException("Lines cannot be split by byte for charset: " + charset);
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.charset = charset;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Invokes the given callback for every line of the file. The callback is
+	 * called concurrently from multiple threads and in no particular order.
+	 *
+	 * @param file
+	 *            the file to process
+	 * @param action
+	 *            the callback to invoke for every line
+	 * @return the processing statistics
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public Result<Void> forEach(File file, Consumer<String> action) throws IOException {
+		return process(file, () -> null, (ignored, line) -> action.accept(line), (a, b) -> null);
+	}
+
+	/**
+	 * Processes every line of the file. Each chunk gets its own container from
+	 * the supplier, which is filled by the accumulator from a single thread.
+	 * Containers of adjacent chunks are then merged by the combiner, preserving
+	 * file order.
+	 *
+	 * @param file
+	 *            the file to process
+	 * @param supplier
+	 *            creates the result container for a chunk
+	 * @param accumulator
+	 *            adds a line to a result container
+	 * @param combiner
+	 *            merges the results of two adjacent chunks
+	 * @return the combined result and processing statistics
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public <A> Result<A> process(File file, Supplier<A> supplier, BiConsumer<A, String> accumulator, BinaryOperator<A> combiner) throws IOException {
+		long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long[] boundaries = split(channel, size);
+			ChunkTask<A> task = new ChunkTask<>(channel, boundaries, 0, boundaries.length - 1, supplier, accumulator, combiner);
+			A value;
+			try {
+				value = pool.invoke(task);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return new Result<>(value, size, task.lines, boundaries.length - 1, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Computes the chunk boundaries of the file. Every boundary except the
+	 * last is the start of a line.
+	 */
+	private long[] split(FileChannel channel, long size) throws IOException {
+		ArrayList<Long> boundaries = new ArrayList<>();
+		boundaries.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long position = 0;
+		while (size - position > chunkSize) {
+			long search = position + chunkSize;
+			position = size;
+			scan: while (search < size) {
+				buffer.clear();
+				int read = channel.read(buffer, search);
+				if (read <= 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					if (buffer.get(i) == '\n') {
+						position = search + i + 1;
+						break scan;
+					}
+				}
+				search += read;
+			}
+			if (position < size) {
+				boundaries.add(position);
+			}
+		}
+		boundaries.add(size);
+
+		long[] result = new long[boundaries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i);
+		}
+		return result;
+	}
+
+	private final class ChunkTask<A> extends RecursiveTask<A> {
+
+		private static final long serialVersionUID = 6187251086378926375L;
+
+		private final FileChannel channel;
+		private final long[] boundaries;
+		private final int from;
+		private final int to;
+		private final Supplier<A> supplier;
+		private final BiConsumer<A, String> accumulator;
+		private final BinaryOperator<A> combiner;
+
+		private long lines;
+
+		private ChunkTask(FileChannel channel, long[] boundaries, int from, int to, Supplier<A> supplier, BiConsumer<A, String> accumulator,
+				BinaryOperator<A> combiner) {
+			this.channel = channel;
+			this.boundaries = boundaries;
+			this.from = from;
+			this.to = to;
+			this.supplier = supplier;
+			this.accumulator = accumulator;
+			this.combiner = combiner;
+		}
+
+		@Override
+		protected A compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				ChunkTask<A> left = new ChunkTask<>(channel, boundaries, from, middle, supplier, accumulator, combiner);
+				ChunkTask<A> right = new ChunkTask<>(channel, boundaries, middle, to, supplier, accumulator, combiner);
+				left.fork();
+				A rightValue = right.compute();
+				A leftValue = left.join();
+				lines = left.lines + right.lines;
+				return combiner.apply(leftValue, rightValue);
+			}
+
+			A container = supplier.get();
+			if (from < to) {
+				try {
+					lines = processChunk(boundaries[from], boundaries[to], container);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return container;
+		}
+
+		private long processChunk(long start, long end, A container) throws IOException {
+			if (end <= start) {
+				return 0;
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+			byte[] line = new byte[256];
+			long count = 0;
+			int lineStart = 0;
+			int limit = buffer.limit();
+			for (int i = 0; i <= limit; i++) {
+				if (i == limit ? i > lineStart : buffer.get(i) == '\n') {
+					int length = i - lineStart;
+					if (length > line.length) {
+						line = new byte[Math.max(length, line.length * 2)];
+					}
+					buffer.position(lineStart);
+					buffer.get(line, 0, length);
+					accumulator.accept(container, decode(line, length));
+					count++;
+					lineStart = i + 1;
+				}
+			}
+			return count;
+		}
+
+		private String decode(byte[] bytes, int length) {
+			if (length > 0 && bytes[length - 1] == '\r') {
+				length--;
+			}
+			return new String(bytes, 0, length, charset);
+		}
+
+	}
+
+	/**
+	 * The result of processing a file along with throughput statistics
+	 */
+	public static final class Result<A> {
+
+		private final A value;
+		private final long bytes;
+		private final long lines;
+		private final int chunks;
+		private final long nanos;
+
+		private Result(A value, long bytes, long lines, int chunks, long nanos) {
+			this.value = value;
+			this.bytes = bytes;
+			this.lines = lines;
+			this.chunks = chunks;
+			this.nanos = nanos;
+		}
+
+		public A getValue() {
+			return value;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getLines() {
+			return lines;
+		}
+
+		public int getChunks() {
+			return chunks;
+		}
+
+		public long getElapsedNanos() {
+			return nanos;
+		}
+
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+		}
+
+		public double getLinesPerSecond() {
+			return nanos == 0 ? 0 : lines * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Processed %d lines (%d bytes) in %d chunks in %.3fs: %.1f MB/s, %.0f lines/s",
+					lines, bytes, chunks, nanos / 1e9, getBytesPerSecond() / (1 << 20), getLinesPerSecond());
+		}
+
+	}
+
+}
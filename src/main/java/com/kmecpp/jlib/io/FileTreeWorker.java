@@ -0,0 +1,321 @@
+package com.kmecpp.jlib.io;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies and deletes directory trees using a bounded pool of worker threads.
+ * The tree is walked with {@link Files#walkFileTree} on the calling thread,
+ * which creates directories in order and hands individual files off to the
+ * workers. When the work queue is full the walking thread performs the next
+ * operation itself, which bounds memory use for trees of any size. Small
+ * trees are handled entirely on the calling thread, and the worker threads
+ * are only started once a tree turns out to have more files than that.
+ *
+ * <br>
+ * <br>
+ *
+ * Files are copied with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)},
+ * which lets the JDK use the most efficient copy the platform offers, such
+ * as in-kernel copies that preserve sparse regions or share extents on file
+ * systems that support it. Symbolic links are copied as links rather than
+ * followed.
+ */
+public class FileTreeWorker {
+
+	private static final long PROGRESS_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+	/**
+	 * The number of files handled on the calling thread before the worker
+	 * threads are started
+	 */
+	static final int SERIAL_THRESHOLD = 64;
+
+	private final int threads;
+	private final ProgressListener listener;
+
+	/**
+	 * Creates a worker with two threads per processor and no progress
+	 * reporting
+	 */
+	public FileTreeWorker() {
+		this(Runtime.getRuntime().availableProcessors() * 2, null);
+	}
+
+	/**
+	 * Creates a worker with the given number of threads
+	 *
+	 * @param threads
+	 *            the number of worker threads
+	 * @param listener
+	 *            the listener to report progress to, or null
+	 */
+	public FileTreeWorker(int threads, ProgressListener listener) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Thread count must be positive: " + threads);
+		}
+		this.threads = threads;
+		this.listener = listener;
+	}
+
+	/**
+	 * Copies the source file or directory tree to the target, replacing
+	 * existing files
+	 *
+	 * @param source
+	 *            the file or directory to copy
+	 * @param target
+	 *            the destination
+	 * @return the final progress of the operation
+	 * @throws IOException
+	 *             if any file could not be copied
+	 */
+	public Progress copy(final Path source, final Path target) throws IOException {
+		final Operation operation = new Operation();
+		try {
+			Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+					return operation.continueWalk();
+				}
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+					final Path destination = target.resolve(source.relativize(file).toString());
+					operation.submit(() -> {
+						Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+						operation.completed(attrs.size());
+					});
+					return operation.continueWalk();
+				}
+
+			});
+		} finally {
+			operation.finish();
+		}
+		operation.checkError();
+		return operation.complete();
+	}
+
+	/**
+	 * Deletes the given file or directory tree. Files are deleted in parallel
+	 * and directories are deleted afterwards, deepest first.
+	 *
+	 * @param root
+	 *            the file or directory to delete
+	 * @return the final progress of the operation
+	 * @throws IOException
+	 *             if any file or directory could not be deleted
+	 */
+	public Progress delete(Path root) throws IOException {
+		final Operation operation = new Operation();
+		final ArrayList<Path> directories = new ArrayList<>();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+					operation.submit(() -> {
+						Files.delete(file);
+						operation.completed(attrs.size());
+					});
+					return operation.continueWalk();
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					if (e != null) {
+						throw e;
+					}
+					directories.add(dir);
+					return operation.continueWalk();
+				}
+
+			});
+		} finally {
+			operation.finish();
+		}
+		operation.checkError();
+
+		for (Path directory : directories) {
+			Files.delete(directory);
+			operation.completed(0);
+		}
+		return operation.complete();
+	}
+
+	/**
+	 * Receives progress updates from a running operation. Updates are
+	 * delivered from worker threads at most a few times per second, with a
+	 * final update when the operation completes.
+	 */
+	public interface ProgressListener {
+
+		void onProgress(Progress progress);
+
+	}
+
+	/**
+	 * A snapshot of the progress of a copy or delete operation
+	 */
+	public static final class Progress {
+
+		private final long files;
+		private final long bytes;
+		private final long nanos;
+		private final boolean done;
+
+		private Progress(long files, long bytes, long nanos, boolean done) {
+			this.files = files;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.done = done;
+		}
+
+		/**
+		 * Gets the number of files and directories processed
+		 *
+		 * @return the number of entries processed
+		 */
+		public long getFiles() {
+			return files;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public long getElapsedNanos() {
+			return nanos;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		public double getBytesPerSecond() {
+			return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+		}
+
+		public double getFilesPerSecond() {
+			return nanos == 0 ? 0 : files * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d files, %d bytes in %.3fs (%.1f MB/s, %.0f files/s)",
+					files, bytes, nanos / 1e9, getBytesPerSecond() / (1 << 20), getFilesPerSecond());
+		}
+
+	}
+
+	private interface IOTask {
+
+		void run() throws IOException;
+
+	}
+
+	private final class Operation {
+
+		private final long start = System.nanoTime();
+		private ThreadPoolExecutor executor; //Only accessed by the walking thread
+		private int submitted;
+		private final AtomicLong files = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong lastReport = new AtomicLong(start);
+		private final AtomicReference<IOException> error = new AtomicReference<>();
+
+		private void submit(IOTask task) {
+			Runnable runnable = () -> {
+				if (error.get() != null) {
+					return;
+				}
+				try {
+					task.run();
+				} catch (IOException e) {
+					if (!error.compareAndSet(null, e)) {
+						error.get().addSuppressed(e);
+					}
+				}
+			};
+			if (executor == null && submitted++ < SERIAL_THRESHOLD) {
+				runnable.run();
+				return;
+			}
+			if (executor == null) {
+				executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+						new ArrayBlockingQueue<Runnable>(threads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+			}
+			executor.execute(runnable);
+		}
+
+		private FileVisitResult continueWalk() {
+			return error.get() == null ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+		}
+
+		private void completed(long size) {
+			files.incrementAndGet();
+			bytes.addAndGet(size);
+			report(false);
+		}
+
+		private void report(boolean done) {
+			if (listener == null) {
+				return;
+			}
+			long now = System.nanoTime();
+			long last = lastReport.get();
+			if (done || (now - last >= PROGRESS_INTERVAL && lastReport.compareAndSet(last, now))) {
+				listener.onProgress(progress(done));
+			}
+		}
+
+		private Progress progress(boolean done) {
+			return new Progress(files.get(), bytes.get(), System.nanoTime() - start, done);
+		}
+
+		private void finish() throws IOException {
+			if (executor == null) {
+				return;
+			}
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+					report(false);
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for file operations", e);
+			}
+		}
+
+		private void checkError() throws IOException {
+			IOException e = error.get();
+			if (e != null) {
+				throw e;
+			}
+		}
+
+		private Progress complete() {
+			report(true);
+			return progress(true);
+		}
+
+	}
+
+}
@@ -0,0 +1,411 @@
+package com.kmecpp.jlib.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches files and directories for changes using the platform
+ * {@link WatchService} and reports them to listeners in debounced batches.
+ * Events are collected until no new event has arrived for the debounce delay,
+ * or until ten times that delay has passed since the first pending event, so
+ * a burst of writes results in a single notification. Repeated events for the
+ * same path are coalesced into one net {@link FileChange}.
+ *
+ * <br>
+ * <br>
+ *
+ * Listeners are invoked on the executor given to the constructor. If the
+ * executor is multithreaded, a slow listener may receive its next batch before
+ * the previous one has been handled, so such listeners must be thread safe.
+ */
+public class FileWatcher implements Closeable {
+
+	public static final long DEFAULT_DEBOUNCE = 100;
+
+	private static final int MAX_DELAY_FACTOR = 10;
+
+	private static volatile FileWatcher shared;
+
+	private final WatchService service;
+	private final long debounce;
+	private final Executor executor;
+	private final Thread thread;
+
+	private final HashMap<Path, WatchKey> keys = new HashMap<>();
+	private final HashMap<WatchKey, Path> directories = new HashMap<>();
+	private final HashMap<Path, List<Registration>> registrations = new HashMap<>();
+
+	//Only accessed by the watcher thread
+	private final LinkedHashMap<Registration, LinkedHashMap<Path, FileChange.Kind>> pending = new LinkedHashMap<>();
+	private long firstEvent;
+	private long lastEvent;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a watcher which delivers changes on its own thread after the
+	 * {@link #DEFAULT_DEBOUNCE default} debounce delay
+	 *
+	 * @throws IOException
+	 *             if the watch service cannot be created
+	 */
+	public FileWatcher() throws IOException {
+		this(DEFAULT_DEBOUNCE, TimeUnit.MILLISECONDS, Runnable::run);
+	}
+
+	/**
+	 * Creates a watcher with the given debounce delay
+	 *
+	 * @param debounce
+	 *            how long no new events must arrive before pending changes
+	 *            are delivered
+	 * @param unit
+	 *            the unit of the debounce delay
+	 * @param executor
+	 *            the executor listeners are invoked on
+	 * @throws IOException
+	 *             if the watch service cannot be created
+	 */
+	public FileWatcher(long debounce, TimeUnit unit, Executor executor) throws IOException {
+		this.service = FileSystems.getDefault().newWatchService();
+		this.debounce = Math.max(1, unit.toMillis(debounce));
+		this.executor = executor;
+		this.thread = new Thread(this::run, "FileWatcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Gets a lazily created watcher shared by the library, which uses the
+	 * default debounce delay and delivers changes on its own thread
+	 *
+	 * @return the shared watcher
+	 * @throws IOException
+	 *             if the watch service cannot be created
+	 */
+	public static FileWatcher getShared() throws IOException {
+		FileWatcher watcher = shared;
+		if (watcher == null) {
+			synchronized (FileWatcher.class) {
+				if ((watcher = shared) == null) {
+					shared = watcher = new FileWatcher();
+				}
+			}
+		}
+		return watcher;
+	}
+
+	/**
+	 * Watches a single file, or the direct children of a directory
+	 *
+	 * @param path
+	 *            the file or directory to watch
+	 * @param listener
+	 *            the listener to notify
+	 * @return a handle which stops watching when closed
+	 * @throws IOException
+	 *             if the path cannot be watched
+	 */
+	public Closeable watch(Path path, Listener listener) throws IOException {
+		path = path.toAbsolutePath().normalize();
+		Registration registration;
+		if (Files.isDirectory(path)) {
+			registration = new Registration(path, null, false, listener);
+			register(path, registration);
+		} else {
+			registration = new Registration(path.getParent(), path.getFileName(), false, listener);
+			register(path.getParent(), registration);
+		}
+		return registration;
+	}
+
+	/**
+	 * Watches a directory and all of its subdirectories, including ones
+	 * created after this method is called
+	 *
+	 * @param directory
+	 *            the directory to watch
+	 * @param listener
+	 *            the listener to notify
+	 * @return a handle which stops watching when closed
+	 * @throws IOException
+	 *             if the directory cannot be watched
+	 */
+	public Closeable watchTree(Path directory, Listener listener) throws IOException {
+		directory = directory.toAbsolutePath().normalize();
+		Registration registration = new Registration(directory, null, true, listener);
+		registerTree(directory, registration);
+		return registration;
+	}
+
+	private void registerTree(Path root, final Registration registration) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				register(dir, registration);
+				return FileVisitResult.CONTINUE;
+			}
+
+		});
+	}
+
+	private synchronized void register(Path directory, Registration registration) throws IOException {
+		if (closed) {
+			throw new IOException("Watcher is closed");
+		}
+		WatchKey key = keys.get(directory);
+		if (key == null || !key.isValid()) {
+			key = directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+			keys.put(directory, key);
+			directories.put(key, directory);
+		}
+		List<Registration> list = registrations.get(directory);
+		if (list == null) {
+			registrations.put(directory, list = new CopyOnWriteArrayList<>());
+		}
+		list.add(registration);
+		registration.directories.add(directory);
+	}
+
+	private synchronized void unregister(Registration registration) {
+		for (Path directory : registration.directories) {
+			List<Registration> list = registrations.get(directory);
+			if (list != null && list.remove(registration) && list.isEmpty()) {
+				registrations.remove(directory);
+				WatchKey key = keys.remove(directory);
+				if (key != null) {
+					directories.remove(key);
+					key.cancel();
+				}
+			}
+		}
+		registration.directories.clear();
+	}
+
+	private synchronized Path getDirectory(WatchKey key) {
+		return directories.get(key);
+	}
+
+	private synchronized List<Registration> getRegistrations(Path directory) {
+		return registrations.get(directory);
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				WatchKey key;
+				if (pending.isEmpty()) {
+					key = service.take();
+				} else {
+					long now = System.currentTimeMillis();
+					long wait = Math.min(lastEvent + debounce, firstEvent + debounce * MAX_DELAY_FACTOR) - now;
+					key = wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : service.poll();
+				}
+
+				if (key != null) {
+					process(key);
+				}
+
+				long now = System.currentTimeMillis();
+				if (!pending.isEmpty() && (now - lastEvent >= debounce || now - firstEvent >= debounce * MAX_DELAY_FACTOR)) {
+					dispatch();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			//Closed
+		}
+	}
+
+	private void process(WatchKey key) {
+		Path directory = getDirectory(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (directory == null) {
+				continue;
+			}
+			if (event.kind() == OVERFLOW) {
+				record(directory, directory, FileChange.Kind.OVERFLOW);
+				continue;
+			}
+
+			Path path = directory.resolve((Path) event.context());
+			FileChange.Kind kind = event.kind() == ENTRY_CREATE ? FileChange.Kind.CREATED
+					: event.kind() == ENTRY_DELETE ? FileChange.Kind.DELETED : FileChange.Kind.MODIFIED;
+			record(directory, path, kind);
+
+			if (kind == FileChange.Kind.CREATED && Files.isDirectory(path)) {
+				List<Registration> list = getRegistrations(directory);
+				if (list != null) {
+					for (Registration registration : list) {
+						if (registration.recursive) {
+							try {
+								registerTree(path, registration);
+							} catch (IOException e) {
+								record(directory, directory, FileChange.Kind.OVERFLOW);
+							}
+						}
+					}
+				}
+			}
+		}
+		if (!key.reset()) {
+			synchronized (this) {
+				Path removed = directories.remove(key);
+				keys.remove(removed);
+				registrations.remove(removed);
+			}
+		}
+	}
+
+	private void record(Path directory, Path path, FileChange.Kind kind) {
+		List<Registration> list = getRegistrations(directory);
+		if (list == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (pending.isEmpty()) {
+			firstEvent = now;
+		}
+		lastEvent = now;
+		for (Registration registration : list) {
+			if (registration.fileName != null && kind != FileChange.Kind.OVERFLOW && !registration.fileName.equals(path.getFileName())) {
+				continue;
+			}
+			LinkedHashMap<Path, FileChange.Kind> changes = pending.get(registration);
+			if (changes == null) {
+				pending.put(registration, changes = new LinkedHashMap<>());
+			}
+			FileChange.Kind previous = changes.get(path);
+			FileChange.Kind merged = previous == null ? kind : previous.merge(kind);
+			if (merged == null) {
+				changes.remove(path);
+			} else {
+				changes.put(path, merged);
+			}
+		}
+	}
+
+	private void dispatch() {
+		for (Iterator<Map.Entry<Registration, LinkedHashMap<Path, FileChange.Kind>>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Registration, LinkedHashMap<Path, FileChange.Kind>> entry = it.next();
+			it.remove();
+			final Registration registration = entry.getKey();
+			if (registration.closed || entry.getValue().isEmpty()) {
+				continue;
+			}
+
+			final ArrayList<FileChange> changes = new ArrayList<>(entry.getValue().size());
+			for (Map.Entry<Path, FileChange.Kind> change : entry.getValue().entrySet()) {
+				changes.add(new FileChange(change.getKey(), change.getValue()));
+			}
+			try {
+				executor.execute(() -> {
+					if (!registration.closed) {
+						try {
+							registration.listener.onChange(changes);
+						} catch (Throwable t) {
+							t.printStackTrace();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				e.printStackTrace(); //Rejected
+			}
+		}
+	}
+
+	/**
+	 * Stops watching every registered path and terminates the watcher thread.
+	 * Pending changes which have not been delivered yet are discarded.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			keys.clear();
+			directories.clear();
+			registrations.clear();
+		}
+		service.close();
+		synchronized (FileWatcher.class) {
+			if (shared == this) {
+				shared = null;
+			}
+		}
+	}
+
+	/**
+	 * Receives batches of coalesced changes
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called with the net changes since the previous batch, in the order
+		 * the paths first changed
+		 *
+		 * @param changes
+		 *            the changes, never empty
+		 */
+		void onChange(List<FileChange> changes);
+
+	}
+
+	private final class Registration implements Closeable {
+
+		private final Path root;
+		private final Path fileName;
+		private final boolean recursive;
+		private final Listener listener;
+		private final List<Path> directories = new CopyOnWriteArrayList<>();
+
+		private volatile boolean closed;
+
+		private Registration(Path root, Path fileName, boolean recursive, Listener listener) {
+			this.root = root;
+			this.fileName = fileName;
+			this.recursive = recursive;
+			this.listener = listener;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			unregister(this);
+		}
+
+		@Override
+		public String toString() {
+			return "FileWatcher.Registration[" + (fileName == null ? root : root.resolve(fileName)) + "]";
+		}
+
+	}
+
+}
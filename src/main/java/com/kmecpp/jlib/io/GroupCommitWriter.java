@@ -0,0 +1,231 @@
+package com.kmecpp.jlib.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends text to a file from many threads with group commit. Writes are
+ * queued and a single writer thread drains every pending write at once,
+ * encodes the batch into reusable direct buffers and issues one gathering
+ * write (and optionally one fsync) for the whole batch. Each caller is
+ * notified once its data has been written.
+ *
+ * <br>
+ * <br>
+ *
+ * The queue is bounded, so producers block when the disk cannot keep up.
+ */
+public class GroupCommitWriter implements Closeable {
+
+	public static final int DEFAULT_QUEUE_SIZE = 4096;
+
+	private static final Request SHUTDOWN = new Request(null);
+
+	private final FileChannel channel;
+	private final Charset charset;
+	private final boolean sync;
+	private final BlockingQueue<Request> queue;
+	private final Thread thread;
+
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong records = new AtomicLong();
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * Opens the file for appending, creating it if it does not exist
+	 *
+	 * @param file
+	 *            the file to append to
+	 * @param charset
+	 *            the charset to encode text with
+	 * @param sync
+	 *            whether each batch should be forced to disk before writers
+	 *            are notified
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public GroupCommitWriter(Path file, Charset charset, boolean sync) throws IOException {
+		this(file, charset, sync, DEFAULT_QUEUE_SIZE);
+	}
+
+	public GroupCommitWriter(Path file, Charset charset, boolean sync, int queueSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.charset = charset;
+		this.sync = sync;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+		this.thread = new Thread(this::run, "GroupCommitWriter-" + file.getFileName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queues the text to be appended, blocking while the queue is full
+	 *
+	 * @param text
+	 *            the text to append
+	 * @return a future completed once the text has been written
+	 * @throws IOException
+	 *             if the writer is closed or the thread is interrupted
+	 */
+	public CompletableFuture<Void> append(CharSequence text) throws IOException {
+		if (closed.get()) {
+			throw new IOException("Writer is closed");
+		}
+		Request request = new Request(text);
+		try {
+			queue.put(request);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing write");
+		}
+		if (closed.get() && queue.remove(request)) {
+			//Queued after the shutdown marker, possibly after the writer thread's final drain
+			throw new IOException("Writer is closed");
+		}
+		return request.future;
+	}
+
+	/**
+	 * Appends the text and waits for it to be written
+	 *
+	 * @param text
+	 *            the text to append
+	 * @throws IOException
+	 *             if the text could not be written
+	 */
+	public void write(CharSequence text) throws IOException {
+		try {
+			append(text).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the number of batches written so far
+	 *
+	 * @return the number of batches
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Gets the number of writes completed so far
+	 *
+	 * @return the number of records written
+	 */
+	public long getRecords() {
+		return records.get();
+	}
+
+	/**
+	 * Writes all queued text, then stops the writer thread and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			queue.put(SHUTDOWN);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void run() {
+		ArrayList<Request> batch = new ArrayList<>();
+		ArrayList<ByteBuffer> buffers = new ArrayList<>();
+		buffers.add(ByteBuffer.allocateDirect(ChannelWriter.BUFFER_SIZE));
+		CharsetEncoder encoder = ChannelWriter.getEncoder(charset);
+		boolean running = true;
+
+		while (running) {
+			batch.clear();
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batch);
+			if (batch.remove(SHUTDOWN)) {
+				running = false;
+			}
+			if (batch.isEmpty()) {
+				continue;
+			}
+
+			try {
+				buffers.get(0).clear();
+				int last = 0;
+				for (Request request : batch) {
+					last = ChannelWriter.encode(request.text, encoder, buffers, last);
+				}
+				ByteBuffer[] data = buffers.subList(0, last + 1).toArray(new ByteBuffer[0]);
+				for (ByteBuffer buffer : data) {
+					buffer.flip();
+				}
+				long remaining = 0;
+				for (ByteBuffer buffer : data) {
+					remaining += buffer.remaining();
+				}
+				while (remaining > 0) {
+					remaining -= channel.write(data);
+				}
+				if (sync) {
+					channel.force(false);
+				}
+				batches.incrementAndGet();
+				records.addAndGet(batch.size());
+				for (Request request : batch) {
+					request.future.complete(null);
+				}
+			} catch (IOException | RuntimeException e) {
+				for (Request request : batch) {
+					request.future.completeExceptionally(e);
+				}
+			}
+		}
+
+		//Fail writes which raced with close()
+		batch.clear();
+		queue.drainTo(batch);
+		for (Request request : batch) {
+			request.future.completeExceptionally(new IOException("Writer is closed"));
+		}
+	}
+
+	private static final class Request {
+
+		private final CharSequence text;
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		private Request(CharSequence text) {
+			this.text = text;
+		}
+
+	}
+
+}
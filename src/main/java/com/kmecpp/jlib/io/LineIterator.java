@@ -0,0 +1,111 @@
+package com.kmecpp.jlib.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over the lines of an {@link InputStream} in constant
+ * memory. The stream is read in large chunks and split on '\n' bytes without
+ * going through a {@link java.io.Reader}, falling back to a
+ * {@link BufferedReader} for charsets which are not ASCII compatible. Lines
+ * may be terminated by "\n" or "\r\n".
+ *
+ * <br>
+ * <br>
+ *
+ * The underlying stream is closed when the iterator is exhausted or
+ * {@link #close()} is called. I/O errors are rethrown as
+ * {@link UncheckedIOException}s.
+ */
+public class LineIterator implements Iterator<String>, Closeable {
+
+	private final InputStream inputStream;
+	private final ChunkedLineReader reader;
+	private final BufferedReader fallback;
+
+	private String next;
+	private boolean done;
+
+	public LineIterator(InputStream inputStream, Charset charset) {
+		this(inputStream, charset, ChunkedLineReader.DEFAULT_CHUNK_SIZE);
+	}
+
+	public LineIterator(final InputStream inputStream, Charset charset, int chunkSize) {
+		this.inputStream = inputStream;
+		if (ChunkedLineReader.isSupported(charset)) {
+			this.reader = new ChunkedLineReader(charset, chunkSize) {
+
+				@Override
+				protected int fill() throws IOException {
+					return inputStream.read(chunk, 0, chunk.length);
+				}
+
+			};
+			this.fallback = null;
+		} else {
+			this.reader = null;
+			this.fallback = new BufferedReader(new InputStreamReader(inputStream, charset), chunkSize);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !done) {
+			try {
+				next = reader != null ? reader.readLine() : fallback.readLine();
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+			if (next == null) {
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String line = next;
+		next = null;
+		return line;
+	}
+
+	/**
+	 * Creates a sequential stream over the remaining lines. Closing the stream
+	 * closes this iterator.
+	 *
+	 * @return a stream of the lines
+	 */
+	public Stream<String> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (!done) {
+			done = true;
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.kmecpp.jlib.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the lines of a byte range of a file. Bytes are
+ * read from the channel with positional reads into a reused chunk buffer, so
+ * any number of spliterators may share a single channel and files of any size
+ * can be processed in constant memory.
+ *
+ * <br>
+ * <br>
+ *
+ * Splitting divides the remaining range in half and moves the split point
+ * forward to the start of the next line, which allows parallel streams to
+ * process a file across all cores. A spliterator covers every line which
+ * starts inside its range, reading past the end of the range to finish the
+ * last one.
+ *
+ * <br>
+ * <br>
+ *
+ * The charset must encode '\n' as a single byte that never appears inside
+ * another character, which is true for UTF-8, ISO-8859-1 and US-ASCII.
+ */
+public class LineSpliterator implements Spliterator<String> {
+
+	/**
+	 * Ranges smaller than this are not split further
+	 */
+	public static final long MIN_SPLIT_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final Charset charset;
+	private final Reader reader;
+	private final long end;
+
+	/**
+	 * Creates a spliterator over every line of the channel
+	 *
+	 * @param channel
+	 *            the file channel to read
+	 * @param charset
+	 *            the charset of the file
+	 * @throws IOException
+	 *             if the size of the channel cannot be determined
+	 */
+	public LineSpliterator(FileChannel channel, Charset charset) throws IOException {
+		this(channel, charset, 0, channel.size());
+	}
+
+	/**
+	 * Creates a spliterator over the lines starting inside the given byte
+	 * range. The start of the range must be the start of a line.
+	 *
+	 * @param channel
+	 *            the file channel to read
+	 * @param charset
+	 *            the charset of the file
+	 * @param start
+	 *            the position of the first line
+	 * @param end
+	 *            the end of the range, exclusive
+	 */
+	public LineSpliterator(FileChannel channel, Charset charset, long start, long end) {
+		if (!ChunkedLineReader.isSupported(charset)) {
+			throw new IllegalArgumentException("Lines cannot be split by byte for charset: " + charset);
+		}
+		this.channel = channel;
+		this.charset = charset;
+		this.reader = new Reader(start);
+		this.end = end;
+	}
+
+	/**
+	 * Tests whether files encoded with the given charset can be split into
+	 * lines by byte position
+	 *
+	 * @param charset
+	 *            the charset
+	 * @return true if the charset is supported by this spliterator
+	 */
+	public static boolean isSupported(Charset charset) {
+		return ChunkedLineReader.isSupported(charset);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super String> action) {
+		if (reader.position() >= end) {
+			return false;
+		}
+		String line = readLine();
+		if (line == null) {
+			return false;
+		}
+		action.accept(line);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super String> action) {
+		String line;
+		while (reader.position() < end && (line = readLine()) != null) {
+			action.accept(line);
+		}
+	}
+
+	@Override
+	public Spliterator<String> trySplit() {
+		long start = reader.position();
+		if (end - start < MIN_SPLIT_SIZE * 2) {
+			return null;
+		}
+		try {
+			long split = nextLineStart(start + (end - start) / 2);
+			if (split >= end) {
+				return null;
+			}
+			LineSpliterator prefix = new LineSpliterator(channel, charset, start, split);
+			reader.reset(split);
+			return prefix;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		return Math.max(0, end - reader.position());
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	private String readLine() {
+		try {
+			return reader.readLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private long nextLineStart(long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (position < end) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				return end;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return end;
+	}
+
+	private final class Reader extends ChunkedLineReader {
+
+		private final ByteBuffer buffer;
+		private long chunkStart;
+
+		private Reader(long start) {
+			super(charset, DEFAULT_CHUNK_SIZE);
+			this.buffer = ByteBuffer.wrap(chunk);
+			this.chunkStart = start;
+		}
+
+		private long position() {
+			return chunkStart + offset;
+		}
+
+		private void reset(long position) {
+			chunkStart = position;
+			offset = limit = 0;
+		}
+
+		@Override
+		protected int fill() throws IOException {
+			chunkStart += limit;
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, chunkStart + buffer.position()) <= 0) {
+					break;
+				}
+			}
+			return buffer.position() == 0 ? -1 : buffer.position();
+		}
+
+	}
+
+}
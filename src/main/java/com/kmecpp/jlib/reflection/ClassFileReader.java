@@ -0,0 +1,225 @@
+package com.kmecpp.jlib.reflection;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+
+/**
+ * Minimal class file parser which extracts the information needed by
+ * {@link ClassScanner}. Method bodies and field definitions are skipped.
+ * https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html
+ */
+final class ClassFileReader {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final String[] EMPTY = new String[0];
+
+	private final byte[] data;
+	private int pos;
+
+	private int[] offsets;
+	private String[] strings;
+
+	private ClassFileReader(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Parses the header of the given class file
+	 *
+	 * @param data
+	 *            the class file bytes
+	 * @return the class information
+	 * @throws IOException
+	 *             if the data is not a valid class file
+	 */
+	static ClassInfo read(byte[] data) throws IOException {
+		try {
+			return new ClassFileReader(data).read();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Truncated class file", e);
+		}
+	}
+
+	private ClassInfo read() throws IOException {
+		if (u4() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		pos += 4; //Version
+		readConstantPool();
+
+		int access = u2();
+		String name = className(u2());
+		int superIndex = u2();
+		String superName = superIndex == 0 ? null : className(superIndex);
+
+		int interfaceCount = u2();
+		String[] interfaces = interfaceCount == 0 ? EMPTY : new String[interfaceCount];
+		for (int i = 0; i < interfaceCount; i++) {
+			interfaces[i] = className(u2());
+		}
+
+		skipMembers(); //Fields
+		skipMembers(); //Methods
+
+		String[] annotations = EMPTY;
+		int attributeCount = u2();
+		for (int i = 0; i < attributeCount; i++) {
+			String attribute = utf8(u2());
+			int length = u4();
+			int end = pos + length;
+			if ("RuntimeVisibleAnnotations".equals(attribute)) {
+				annotations = readAnnotations();
+			}
+			pos = end;
+		}
+		return new ClassInfo(name, superName, interfaces, annotations, access);
+	}
+
+	private void readConstantPool() throws IOException {
+		int count = u2();
+		offsets = new int[count];
+		strings = new String[count];
+		for (int i = 1; i < count; i++) {
+			offsets[i] = pos;
+			int tag = data[pos++];
+			switch (tag) {
+			case 1: //Utf8
+				pos += 2 + u2At(pos);
+				break;
+			case 7: //Class
+			case 8: //String
+			case 16: //MethodType
+			case 19: //Module
+			case 20: //Package
+				pos += 2;
+				break;
+			case 15: //MethodHandle
+				pos += 3;
+				break;
+			case 3: //Integer
+			case 4: //Float
+			case 9: //Fieldref
+			case 10: //Methodref
+			case 11: //InterfaceMethodref
+			case 12: //NameAndType
+			case 17: //Dynamic
+			case 18: //InvokeDynamic
+				pos += 4;
+				break;
+			case 5: //Long
+			case 6: //Double
+				pos += 8;
+				i++;
+				break;
+			default:
+				throw new IOException("Invalid constant pool tag: " + tag);
+			}
+		}
+	}
+
+	private void skipMembers() {
+		int count = u2();
+		for (int i = 0; i < count; i++) {
+			pos += 6; //Access, name and descriptor
+			int attributes = u2();
+			for (int j = 0; j < attributes; j++) {
+				pos += 2;
+				int length = u4();
+				pos += length;
+			}
+		}
+	}
+
+	private String[] readAnnotations() throws IOException {
+		int count = u2();
+		ArrayList<String> annotations = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			annotations.add(descriptorToName(utf8(u2())));
+			skipElementValuePairs();
+		}
+		return annotations.toArray(EMPTY);
+	}
+
+	private void skipElementValuePairs() {
+		int pairs = u2();
+		for (int i = 0; i < pairs; i++) {
+			pos += 2;
+			skipElementValue();
+		}
+	}
+
+	private void skipElementValue() {
+		char tag = (char) data[pos++];
+		switch (tag) {
+		case 'e':
+			pos += 4;
+			break;
+		case '@':
+			pos += 2;
+			skipElementValuePairs();
+			break;
+		case '[':
+			int count = u2();
+			for (int i = 0; i < count; i++) {
+				skipElementValue();
+			}
+			break;
+		default: //Constant or class
+			pos += 2;
+		}
+	}
+
+	private String className(int index) throws IOException {
+		return utf8(u2At(offsets[index] + 1)).replace('/', '.');
+	}
+
+	private String utf8(int index) throws IOException {
+		String str = strings[index];
+		if (str == null) {
+			int offset = offsets[index] + 1;
+			str = strings[index] = decode(offset + 2, u2At(offset));
+		}
+		return str;
+	}
+
+	private String decode(int start, int length) throws IOException {
+		char[] chars = new char[length];
+		int count = 0;
+		int end = start + length;
+		for (int i = start; i < end;) {
+			int c = data[i++] & 0xFF;
+			if (c < 0x80) {
+				chars[count++] = (char) c;
+			} else if ((c & 0xE0) == 0xC0) {
+				chars[count++] = (char) (((c & 0x1F) << 6) | (data[i++] & 0x3F));
+			} else if ((c & 0xF0) == 0xE0) {
+				chars[count++] = (char) (((c & 0x0F) << 12) | ((data[i++] & 0x3F) << 6) | (data[i++] & 0x3F));
+			} else {
+				throw new UTFDataFormatException("Invalid modified UTF-8 in constant pool");
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private static String descriptorToName(String descriptor) {
+		return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+	}
+
+	private int u2() {
+		int value = u2At(pos);
+		pos += 2;
+		return value;
+	}
+
+	private int u2At(int index) {
+		return ((data[index] & 0xFF) << 8) | (data[index + 1] & 0xFF);
+	}
+
+	private int u4() {
+		int value = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+		pos += 4;
+		return value;
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.kmecpp.jlib.reflection;
+
+import java.util.Arrays;
+
+/**
+ * Describes the header of a class file: its name, superclass, interfaces and
+ * class level annotations. Instances are created by {@link ClassScanner}
+ * directly from class file bytes, without loading or initializing the class.
+ * All names are binary class names, as returned by {@link Class#getName()}.
+ */
+public final class ClassInfo {
+
+	private final String name;
+	private final String superName;
+	private final String[] interfaces;
+	private final String[] annotations;
+	private final int access;
+
+	public ClassInfo(String name, String superName, String[] interfaces, String[] annotations, int access) {
+		this.name = name;
+		this.superName = superName;
+		this.interfaces = interfaces;
+		this.annotations = annotations;
+		this.access = access;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the name of the superclass
+	 *
+	 * @return the superclass name, or null if this is java.lang.Object or a
+	 *         module descriptor
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+
+	public String[] getInterfaces() {
+		return interfaces.clone();
+	}
+
+	/**
+	 * Gets the names of the runtime visible annotations present on the class
+	 *
+	 * @return the annotation type names
+	 */
+	public String[] getAnnotations() {
+		return annotations.clone();
+	}
+
+	/**
+	 * Gets the access flags of the class as defined by the class file format.
+	 * These are compatible with the constants in
+	 * {@link java.lang.reflect.Modifier}.
+	 *
+	 * @return the access flags
+	 */
+	public int getAccess() {
+		return access;
+	}
+
+	public boolean hasAnnotation(String annotation) {
+		for (String a : annotations) {
+			if (a.equals(annotation)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	String[] interfaces() {
+		return interfaces;
+	}
+
+	String[] annotations() {
+		return annotations;
+	}
+
+	@Override
+	public String toString() {
+		return "ClassInfo[name=" + name + ", super=" + superName + ", interfaces=" + Arrays.toString(interfaces)
+				+ ", annotations=" + Arrays.toString(annotations) + "]";
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.kmecpp.jlib.reflection;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed member information for a single class. The declared fields and
+ * methods of the class are made accessible and indexed by their annotation
+ * types once, the first time the metadata is requested, and cached for the
+ * lifetime of the class.
+ *
+ * <br>
+ * <br>
+ *
+ * The lists returned by this class are unmodifiable views of the cached
+ * members, so reading them never allocates.
+ */
+public final class ClassMetadata {
+
+	private static final ClassValue<ClassMetadata> cache = new ClassValue<ClassMetadata>() {
+
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+
+	};
+
+	private final Class<?> type;
+	private final List<Field> fields;
+	private final List<Method> methods;
+	private final Map<Class<? extends Annotation>, List<Field>> fieldsByAnnotation;
+	private final Map<Class<? extends Annotation>, List<Method>> methodsByAnnotation;
+
+	private ClassMetadata(Class<?> type) {
+		this.type = type;
+		this.fields = Collections.unmodifiableList(Arrays.asList(type.getDeclaredFields()));
+		this.methods = Collections.unmodifiableList(Arrays.asList(type.getDeclaredMethods()));
+		this.fieldsByAnnotation = index(fields);
+		this.methodsByAnnotation = index(methods);
+	}
+
+	/**
+	 * Gets the metadata for the given class
+	 *
+	 * @param cls
+	 *            the class
+	 * @return the cached metadata of the class
+	 */
+	public static ClassMetadata of(Class<?> cls) {
+		return cache.get(cls);
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Gets all the declared fields of the class
+	 *
+	 * @return the accessible declared fields
+	 */
+	public List<Field> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Gets all the declared methods of the class
+	 *
+	 * @return the accessible declared methods
+	 */
+	public List<Method> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * Gets the declared fields which have the given annotation
+	 *
+	 * @param annotation
+	 *            the annotation type
+	 * @return the matching fields, or an empty list if there are none
+	 */
+	public List<Field> getFieldsWith(Class<? extends Annotation> annotation) {
+		List<Field> result = fieldsByAnnotation.get(annotation);
+		return result == null ? Collections.<Field> emptyList() : result;
+	}
+
+	/**
+	 * Gets the declared methods which have the given annotation
+	 *
+	 * @param annotation
+	 *            the annotation type
+	 * @return the matching methods, or an empty list if there are none
+	 */
+	public List<Method> getMethodsWith(Class<? extends Annotation> annotation) {
+		List<Method> result = methodsByAnnotation.get(annotation);
+		return result == null ? Collections.<Method> emptyList() : result;
+	}
+
+	private static <T extends AccessibleObject> Map<Class<? extends Annotation>, List<T>> index(List<T> members) {
+		HashMap<Class<? extends Annotation>, ArrayList<T>> grouped = new HashMap<>();
+		for (T member : members) {
+			member.setAccessible(true);
+			for (Annotation annotation : member.getDeclaredAnnotations()) {
+				ArrayList<T> list = grouped.get(annotation.annotationType());
+				if (list == null) {
+					grouped.put(annotation.annotationType(), list = new ArrayList<>());
+				}
+				list.add(member);
+			}
+		}
+
+		HashMap<Class<? extends Annotation>, List<T>> index = new HashMap<>(grouped.size() * 2);
+		for (Map.Entry<Class<? extends Annotation>, ArrayList<T>> entry : grouped.entrySet()) {
+			ArrayList<T> list = entry.getValue();
+			list.trimToSize();
+			index.put(entry.getKey(), Collections.unmodifiableList(list));
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,445 @@
+package com.kmecpp.jlib.reflection;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Scans directories and jar files for classes by reading class file headers
+ * directly. Classes are never loaded or initialized while scanning, so only
+ * the classes a caller is actually interested in need to be loaded afterwards
+ * (see {@link #getSubclasses(ClassLoader, Collection, Class)}). Directories and
+ * jar entries are parsed in parallel on the common {@link ForkJoinPool}.
+ */
+public class ClassScanner {
+
+	/**
+	 * The number of jar entries parsed by a single task before the work is
+	 * split
+	 */
+	private static final int JAR_THRESHOLD = 64;
+
+	protected ClassScanner() {
+	}
+
+	/**
+	 * Scans all classes accessible from the context class loader which belong
+	 * to the given package and its subpackages
+	 *
+	 * @param pkg
+	 *            the base package
+	 * @return the headers of the classes found
+	 */
+	public static List<ClassInfo> scan(String pkg) {
+		return scan(Thread.currentThread().getContextClassLoader(), pkg);
+	}
+
+	/**
+	 * Scans all classes accessible from the given class loader which belong to
+	 * the given package and its subpackages. Both directory and jar classpath
+	 * entries are supported.
+	 *
+	 * @param classLoader
+	 *            the class loader whose resources to scan
+	 * @param pkg
+	 *            the base package
+	 * @return the headers of the classes found
+	 */
+	public static List<ClassInfo> scan(ClassLoader classLoader, String pkg) {
+		String path = toPath(pkg);
+		ArrayList<ClassInfo> classes = new ArrayList<>();
+		try {
+			Enumeration<URL> resources = classLoader.getResources(path);
+			while (resources.hasMoreElements()) {
+				URL url = resources.nextElement();
+				if ("file".equals(url.getProtocol())) {
+					classes.addAll(scanDirectory(new File(url.toURI()), pkg));
+				} else if ("jar".equals(url.getProtocol())) {
+					JarURLConnection connection = (JarURLConnection) url.openConnection();
+					connection.setUseCaches(false);
+					try (JarFile jarFile = connection.getJarFile()) {
+						classes.addAll(scanJar(jarFile, pkg));
+					}
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			throw new ReflectionException(e);
+		} finally {
+			flushIndex();
+		}
+		return classes;
+	}
+
+	/**
+	 * Scans the given directory, which is expected to contain the classes of
+	 * the given package, and all of its subdirectories. If the classpath root
+	 * containing the directory has a prebuilt index which is still up to date,
+	 * or persistent indexing is enabled with {@link ScanIndex#setDefault(File)},
+	 * the index is used instead of parsing the class files whenever the root is
+	 * unchanged.
+	 *
+	 * @param directory
+	 *            the directory of the package
+	 * @param pkg
+	 *            the package the directory corresponds to
+	 * @return the headers of the classes found
+	 */
+	public static List<ClassInfo> scan(File directory, String pkg) {
+		try {
+			return scanDirectory(directory, pkg);
+		} finally {
+			flushIndex();
+		}
+	}
+
+	private static List<ClassInfo> scanDirectory(File directory, String pkg) {
+		if (!directory.isDirectory()) {
+			return new ArrayList<>();
+		}
+
+		File root = getRoot(directory, pkg);
+		File embedded = root == null ? null : new File(root, ScanIndex.ENTRY);
+		ScanIndex index = ScanIndex.getDefault();
+		if (root != null && (embedded.isFile() || index != null)) {
+			try {
+				long[] fingerprint = ScanIndex.fingerprint(root);
+				if (embedded.isFile()) {
+					try (InputStream in = new FileInputStream(embedded)) {
+						List<ClassInfo> classes = ScanIndex.readClasses(in, fingerprint);
+						if (classes != null) {
+							return ScanIndex.filter(classes, pkg);
+						}
+					} catch (IOException e) {
+						//Fall back to scanning
+					}
+				}
+
+				if (index != null) {
+					List<ClassInfo> classes = index.get(root, fingerprint[0], fingerprint[1]);
+					if (classes == null) {
+						classes = scanAll(root);
+						index.put(root, fingerprint[0], fingerprint[1], classes);
+					}
+					return ScanIndex.filter(classes, pkg);
+				}
+			} catch (IOException e) {
+				throw new ReflectionException(e);
+			}
+		}
+		return scanAll(directory);
+	}
+
+	/**
+	 * Scans the entries of the given jar file which belong to the given
+	 * package and its subpackages. The jar file is not closed. If the jar
+	 * contains a prebuilt index, or persistent indexing is enabled with
+	 * {@link ScanIndex#setDefault(File)}, the index is used instead of parsing
+	 * the class files whenever the jar is unchanged.
+	 *
+	 * @param jarFile
+	 *            the jar file to scan
+	 * @param pkg
+	 *            the base package, or an empty string for every class
+	 * @return the headers of the classes found
+	 */
+	public static List<ClassInfo> scan(JarFile jarFile, String pkg) {
+		try {
+			return scanJar(jarFile, pkg);
+		} finally {
+			flushIndex();
+		}
+	}
+
+	private static List<ClassInfo> scanJar(JarFile jarFile, String pkg) {
+		JarEntry embedded = jarFile.getJarEntry(ScanIndex.ENTRY);
+		if (embedded != null) {
+			try (InputStream in = jarFile.getInputStream(embedded)) {
+				return ScanIndex.filter(ScanIndex.readClasses(in, null), pkg);
+			} catch (IOException e) {
+				//Fall back to scanning
+			}
+		}
+
+		ScanIndex index = ScanIndex.getDefault();
+		if (index != null) {
+			File file = new File(jarFile.getName());
+			List<ClassInfo> classes = index.get(file, file.length(), file.lastModified());
+			if (classes == null) {
+				classes = scanAll(jarFile);
+				index.put(file, file.length(), file.lastModified(), classes);
+			}
+			return ScanIndex.filter(classes, pkg);
+		}
+		return scanEntries(jarFile, pkg.isEmpty() ? "" : toPath(pkg) + "/");
+	}
+
+	private static void flushIndex() {
+		ScanIndex index = ScanIndex.getDefault();
+		if (index != null) {
+			index.flush();
+		}
+	}
+
+	static List<ClassInfo> scanAll(File directory) {
+		return ForkJoinPool.commonPool().invoke(new DirectoryTask(directory));
+	}
+
+	static List<ClassInfo> scanAll(JarFile jarFile) {
+		return scanEntries(jarFile, "");
+	}
+
+	private static List<ClassInfo> scanEntries(JarFile jarFile, String prefix) {
+		ArrayList<JarEntry> entries = new ArrayList<>();
+		for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements();) {
+			JarEntry entry = e.nextElement();
+			String name = entry.getName();
+			if (name.startsWith(prefix) && isClassFile(name) && !name.startsWith("META-INF/")) {
+				entries.add(entry);
+			}
+		}
+		return ForkJoinPool.commonPool().invoke(new JarTask(jarFile, entries, 0, entries.size()));
+	}
+
+	/**
+	 * Gets the classpath root of a package directory by walking up one
+	 * directory per package segment
+	 *
+	 * @param directory
+	 *            the package directory
+	 * @param pkg
+	 *            the package
+	 * @return the classpath root, or null if the directory does not match the
+	 *         package
+	 */
+	private static File getRoot(File directory, String pkg) {
+		if (pkg.isEmpty()) {
+			return directory;
+		}
+		String[] segments = pkg.split("\\.");
+		File root = directory.getAbsoluteFile();
+		for (int i = segments.length - 1; i >= 0; i--) {
+			if (root == null || !root.getName().equals(segments[i])) {
+				return null;
+			}
+			root = root.getParentFile();
+		}
+		return root;
+	}
+
+	/**
+	 * Loads every scanned class that is assignable to the given class. The
+	 * type hierarchy is resolved from the scanned headers, and only supertypes
+	 * outside of the scanned set are loaded (without being initialized) to
+	 * complete the check.
+	 *
+	 * @param classLoader
+	 *            the class loader to load classes with
+	 * @param classes
+	 *            the scanned classes
+	 * @param cls
+	 *            the class to search for subclasses of
+	 * @return the matching classes
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> HashSet<Class<T>> getSubclasses(ClassLoader classLoader, Collection<ClassInfo> classes, Class<T> cls) {
+		HashMap<String, ClassInfo> index = new HashMap<>();
+		for (ClassInfo info : classes) {
+			index.put(info.getName(), info);
+		}
+
+		HashMap<String, Boolean> resolved = new HashMap<>();
+		HashSet<Class<T>> result = new HashSet<>();
+		for (ClassInfo info : index.values()) {
+			if (isSubtype(classLoader, info.getName(), cls, index, resolved)) {
+				Class<?> c = load(classLoader, info.getName());
+				if (c != null) {
+					result.add((Class<T>) c);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Loads the given classes without initializing them. Classes which cannot
+	 * be loaded or linked are skipped.
+	 *
+	 * @param classLoader
+	 *            the class loader to load classes with
+	 * @param classes
+	 *            the scanned classes
+	 * @return the loaded classes
+	 */
+	public static HashSet<Class<?>> load(ClassLoader classLoader, Collection<ClassInfo> classes) {
+		HashSet<Class<?>> result = new HashSet<>();
+		for (ClassInfo info : classes) {
+			Class<?> c = load(classLoader, info.getName());
+			if (c != null) {
+				result.add(c);
+			}
+		}
+		return result;
+	}
+
+	static Class<?> load(ClassLoader classLoader, String name) {
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null; //Ignore classes with missing dependencies
+		}
+	}
+
+	private static boolean isSubtype(ClassLoader classLoader, String name, Class<?> target, HashMap<String, ClassInfo> index, HashMap<String, Boolean> resolved) {
+		if (name.equals(target.getName())) {
+			return true;
+		}
+		Boolean cached = resolved.get(name);
+		if (cached != null) {
+			return cached;
+		}
+
+		boolean result = false;
+		ClassInfo info = index.get(name);
+		if (info == null) {
+			Class<?> c = load(classLoader, name);
+			result = c != null && target.isAssignableFrom(c);
+		} else if (target == Object.class) {
+			result = true;
+		} else {
+			resolved.put(name, false); //Guard against malformed cyclic hierarchies
+			if (info.getSuperName() != null) {
+				result = isSubtype(classLoader, info.getSuperName(), target, index, resolved);
+			}
+			for (int i = 0; !result && i < info.interfaces().length; i++) {
+				result = isSubtype(classLoader, info.interfaces()[i], target, index, resolved);
+			}
+		}
+		resolved.put(name, result);
+		return result;
+	}
+
+	static String toPath(String pkg) {
+		return pkg.replace('.', '/');
+	}
+
+	static boolean isClassFile(String name) {
+		return name.endsWith(".class") && !name.endsWith("module-info.class") && !name.endsWith("package-info.class");
+	}
+
+	private static byte[] readEntry(JarFile jarFile, JarEntry entry) throws IOException {
+		try (InputStream in = jarFile.getInputStream(entry)) {
+			long size = entry.getSize();
+			byte[] data = new byte[size >= 0 ? (int) size : 8192];
+			int length = 0;
+			int read;
+			while ((read = in.read(data, length, data.length - length)) != -1) {
+				length += read;
+				if (length == data.length) {
+					if (size >= 0) {
+						break;
+					}
+					data = Arrays.copyOf(data, data.length * 2);
+				}
+			}
+			return length == data.length ? data : Arrays.copyOf(data, length);
+		}
+	}
+
+	private static final class DirectoryTask extends RecursiveTask<List<ClassInfo>> {
+
+		private static final long serialVersionUID = 4510458327541239872L;
+
+		private final File directory;
+
+		private DirectoryTask(File directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		protected List<ClassInfo> compute() {
+			ArrayList<ClassInfo> classes = new ArrayList<>();
+			File[] files = directory.listFiles();
+			if (files == null) {
+				return classes;
+			}
+
+			ArrayList<DirectoryTask> subtasks = new ArrayList<>();
+			for (File file : files) {
+				if (file.isDirectory()) {
+					DirectoryTask task = new DirectoryTask(file);
+					task.fork();
+					subtasks.add(task);
+				} else if (isClassFile(file.getName())) {
+					try {
+						classes.add(ClassFileReader.read(Files.readAllBytes(file.toPath())));
+					} catch (IOException e) {
+						//Ignore unreadable or invalid class files
+					}
+				}
+			}
+			for (DirectoryTask task : subtasks) {
+				classes.addAll(task.join());
+			}
+			return classes;
+		}
+
+	}
+
+	private static final class JarTask extends RecursiveTask<List<ClassInfo>> {
+
+		private static final long serialVersionUID = -2202936722317311594L;
+
+		private final JarFile jarFile;
+		private final List<JarEntry> entries;
+		private final int start;
+		private final int end;
+
+		private JarTask(JarFile jarFile, List<JarEntry> entries, int start, int end) {
+			this.jarFile = jarFile;
+			this.entries = entries;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected List<ClassInfo> compute() {
+			if (end - start > JAR_THRESHOLD) {
+				int middle = (start + end) >>> 1;
+				JarTask left = new JarTask(jarFile, entries, start, middle);
+				left.fork();
+				List<ClassInfo> right = new JarTask(jarFile, entries, middle, end).compute();
+				List<ClassInfo> classes = left.join();
+				classes.addAll(right);
+				return classes;
+			}
+
+			ArrayList<ClassInfo> classes = new ArrayList<>(end - start);
+			for (int i = start; i < end; i++) {
+				try {
+					classes.add(ClassFileReader.read(readEntry(jarFile, entries.get(i))));
+				} catch (IOException e) {
+					//Ignore unreadable or invalid class files
+				}
+			}
+			return classes;
+		}
+
+	}
+
+}
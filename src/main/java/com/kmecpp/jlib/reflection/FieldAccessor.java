@@ -0,0 +1,259 @@
+package com.kmecpp.jlib.reflection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * A compiled accessor for a single field, backed by {@link MethodHandle}s.
+ * Accessors should be obtained once with
+ * {@link Reflection#getFieldAccessor(Field)} and reused.
+ *
+ * <br>
+ * <br>
+ *
+ * The primitive accessors such as {@link #getInt(Object)} and
+ * {@link #setLong(Object, long)} invoke the underlying handle with its exact
+ * type and never box the value. They may only be used when the type of the
+ * field matches exactly, otherwise a {@link ReflectionException} is thrown.
+ * For static fields the instance argument is ignored and may be null.
+ * Fields which cannot be written, such as static finals and the final
+ * fields of records and hidden classes, can still be read and only fail when
+ * they are set.
+ */
+public final class FieldAccessor {
+
+	private static final MethodType GENERIC_GETTER = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType GENERIC_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Field field;
+	private final MethodHandle getter;
+	private final MethodHandle setter;
+	private final MethodHandle genericGetter;
+	private final MethodHandle genericSetter;
+	private final IllegalAccessException setterFailure;
+
+	FieldAccessor(Field field) {
+		this.field = field;
+		try {
+			field.setAccessible(true);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			boolean isStatic = Modifier.isStatic(field.getModifiers());
+			Class<?> type = field.getType();
+
+			MethodHandle get = lookup.unreflectGetter(field);
+			if (isStatic) {
+				get = MethodHandles.dropArguments(get, 0, Object.class);
+			}
+			this.getter = get.asType(MethodType.methodType(type, Object.class));
+			this.genericGetter = get.asType(GENERIC_GETTER);
+
+			MethodHandle set = null;
+			IllegalAccessException failure = null;
+			if (!(isStatic && Modifier.isFinal(field.getModifiers()))) {
+				try {
+					set = lookup.unreflectSetter(field);
+					if (isStatic) {
+						set = MethodHandles.dropArguments(set, 0, Object.class);
+					}
+				} catch (IllegalAccessException e) {
+					failure = e; //Final fields of records and hidden classes are read only
+				}
+			}
+			this.setterFailure = failure;
+			this.setter = set == null ? null : set.asType(MethodType.methodType(void.class, Object.class, type));
+			this.genericSetter = set == null ? null : set.asType(GENERIC_SETTER);
+		} catch (IllegalAccessException e) {
+			throw new ReflectionException("Could not access field " + field, e);
+		}
+	}
+
+	/**
+	 * Gets the field this accessor reads and writes
+	 *
+	 * @return the field
+	 */
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * Gets the value of the field, boxing primitives
+	 *
+	 * @param obj
+	 *            the instance to read from
+	 * @return the value of the field
+	 */
+	public Object get(Object obj) {
+		try {
+			return genericGetter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	/**
+	 * Sets the value of the field, unboxing primitives
+	 *
+	 * @param obj
+	 *            the instance to modify
+	 * @param value
+	 *            the new value
+	 */
+	public void set(Object obj, Object value) {
+		try {
+			checkWritable().genericSetter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public boolean getBoolean(Object obj) {
+		try {
+			return (boolean) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public byte getByte(Object obj) {
+		try {
+			return (byte) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public char getChar(Object obj) {
+		try {
+			return (char) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public short getShort(Object obj) {
+		try {
+			return (short) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public int getInt(Object obj) {
+		try {
+			return (int) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public long getLong(Object obj) {
+		try {
+			return (long) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public float getFloat(Object obj) {
+		try {
+			return (float) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public double getDouble(Object obj) {
+		try {
+			return (double) getter.invokeExact(obj);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setBoolean(Object obj, boolean value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setByte(Object obj, byte value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setChar(Object obj, char value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setShort(Object obj, short value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setInt(Object obj, int value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setLong(Object obj, long value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setFloat(Object obj, float value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	public void setDouble(Object obj, double value) {
+		try {
+			checkWritable().setter.invokeExact(obj, value);
+		} catch (Throwable t) {
+			throw error(t);
+		}
+	}
+
+	private FieldAccessor checkWritable() {
+		if (setter == null) {
+			throw new ReflectionException("Field is not writable: " + field, setterFailure);
+		}
+		return this;
+	}
+
+	private ReflectionException error(Throwable t) {
+		return t instanceof ReflectionException
+				? (ReflectionException) t
+				: new ReflectionException("Failed to access field " + field, t);
+	}
+
+	@Override
+	public String toString() {
+		return "FieldAccessor[" + field + "]";
+	}
+
+}
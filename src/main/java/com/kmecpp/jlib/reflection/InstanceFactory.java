@@ -0,0 +1,159 @@
+package com.kmecpp.jlib.reflection;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Creates instances of a class through a single resolved constructor.
+ * Factories should be obtained once with
+ * {@link Reflection#getInstanceFactory(Class, Class...)} and reused.
+ *
+ * <br>
+ * <br>
+ *
+ * Constructors taking zero or one parameters are bound to a
+ * {@link LambdaMetafactory} generated {@link Supplier} or {@link Function}
+ * when they are public and visible to the class loader of this library,
+ * which lets the JIT inline the allocation as if it were a plain
+ * <code>new</code> expression. All other constructors, including those of
+ * classes loaded by child class loaders, are invoked through a
+ * {@link MethodHandle}.
+ */
+public final class InstanceFactory<T> {
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private final Constructor<T> constructor;
+	private final Supplier<T> supplier;
+	private final Function<Object, T> function;
+	private final MethodHandle invoker;
+
+	@SuppressWarnings("unchecked")
+	InstanceFactory(Constructor<T> constructor) {
+		this.constructor = constructor;
+		constructor.setAccessible(true);
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle handle;
+		try {
+			handle = lookup.unreflectConstructor(constructor).asFixedArity();
+		} catch (IllegalAccessException e) {
+			throw new ReflectionException("Could not access constructor " + constructor, e);
+		}
+
+		Class<T> type = constructor.getDeclaringClass();
+		Class<?>[] params = constructor.getParameterTypes();
+		Object lambda = null;
+		if (params.length <= 1 && isPublic(constructor) && isVisible(type) && (params.length == 0 || isVisible(params[0]))) {
+			try {
+				if (params.length == 0) {
+					CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+							MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+					lambda = site.getTarget().invoke();
+				} else {
+					CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+							MethodType.methodType(Object.class, Object.class), handle,
+							MethodType.methodType(type, MethodType.methodType(params[0]).wrap().returnType()));
+					lambda = site.getTarget().invoke();
+				}
+			} catch (Throwable t) {
+				lambda = null; //Not linkable from this class loader, use the method handle instead
+			}
+		}
+		this.supplier = params.length == 0 ? (Supplier<T>) lambda : null;
+		this.function = params.length == 1 ? (Function<Object, T>) lambda : null;
+		this.invoker = handle.asType(handle.type().generic())
+				.asSpreader(Object[].class, params.length)
+				.asType(INVOKER_TYPE);
+	}
+
+	/**
+	 * Gets the constructor used by this factory
+	 *
+	 * @return the constructor
+	 */
+	public Constructor<T> getConstructor() {
+		return constructor;
+	}
+
+	/**
+	 * Creates a new instance using a constructor with no parameters
+	 *
+	 * @return the new instance
+	 */
+	public T newInstance() {
+		return newInstance(NO_ARGS);
+	}
+
+	/**
+	 * Creates a new instance by invoking the constructor with the given
+	 * arguments
+	 *
+	 * @param args
+	 *            the constructor arguments
+	 * @return the new instance
+	 */
+	@SuppressWarnings("unchecked")
+	public T newInstance(Object... args) {
+		if (args == null) {
+			args = NO_ARGS;
+		}
+		try {
+			if (supplier != null && args.length == 0) {
+				return supplier.get();
+			} else if (function != null && args.length == 1) {
+				return function.apply(args[0]);
+			}
+			return (T) invoker.invokeExact(args);
+		} catch (Throwable t) {
+			throw new ReflectionException("Failed to invoke constructor " + constructor, t);
+		}
+	}
+
+	/**
+	 * Checks whether the class loader of this library resolves the name of
+	 * the class to the class itself. Generated lambdas are defined in this
+	 * library and would otherwise fail to link, or link to a different class,
+	 * when they are first called.
+	 *
+	 * @param c
+	 *            the class
+	 * @return true if the class can be referenced from this library
+	 */
+	private static boolean isVisible(Class<?> c) {
+		while (c.isArray()) {
+			c = c.getComponentType();
+		}
+		if (c.isPrimitive()) {
+			return true;
+		}
+		try {
+			return Class.forName(c.getName(), false, InstanceFactory.class.getClassLoader()) == c;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static boolean isPublic(Constructor<?> constructor) {
+		for (Class<?> c = constructor.getDeclaringClass(); c != null; c = c.getDeclaringClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return Modifier.isPublic(constructor.getModifiers());
+	}
+
+	@Override
+	public String toString() {
+		return "InstanceFactory[" + constructor + "]";
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.kmecpp.jlib.reflection;
+
+import java.util.Arrays;
+
+/**
+ * Cache key identifying a member lookup by its declaring class, name and the
+ * runtime classes of the arguments it was resolved against
+ */
+final class MemberKey {
+
+	private static final Class<?>[] NO_TYPES = new Class<?>[0];
+
+	private final Class<?> cls;
+	private final String name;
+	private final Class<?>[] types;
+	private final int hash;
+
+	MemberKey(Class<?> cls, String name, Class<?>[] types) {
+		this.cls = cls;
+		this.name = name;
+		this.types = types;
+		this.hash = 31 * (31 * cls.hashCode() + (name == null ? 0 : name.hashCode())) + Arrays.hashCode(types);
+	}
+
+	/**
+	 * Creates a key from the runtime classes of the given arguments. Null
+	 * arguments are recorded as a null type.
+	 *
+	 * @param cls
+	 *            the declaring class
+	 * @param name
+	 *            the member name, or null for constructors
+	 * @param args
+	 *            the arguments the member will be invoked with
+	 * @return the key
+	 */
+	static MemberKey of(Class<?> cls, String name, Object[] args) {
+		if (args == null || args.length == 0) {
+			return new MemberKey(cls, name, NO_TYPES);
+		}
+		Class<?>[] types = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			types[i] = args[i] == null ? null : args[i].getClass();
+		}
+		return new MemberKey(cls, name, types);
+	}
+
+	Class<?> getDeclaringClass() {
+		return cls;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof MemberKey)) {
+			return false;
+		}
+		MemberKey other = (MemberKey) obj;
+		return cls == other.cls
+				&& (name == null ? other.name == null : name.equals(other.name))
+				&& Arrays.equals(types, other.types);
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.kmecpp.jlib.reflection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches method resolutions performed by
+ * {@link Reflection#invokeMethod(Object, String, Object...)} and
+ * {@link Reflection#invokeStaticMethod(Class, String, Object...)}. Each entry
+ * is keyed by the class, method name and runtime argument classes and holds a
+ * pre-bound {@link MethodHandle}, so repeat invocations skip signature
+ * resolution and core reflection entirely.
+ *
+ * <br>
+ * <br>
+ *
+ * The cache holds strong references to the classes it contains. Use
+ * {@link #clear(ClassLoader)} when unloading a class loader so that its
+ * classes can be collected.
+ */
+public class MethodCache {
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	private static final ConcurrentHashMap<MemberKey, Entry> cache = new ConcurrentHashMap<>();
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+
+	protected MethodCache() {
+	}
+
+	/**
+	 * Invokes the method with the given name which best matches the runtime
+	 * types of the given parameters. The method is resolved using
+	 * {@link Reflection#getMethod(Class, String, Object...)} the first time a
+	 * combination of class, name and argument types is seen.
+	 *
+	 * @param cls
+	 *            the class declaring the method
+	 * @param obj
+	 *            the instance to invoke the method on, or null for static
+	 *            methods
+	 * @param methodName
+	 *            the method name
+	 * @param params
+	 *            the method parameters
+	 * @return the result of the method, or null for void methods
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T invoke(Class<?> cls, Object obj, String methodName, Object... params) {
+		if (params == null) {
+			params = new Object[0];
+		}
+		Entry entry = get(cls, methodName, params);
+		try {
+			return (T) entry.invoker.invokeExact(obj, params);
+		} catch (Throwable t) {
+			throw new ReflectionException(new InvocationTargetException(t)); //Same as Method.invoke
+		}
+	}
+
+	/**
+	 * Gets the method with the given name which best matches the runtime types
+	 * of the given parameters, resolving and caching it if necessary
+	 *
+	 * @param cls
+	 *            the class declaring the method
+	 * @param methodName
+	 *            the method name
+	 * @param params
+	 *            the method parameters
+	 * @return the resolved method
+	 */
+	public static Method getMethod(Class<?> cls, String methodName, Object... params) {
+		return get(cls, methodName, params).method;
+	}
+
+	private static Entry get(Class<?> cls, String methodName, Object[] params) {
+		MemberKey key = MemberKey.of(cls, methodName, params);
+		Entry entry = cache.get(key);
+		if (entry != null) {
+			hits.increment();
+			return entry;
+		}
+		misses.increment();
+		entry = createEntry(Reflection.getMethod(cls, methodName, params));
+		Entry previous = cache.putIfAbsent(key, entry);
+		return previous == null ? entry : previous;
+	}
+
+	private static Entry createEntry(Method method) {
+		try {
+			MethodHandle handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+			if (Modifier.isStatic(method.getModifiers())) {
+				handle = MethodHandles.dropArguments(handle, 0, Object.class);
+			}
+			handle = handle.asType(handle.type().generic())
+					.asSpreader(Object[].class, method.getParameterCount())
+					.asType(INVOKER_TYPE);
+			return new Entry(method, handle);
+		} catch (IllegalAccessException e) {
+			throw new ReflectionException("Could not access method " + method, e);
+		}
+	}
+
+	/**
+	 * Gets the number of lookups which were served from the cache
+	 *
+	 * @return the number of cache hits
+	 */
+	public static long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of lookups which required resolving the method
+	 *
+	 * @return the number of cache misses
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the fraction of lookups which were served from the cache
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if no lookups have occurred
+	 */
+	public static double getHitRate() {
+		long hitCount = getHits();
+		long total = hitCount + getMisses();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Gets the number of resolutions currently cached
+	 *
+	 * @return the size of the cache
+	 */
+	public static int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Removes every cached resolution and resets the hit and miss counters
+	 */
+	public static void clear() {
+		cache.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+	/**
+	 * Removes every cached resolution for classes defined by the given class
+	 * loader. This should be called when the class loader is being discarded
+	 * so that the cache does not keep its classes reachable.
+	 *
+	 * @param classLoader
+	 *            the class loader being unloaded
+	 */
+	public static void clear(ClassLoader classLoader) {
+		for (Iterator<MemberKey> iterator = cache.keySet().iterator(); iterator.hasNext();) {
+			if (iterator.next().getDeclaringClass().getClassLoader() == classLoader) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static final class Entry {
+
+		private final Method method;
+		private final MethodHandle invoker;
+
+		private Entry(Method method, MethodHandle invoker) {
+			this.method = method;
+			this.invoker = invoker;
+		}
+
+	}
+
+}
@@ -1,22 +1,36 @@
 package com.kmecpp.jlib.reflection;
 
-import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.List;
-import java.util.jar.JarEntry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarFile;
 
 public class Reflection {
 
+	private static final ClassValue<ConcurrentHashMap<String, FieldAccessor>> fieldAccessors = new ClassValue<ConcurrentHashMap<String, FieldAccessor>>() {
+
+		@Override
+		protected ConcurrentHashMap<String, FieldAccessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+
+	};
+
+	private static final ClassValue<ConcurrentHashMap<MemberKey, InstanceFactory<?>>> instanceFactories = new ClassValue<ConcurrentHashMap<MemberKey, InstanceFactory<?>>>() {
+
+		@Override
+		protected ConcurrentHashMap<MemberKey, InstanceFactory<?>> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+
+	};
+
 	public static boolean isImplementation(Class<?> abstractClass, Class<?> implementingClass) {
 		return isConcrete(implementingClass) && abstractClass.isAssignableFrom(implementingClass);
 	}
@@ -44,11 +58,44 @@ public class Reflection {
 	}
 
 	public static void setField(Class<?> cls, Object obj, String field, Object value) {
-		try {
-			getField(cls, field).set(obj, value);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+		getFieldAccessor(cls, field).set(obj, value);
+	}
+
+	/**
+	 * Gets a compiled {@link FieldAccessor} for the given field. Accessors
+	 * avoid the lookup and boxing overhead of core reflection and should be
+	 * obtained once and reused.
+	 * 
+	 * @param field
+	 *            the field to access
+	 * @return an accessor for the field
+	 */
+	public static FieldAccessor getFieldAccessor(Field field) {
+		return new FieldAccessor(field);
+	}
+
+	/**
+	 * Gets the {@link FieldAccessor} for the declared field with the given name.
+	 * Accessors are cached per class, so repeated calls return the same
+	 * instance.
+	 * 
+	 * @param obj
+	 *            the object or class declaring the field
+	 * @param fieldName
+	 *            the name of the field
+	 * @return an accessor for the field
+	 */
+	public static FieldAccessor getFieldAccessor(Object obj, String fieldName) {
+		ConcurrentHashMap<String, FieldAccessor> accessors = fieldAccessors.get(getClass(obj));
+		FieldAccessor accessor = accessors.get(fieldName);
+		if (accessor == null) {
+			accessor = new FieldAccessor(getField(obj, fieldName));
+			FieldAccessor previous = accessors.putIfAbsent(fieldName, accessor);
+			if (previous != null) {
+				accessor = previous;
+			}
 		}
+		return accessor;
 	}
 
 	/**
@@ -96,14 +143,63 @@ public class Reflection {
 		}
 	}
 
+	/**
+	 * Creates a new instance of the class using the constructor matching the
+	 * runtime types of the given parameters. Resolved constructors are cached
+	 * as {@link InstanceFactory} instances, so repeated calls with the same
+	 * argument types do not search the class again.
+	 * 
+	 * @param cls
+	 *            the class to instantiate
+	 * @param params
+	 *            the constructor parameters
+	 * @return the instance created
+	 */
+	@SuppressWarnings("unchecked")
 	public static <T> T newInstance(Class<T> cls, Object... params) {
+		MemberKey key = MemberKey.of(cls, null, params);
+		ConcurrentHashMap<MemberKey, InstanceFactory<?>> factories = instanceFactories.get(cls);
+		InstanceFactory<T> factory = (InstanceFactory<T>) factories.get(key);
+		if (factory == null) {
+			factory = new InstanceFactory<>(getConstructor(cls, params == null ? new Object[0] : params));
+			InstanceFactory<T> previous = (InstanceFactory<T>) factories.putIfAbsent(key, factory);
+			if (previous != null) {
+				factory = previous;
+			}
+		}
+		return factory.newInstance(params);
+	}
+
+	/**
+	 * Gets an {@link InstanceFactory} for the declared constructor of the class
+	 * with the given parameter types. Factories should be obtained once and
+	 * reused.
+	 * 
+	 * @param cls
+	 *            the class to instantiate
+	 * @param paramTypes
+	 *            the parameter types of the constructor
+	 * @return a factory invoking the constructor
+	 */
+	public static <T> InstanceFactory<T> getInstanceFactory(Class<T> cls, Class<?>... paramTypes) {
 		try {
-			return getConstructor(cls, params).newInstance(params);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			return new InstanceFactory<>(cls.getDeclaredConstructor(paramTypes));
+		} catch (NoSuchMethodException e) {
+			throw new ReflectionException(e);
 		}
 	}
 
+	/**
+	 * Gets an {@link InstanceFactory} for the given constructor
+	 * 
+	 * @param constructor
+	 *            the constructor to invoke
+	 * @return a factory invoking the constructor
+	 */
+	public static <T> InstanceFactory<T> getInstanceFactory(Constructor<T> constructor) {
+		return new InstanceFactory<>(constructor);
+	}
+
 	/**
 	 * Gets all the constructors of the given class which match the specified
 	 * number of parameters.
@@ -142,13 +238,8 @@ public class Reflection {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public static <T> T invokeStaticMethod(Class<?> cls, String methodName, Object... params) {
-		try {
-			return (T) getMethod(cls, methodName, params).invoke(null, (Object[]) params);
-		} catch (Exception e) {
-			throw new ReflectionException(e);
-		}
+		return MethodCache.invoke(cls, null, methodName, params);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -165,8 +256,24 @@ public class Reflection {
 		return invokeMethod(obj.getClass(), obj, methodName, params);
 	}
 
+	/**
+	 * Invokes the method with the given name which best matches the runtime
+	 * types of the parameters. Resolutions are cached by {@link MethodCache},
+	 * so repeated calls with the same argument types do not search the class
+	 * again.
+	 * 
+	 * @param cls
+	 *            the class containing the method
+	 * @param obj
+	 *            the instance to invoke the method on
+	 * @param methodName
+	 *            the method name
+	 * @param params
+	 *            the method parameters
+	 * @return the result of the method
+	 */
 	public static <T> T invokeMethod(Class<?> cls, Object obj, String methodName, Object... params) {
-		return invokeMethod(obj, getMethod(cls, methodName, params), params);
+		return MethodCache.invoke(cls, obj, methodName, params);
 	}
 
 	/**
@@ -229,15 +336,20 @@ public class Reflection {
 		}
 	}
 
+	/**
+	 * Gets all the methods from the object with the given annotation. The
+	 * object may either be a class or an instance of one. The result is
+	 * precomputed by {@link ClassMetadata} and copied into a new array, so
+	 * callers which only iterate should use {@link ClassMetadata} directly.
+	 * 
+	 * @param obj
+	 *            the object or class to search
+	 * @param annotation
+	 *            the annotation to filter for
+	 * @return all the methods with the given annotation
+	 */
 	public static Method[] getMethodsWith(Object obj, Class<? extends Annotation> annotation) {
-		ArrayList<Method> methods = new ArrayList<>();
-		for (Method method : getClass(obj).getDeclaredMethods()) {
-			method.setAccessible(true);
-			if (method.isAnnotationPresent(annotation)) {
-				methods.add(method);
-			}
-		}
-		return methods.toArray(new Method[0]);
+		return ClassMetadata.of(getClass(obj)).getMethodsWith(annotation).toArray(new Method[0]);
 	}
 
 	public static Object getStaticValue(Object object, Field field) {
@@ -245,7 +357,7 @@ public class Reflection {
 	}
 
 	public static Object getFieldValue(Object object, String fieldName) {
-		return getFieldValue(object, getField(object.getClass(), fieldName));
+		return getFieldAccessor(object.getClass(), fieldName).get(object);
 	}
 
 	public static Object getFieldValue(Object object, Class<?> cls, String fieldName) {
@@ -302,7 +414,9 @@ public class Reflection {
 	/**
 	 * Gets all the fields from the object with the given annotation. The object
 	 * may either be a class or an instance of one. In either case the fields
-	 * will retrieved from that class.
+	 * will retrieved from that class. The result is precomputed by
+	 * {@link ClassMetadata} and copied into a new array, so callers which only
+	 * iterate should use {@link ClassMetadata} directly.
 	 * 
 	 * @param obj
 	 *            the object or class to search
@@ -311,14 +425,7 @@ public class Reflection {
 	 * @return all the fields with the given annotation
 	 */
 	public static Field[] getFieldsWith(Object obj, Class<? extends Annotation> annotation) {
-		ArrayList<Field> fields = new ArrayList<>();
-		for (Field field : getClass(obj).getDeclaredFields()) {
-			field.setAccessible(true);
-			if (field.isAnnotationPresent(annotation)) {
-				fields.add(field);
-			}
-		}
-		return fields.toArray(new Field[0]);
+		return ClassMetadata.of(getClass(obj)).getFieldsWith(annotation).toArray(new Field[0]);
 	}
 
 	/**
@@ -359,67 +466,33 @@ public class Reflection {
 
 	/**
 	 * Scans all classes accessible from the context class loader which belong
-	 * to the given package and subpackages.
+	 * to the given package and subpackages. Classes are loaded but not
+	 * initialized.
 	 *
 	 * @param pkg
 	 *            The base package
 	 * @return The classes
 	 */
 	public static Class<?>[] getClasses(String pkg) {
-		try {
-			Enumeration<URL> resources = Thread.currentThread().getContextClassLoader().getResources(pkg.replace('.', '/'));
-			List<File> files = new ArrayList<File>();
-			while (resources.hasMoreElements()) {
-				files.add(new File(resources.nextElement().getFile()));
-			}
-			ArrayList<Class<?>> classes = new ArrayList<>();
-			for (File directory : files) {
-				classes.addAll(findClasses(directory, pkg));
-			}
-			return classes.toArray(new Class[classes.size()]);
-		} catch (IOException e) {
-			throw new ReflectionException(e);
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	public static <T> HashSet<Class<T>> getSubclasses(String pkg, Class<T> cls) {
-		HashSet<Class<T>> classes = new HashSet<>();
-		for (Class<?> c : getClasses(pkg)) {
-			if (isAssignable(c, cls)) {
-				classes.add((Class<T>) c);
-			}
-		}
-		return classes;
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		HashSet<Class<?>> classes = ClassScanner.load(classLoader, ClassScanner.scan(classLoader, pkg));
+		return classes.toArray(new Class[classes.size()]);
 	}
 
 	/**
-	 * Recursive method used to find all classes in a given directory and
-	 * subdirs.
+	 * Finds all classes in the given package and subpackages which are
+	 * assignable to the given class. Candidate classes are matched using their
+	 * class file headers, so only the matching classes are loaded.
 	 *
-	 * @param directory
-	 *            The base directory
 	 * @param pkg
-	 *            The package name for classes found inside the base directory
-	 * @return The classes
+	 *            the base package
+	 * @param cls
+	 *            the class to find subclasses of
+	 * @return the matching classes
 	 */
-	private static List<Class<?>> findClasses(File directory, String pkg) {
-		List<Class<?>> classes = new ArrayList<>();
-		if (!directory.exists()) {
-			return classes;
-		}
-		for (File file : directory.listFiles()) {
-			if (file.isDirectory()) {
-				classes.addAll(findClasses(file, pkg + "." + file.getName()));
-			} else if (file.getName().endsWith(".class")) {
-				try {
-					classes.add(Class.forName(pkg + '.' + file.getName().substring(0, file.getName().length() - 6)));
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}
-		return classes;
+	public static <T> HashSet<Class<T>> getSubclasses(String pkg, Class<T> cls) {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return ClassScanner.getSubclasses(classLoader, ClassScanner.scan(classLoader, pkg), cls);
 	}
 
 	public static HashSet<Class<?>> getClasses(JarFile jarFile, String pkg) {
@@ -427,28 +500,35 @@ public class Reflection {
 	}
 
 	public static HashSet<Class<?>> getClasses(ClassLoader classLoader, JarFile jarFile, String pkg) {
-		HashSet<Class<?>> classes = new HashSet<Class<?>>();
 		try {
-			for (Enumeration<JarEntry> entry = jarFile.entries(); entry.hasMoreElements();) {
-				String name = entry.nextElement().getName().replace("/", ".");
-				if (name.startsWith(pkg) && name.endsWith(".class")) {
-					try {
-						String className = name.substring(0, name.length() - 6);
-						if (classLoader == null) {
-							classes.add(Class.forName(className));
-						} else {
-							classes.add(classLoader.loadClass(className));
-						}
-					} catch (NoClassDefFoundError e) {
-						//Ignore unloaded classes
-					}
-				}
-			}
+			return ClassScanner.load(getClassLoader(classLoader), ClassScanner.scan(jarFile, pkg));
+		} finally {
+			close(jarFile);
+		}
+	}
+
+	public static <T> HashSet<Class<T>> getSubclasses(JarFile jarFile, String pkg, Class<T> cls) {
+		return getSubclasses(null, jarFile, pkg, cls);
+	}
+
+	public static <T> HashSet<Class<T>> getSubclasses(ClassLoader classLoader, JarFile jarFile, String pkg, Class<T> cls) {
+		try {
+			return ClassScanner.getSubclasses(getClassLoader(classLoader), ClassScanner.scan(jarFile, pkg), cls);
+		} finally {
+			close(jarFile);
+		}
+	}
+
+	private static ClassLoader getClassLoader(ClassLoader classLoader) {
+		return classLoader == null ? Reflection.class.getClassLoader() : classLoader;
+	}
+
+	private static void close(JarFile jarFile) {
+		try {
 			jarFile.close();
-		} catch (Exception e) {
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return classes;
 	}
 
 }
@@ -0,0 +1,421 @@
+package com.kmecpp.jlib.reflection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * A persistent index of class file headers produced by {@link ClassScanner}.
+ * Entries are keyed by the absolute path of the scanned jar or classpath
+ * directory along with its size and modification time, so a source is only
+ * scanned again once it changes.
+ *
+ * <br>
+ * <br>
+ *
+ * The index is disabled by default. It can be enabled with
+ * {@link #setDefault(File)} or by setting the <code>jlib.scanIndex</code>
+ * system property to the path of the index file. Independently of the on disk
+ * index, jars and directories may contain a prebuilt index at
+ * {@value #ENTRY}, which can be generated at build time by running this class.
+ * The prebuilt index of a directory records the fingerprint of the directory
+ * and is ignored once a class file is added, removed or changed:
+ *
+ * <pre>
+ * java com.kmecpp.jlib.reflection.ScanIndex &lt;jar or classes directory&gt;...
+ * </pre>
+ */
+public class ScanIndex {
+
+	public static final String ENTRY = "META-INF/jlib/classes.idx";
+	public static final String PROPERTY = "jlib.scanIndex";
+
+	private static final String HEADER = "#jlib-scan-index 1";
+	private static final String ROOT = "root\t";
+	private static final String FINGERPRINT = "fingerprint\t";
+	private static final String[] EMPTY = new String[0];
+
+	private static volatile ScanIndex defaultIndex;
+
+	static {
+		String path = System.getProperty(PROPERTY);
+		if (path != null && !path.isEmpty()) {
+			defaultIndex = new ScanIndex(new File(path));
+		}
+	}
+
+	private final File file;
+	private final HashMap<String, Source> sources = new HashMap<>();
+	private boolean loaded;
+	private boolean dirty;
+
+	public ScanIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Gets the index used by {@link ClassScanner}
+	 *
+	 * @return the default index, or null if persistent indexing is disabled
+	 */
+	public static ScanIndex getDefault() {
+		return defaultIndex;
+	}
+
+	/**
+	 * Sets the file backing the index used by {@link ClassScanner}
+	 *
+	 * @param file
+	 *            the index file, or null to disable persistent indexing
+	 */
+	public static void setDefault(File file) {
+		defaultIndex = file == null ? null : new ScanIndex(file);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the indexed classes of the given jar or directory if its size and
+	 * modification time are unchanged since it was indexed
+	 *
+	 * @param source
+	 *            the jar or classpath directory
+	 * @param size
+	 *            the current size of the source
+	 * @param modified
+	 *            the current modification time of the source
+	 * @return the indexed classes, or null if the source must be scanned
+	 */
+	public synchronized List<ClassInfo> get(File source, long size, long modified) {
+		load();
+		Source entry = sources.get(source.getAbsolutePath());
+		return entry != null && entry.size == size && entry.modified == modified ? entry.classes : null;
+	}
+
+	/**
+	 * Records the classes of the given jar or directory. The index file is
+	 * only written by {@link #flush()}, so that scanning many sources saves
+	 * the index once.
+	 *
+	 * @param source
+	 *            the jar or classpath directory
+	 * @param size
+	 *            the size of the source when it was scanned
+	 * @param modified
+	 *            the modification time of the source when it was scanned
+	 * @param classes
+	 *            every class contained in the source
+	 */
+	public synchronized void put(File source, long size, long modified, List<ClassInfo> classes) {
+		load();
+		sources.put(source.getAbsolutePath(), new Source(size, modified, classes));
+		dirty = true;
+	}
+
+	/**
+	 * Saves the index if sources were recorded since it was last saved.
+	 * Failures are printed rather than thrown, since the index is only a
+	 * cache.
+	 */
+	public synchronized void flush() {
+		if (!dirty) {
+			return;
+		}
+		try {
+			save();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the index to its file, replacing any previous contents
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized void save() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		Path temp = Files.createTempFile(parent == null ? null : parent.toPath(), file.getName(), ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.write('\n');
+			for (Map.Entry<String, Source> entry : sources.entrySet()) {
+				Source source = entry.getValue();
+				writer.write(ROOT + entry.getKey() + '\t' + source.size + '\t' + source.modified + '\n');
+				writeClasses(writer, source.classes);
+			}
+		}
+		Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		dirty = false;
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		if (!file.isFile()) {
+			return;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return;
+			}
+			Source source = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(ROOT)) {
+					String[] parts = line.split("\t");
+					source = new Source(Long.parseLong(parts[2]), Long.parseLong(parts[3]), new ArrayList<ClassInfo>());
+					sources.put(parts[1], source);
+				} else if (source != null && !line.isEmpty()) {
+					source.classes.add(parse(line));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			sources.clear(); //Corrupt index, rebuild from scratch
+		}
+	}
+
+	/**
+	 * Computes the fingerprint of a classpath directory as the total size and
+	 * latest modification time of the files and directories it contains. The
+	 * directory of the prebuilt index is excluded, so writing the index does
+	 * not change the fingerprint.
+	 *
+	 * @param directory
+	 *            the directory
+	 * @return an array containing the size and modification time
+	 * @throws IOException
+	 *             if an I/O error occurs while walking the directory
+	 */
+	static long[] fingerprint(File directory) throws IOException {
+		final long[] result = new long[] { 0, directory.lastModified() };
+		final Path indexDirectory = new File(directory, ENTRY).getParentFile().toPath();
+		Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				if (dir.equals(indexDirectory)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				result[1] = Math.max(result[1], attrs.lastModifiedTime().toMillis());
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+				result[0] += attrs.size();
+				result[1] = Math.max(result[1], attrs.lastModifiedTime().toMillis());
+				return FileVisitResult.CONTINUE;
+			}
+
+		});
+		return result;
+	}
+
+	/**
+	 * Reads a prebuilt index in the format written by
+	 * {@link #writeClasses(Writer, List)}
+	 *
+	 * @param in
+	 *            the stream to read
+	 * @param fingerprint
+	 *            the current fingerprint of the indexed directory, or null if
+	 *            the index belongs to a jar
+	 * @return the indexed classes, or null if the index was generated for a
+	 *         different fingerprint
+	 * @throws IOException
+	 *             if an I/O error occurs or the index is malformed
+	 */
+	static List<ClassInfo> readClasses(InputStream in, long[] fingerprint) throws IOException {
+		ArrayList<ClassInfo> classes = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		if (!HEADER.equals(reader.readLine())) {
+			throw new IOException("Unsupported scan index format");
+		}
+		boolean current = fingerprint == null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith(FINGERPRINT)) {
+				current = fingerprint == null || line.equals(FINGERPRINT + fingerprint[0] + '\t' + fingerprint[1]);
+			} else if (!line.isEmpty()) {
+				try {
+					classes.add(parse(line));
+				} catch (RuntimeException e) {
+					throw new IOException("Malformed scan index entry: " + line, e);
+				}
+			}
+		}
+		return current ? classes : null;
+	}
+
+	private static void writeClasses(Writer writer, List<ClassInfo> classes) throws IOException {
+		for (ClassInfo info : classes) {
+			writer.write(Integer.toString(info.getAccess()));
+			writer.write('\t');
+			writer.write(info.getName());
+			writer.write('\t');
+			writer.write(info.getSuperName() == null ? "" : info.getSuperName());
+			writer.write('\t');
+			writer.write(String.join(",", info.interfaces()));
+			writer.write('\t');
+			writer.write(String.join(",", info.annotations()));
+			writer.write('\n');
+		}
+	}
+
+	private static ClassInfo parse(String line) {
+		String[] parts = line.split("\t", -1);
+		return new ClassInfo(parts[1], parts[2].isEmpty() ? null : parts[2], split(parts[3]), split(parts[4]), Integer.parseInt(parts[0]));
+	}
+
+	private static String[] split(String list) {
+		return list.isEmpty() ? EMPTY : list.split(",");
+	}
+
+	/**
+	 * Filters the given classes to those belonging to the given package or its
+	 * subpackages
+	 *
+	 * @param classes
+	 *            the classes to filter
+	 * @param pkg
+	 *            the package, or an empty string for every class
+	 * @return the matching classes
+	 */
+	static List<ClassInfo> filter(List<ClassInfo> classes, String pkg) {
+		if (pkg.isEmpty()) {
+			return new ArrayList<>(classes);
+		}
+		String prefix = pkg + ".";
+		ArrayList<ClassInfo> result = new ArrayList<>();
+		for (ClassInfo info : classes) {
+			if (info.getName().startsWith(prefix)) {
+				result.add(info);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Scans the given jar or classes directory and embeds the resulting index
+	 * at {@value #ENTRY}. Jars are rewritten in place. The index of a directory
+	 * has to be generated again after its classes change.
+	 *
+	 * @param target
+	 *            the jar or classes directory
+	 * @return the number of classes indexed
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static int generate(File target) throws IOException {
+		if (target.isDirectory()) {
+			File index = new File(target, ENTRY);
+			index.getParentFile().mkdirs();
+			long[] fingerprint = fingerprint(target); //Taken before scanning, so changes made meanwhile make the index stale
+			List<ClassInfo> classes = ClassScanner.scanAll(target);
+			try (Writer writer = new OutputStreamWriter(Files.newOutputStream(index.toPath()), StandardCharsets.UTF_8)) {
+				writer.write(HEADER + '\n');
+				writer.write(FINGERPRINT + fingerprint[0] + '\t' + fingerprint[1] + '\n');
+				writeClasses(writer, classes);
+			}
+			return classes.size();
+		}
+
+		Path temp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), target.getName(), ".tmp");
+		int count;
+		try (JarFile jarFile = new JarFile(target); JarOutputStream out = new JarOutputStream(Files.newOutputStream(temp))) {
+			byte[] buffer = new byte[8192];
+			for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements();) {
+				JarEntry entry = e.nextElement();
+				if (entry.getName().equals(ENTRY)) {
+					continue;
+				}
+				JarEntry copy = new JarEntry(entry.getName());
+				copy.setTime(entry.getTime());
+				out.putNextEntry(copy);
+				try (InputStream in = jarFile.getInputStream(entry)) {
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						out.write(buffer, 0, read);
+					}
+				}
+				out.closeEntry();
+			}
+
+			List<ClassInfo> classes = ClassScanner.scanAll(jarFile);
+			count = classes.size();
+			out.putNextEntry(new JarEntry(ENTRY));
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			writer.write(HEADER + '\n');
+			writeClasses(writer, classes);
+			writer.flush();
+			out.closeEntry();
+		}
+		Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return count;
+	}
+
+	/**
+	 * Build time generator entry point. Each argument is a jar or classes
+	 * directory to embed an index into.
+	 *
+	 * @param args
+	 *            the jars and directories to index
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: ScanIndex <jar or classes directory>...");
+			System.exit(1);
+		}
+		for (String arg : args) {
+			File target = new File(arg);
+			System.out.println("Indexed " + generate(target) + " classes in " + target);
+		}
+	}
+
+	private static final class Source {
+
+		private final long size;
+		private final long modified;
+		private final List<ClassInfo> classes;
+
+		private Source(long size, long modified, List<ClassInfo> classes) {
+			this.size = size;
+			this.modified = modified;
+			this.classes = classes;
+		}
+
+	}
+
+}
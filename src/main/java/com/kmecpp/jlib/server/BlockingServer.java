@@ -0,0 +1,197 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.kmecpp.jlib.utils.SystemUtil;
+
+/**
+ * A TCP server which serves each client on its own thread with blocking I/O.
+ * When the JVM supports virtual threads every connection gets a virtual
+ * thread, so tens of thousands of clients can be served without a thread pool
+ * limiting them. On older JVMs connections run on a bounded pool of platform
+ * threads, and admitted clients wait for a free thread once every thread is
+ * busy.
+ *
+ * <br>
+ * <br>
+ *
+ * Shutting the server down stops accepting clients and gives the running
+ * handlers a grace period to finish, which they can end early by checking
+ * {@link #isShuttingDown()} between requests. Connections which are still open
+ * after the grace period are closed.
+ */
+public class BlockingServer extends Server {
+
+	/**
+	 * The maximum number of platform threads used when virtual threads are not
+	 * available
+	 */
+	public static final int MAX_PLATFORM_THREADS = 512;
+
+	public static final long DEFAULT_GRACE_PERIOD = 5000;
+
+	private static final int BACKLOG = 1024;
+
+	private final ServerSocket server;
+	private final ConnectionHandler handler;
+	private final ExecutorService executor;
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+
+	private volatile boolean closed;
+
+	/**
+	 * Starts a server listening on the given port
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for an ephemeral port
+	 * @param maxClient
+	 *            the maximum number of simultaneous clients
+	 * @param handler
+	 *            the handler which serves each client
+	 * @throws IOException
+	 *             if the server cannot be bound to the port
+	 */
+	public BlockingServer(int port, int maxClient, ConnectionHandler handler) throws IOException {
+		super(maxClient);
+		this.handler = handler;
+		this.server = new ServerSocket();
+		try {
+			server.bind(new InetSocketAddress(port), BACKLOG);
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+		this.executor = SystemUtil.newVirtualThreadExecutor("BlockingServer-" + getPort(), Math.min(maxClient, MAX_PLATFORM_THREADS));
+		this.acceptor = new Thread(this::accept, "BlockingServer-" + getPort() + "-Acceptor");
+		this.acceptor.start();
+	}
+
+	@Override
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Checks whether the server has stopped accepting clients. Handlers of
+	 * long lived connections should return once this is true.
+	 *
+	 * @return true if the server is shutting down
+	 */
+	public boolean isShuttingDown() {
+		return closed;
+	}
+
+	private void accept() {
+		while (!closed) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				if (!closed) {
+					e.printStackTrace();
+					if (backoff()) {
+						continue;
+					}
+				}
+				break;
+			}
+
+			if (!admit()) {
+				closeQuietly(socket);
+				continue;
+			}
+			sockets.add(socket);
+			try {
+				executor.execute(() -> serve(socket));
+			} catch (RejectedExecutionException e) {
+				sockets.remove(socket);
+				release();
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			handler.handle(socket);
+		} catch (IOException e) {
+			//Client disconnected
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		} finally {
+			sockets.remove(socket);
+			closeQuietly(socket);
+			release();
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//Ignore
+		}
+	}
+
+	/**
+	 * Stops accepting clients and waits for the running handlers to finish,
+	 * closing the connections which are still open after the timeout
+	 *
+	 * @param timeout
+	 *            the grace period
+	 * @param unit
+	 *            the unit of the grace period
+	 * @return true if every handler finished within the grace period
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+		if (!closed) {
+			closed = true;
+			closeQuietly(server);
+			acceptor.join();
+			executor.shutdown();
+		}
+		if (executor.awaitTermination(timeout, unit)) {
+			return true;
+		}
+		for (Socket socket : sockets) {
+			closeQuietly(socket); //Unblocks handlers waiting for input
+		}
+		executor.shutdownNow();
+		executor.awaitTermination(timeout, unit);
+		return false;
+	}
+
+	private static void closeQuietly(ServerSocket server) {
+		try {
+			server.close();
+		} catch (IOException e) {
+			//Ignore
+		}
+	}
+
+	/**
+	 * Shuts the server down with the {@link #DEFAULT_GRACE_PERIOD default}
+	 * grace period
+	 */
+	@Override
+	public void close() {
+		try {
+			shutdown(DEFAULT_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
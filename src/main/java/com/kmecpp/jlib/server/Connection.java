@@ -0,0 +1,337 @@
+package com.kmecpp.jlib.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A client connection of an {@link EventLoopServer}. Every connection is
+ * served by a single event loop thread and buffers its own input and output.
+ *
+ * <br>
+ * <br>
+ *
+ * Writes may be made from any thread. They are queued and sent without
+ * blocking as the socket becomes writable, and the connection stops reading
+ * while too much output is queued, so a client which does not read its
+ * responses cannot make the server buffer without bound. Queued writes are
+ * flushed once the event loop has handled every ready connection, so the
+ * writes made while handling a batch of input are sent together with a
+ * single gathering write.
+ */
+public final class Connection implements Closeable {
+
+	static final int INITIAL_READ_BUFFER = 8192;
+	static final int MAX_READ_BUFFER = 16 << 20;
+
+	/**
+	 * The number of queued output bytes above which the connection stops
+	 * reading
+	 */
+	static final int MAX_PENDING_WRITES = 1 << 20;
+
+	/**
+	 * The maximum number of buffers passed to a single gathering write
+	 */
+	static final int MAX_GATHER = 64;
+
+	private final Server server;
+	private final EventLoop loop;
+	private final SocketChannel channel;
+	private final Handler handler;
+	private final SocketAddress remoteAddress;
+
+	//Only accessed by the event loop thread
+	private SelectionKey key;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+
+	//Guarded by this
+	private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+	private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+	private long pendingBytes;
+	private long writeCalls;
+	private boolean flushScheduled;
+	private boolean closeRequested;
+	private boolean readPaused;
+
+	private volatile boolean closed;
+	private volatile Object attachment;
+
+	Connection(Server server, EventLoop loop, SocketChannel channel, Handler handler) throws IOException {
+		this.server = server;
+		this.loop = loop;
+		this.channel = channel;
+		this.handler = handler;
+		this.remoteAddress = channel.getRemoteAddress();
+	}
+
+	void register() {
+		try {
+			channel.configureBlocking(false);
+			key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+			handler.onConnect(this);
+		} catch (Exception e) {
+			handleError(e);
+		}
+	}
+
+	public SocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Gets the object attached to this connection by its handler
+	 *
+	 * @return the attachment, or null if there is none
+	 */
+	public Object getAttachment() {
+		return attachment;
+	}
+
+	public void setAttachment(Object attachment) {
+		this.attachment = attachment;
+	}
+
+	/**
+	 * Gets the number of bytes which have been written but not sent yet
+	 *
+	 * @return the number of pending bytes
+	 */
+	public synchronized long getPendingBytes() {
+		return pendingBytes;
+	}
+
+	/**
+	 * Gets the number of write system calls made for this connection
+	 *
+	 * @return the number of writes
+	 */
+	synchronized long getWriteCalls() {
+		return writeCalls;
+	}
+
+	/**
+	 * Queues the remaining bytes of the buffers to be sent, in order and
+	 * without being interleaved with the buffers of other calls. The buffers
+	 * must not be modified afterwards.
+	 *
+	 * @param data
+	 *            the data to send
+	 */
+	public void write(ByteBuffer... data) {
+		boolean schedule;
+		synchronized (this) {
+			if (closed || closeRequested) {
+				return;
+			}
+			for (ByteBuffer buffer : data) {
+				if (buffer.hasRemaining()) {
+					writeQueue.add(buffer);
+					pendingBytes += buffer.remaining();
+				}
+			}
+			schedule = !flushScheduled && !writeQueue.isEmpty();
+			if (schedule) {
+				flushScheduled = true;
+			}
+		}
+		if (schedule) {
+			loop.execute(this::flush); //Deferred until the loop has handled all ready input
+		}
+	}
+
+	public void write(byte[] data) {
+		write(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Stops reading from the client until {@link #resumeReading()} is called.
+	 * Data which has already been received stays buffered.
+	 */
+	public void pauseReading() {
+		synchronized (this) {
+			readPaused = true;
+		}
+		if (loop.inLoop()) {
+			updateInterest();
+		} else {
+			loop.execute(this::updateInterest);
+		}
+	}
+
+	/**
+	 * Resumes reading from the client. Buffered data which the handler left
+	 * unconsumed is passed to it again.
+	 */
+	public void resumeReading() {
+		synchronized (this) {
+			if (!readPaused) {
+				return;
+			}
+			readPaused = false;
+		}
+		loop.execute(() -> { //Never reentrant, even when called from the handler
+			updateInterest();
+			if (!closed && readBuffer.position() > 0) {
+				deliver();
+			}
+		});
+	}
+
+	/**
+	 * Closes the connection once every queued byte has been sent. No more
+	 * data is read or written after this method is called.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closeRequested) {
+				return;
+			}
+			closeRequested = true;
+		}
+		loop.execute(this::flush);
+	}
+
+	void read() {
+		int count;
+		try {
+			count = channel.read(readBuffer);
+		} catch (IOException e) {
+			closeNow();
+			return;
+		}
+		if (count == -1) {
+			close(); //The client may still be waiting for responses
+			return;
+		}
+		deliver();
+	}
+
+	private void deliver() {
+		readBuffer.flip();
+		try {
+			handler.onData(this, readBuffer);
+		} catch (Exception e) {
+			handleError(e);
+			return;
+		}
+		readBuffer.compact();
+
+		if (!readBuffer.hasRemaining()) {
+			if (readBuffer.capacity() >= MAX_READ_BUFFER) {
+				closeNow(); //The handler is not consuming its input
+				return;
+			}
+			ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		}
+	}
+
+	void flush() {
+		if (closed) {
+			return;
+		}
+		boolean empty;
+		boolean closing;
+		try {
+			synchronized (this) {
+				flushScheduled = false;
+				while (!writeQueue.isEmpty()) {
+					int count = 0;
+					for (ByteBuffer buffer : writeQueue) {
+						gather[count++] = buffer;
+						if (count == MAX_GATHER) {
+							break;
+						}
+					}
+					pendingBytes -= channel.write(gather, 0, count);
+					writeCalls++;
+					boolean full = gather[count - 1].hasRemaining();
+					Arrays.fill(gather, 0, count, null);
+					while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+						writeQueue.poll();
+					}
+					if (full) {
+						break; //The socket buffer is full, wait until it is writable
+					}
+				}
+				empty = writeQueue.isEmpty();
+				closing = closeRequested;
+			}
+		} catch (IOException e) {
+			closeNow();
+			return;
+		}
+
+		if (empty && closing) {
+			closeNow();
+		} else {
+			updateInterest();
+		}
+	}
+
+	private void updateInterest() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		int ops;
+		synchronized (this) {
+			ops = (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE)
+					| (closeRequested || readPaused || pendingBytes >= MAX_PENDING_WRITES ? 0 : SelectionKey.OP_READ);
+		}
+		key.interestOps(ops);
+	}
+
+	private void handleError(Exception e) {
+		if (!(e instanceof IOException)) {
+			e.printStackTrace();
+		}
+		closeNow();
+	}
+
+	/**
+	 * Closes the connection immediately, discarding queued output
+	 */
+	void closeNow() {
+		if (closed) {
+			return;
+		}
+		synchronized (this) {
+			closed = true;
+			writeQueue.clear();
+			pendingBytes = 0;
+		}
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//Already closed
+		}
+		server.release();
+		try {
+			handler.onClose(this);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Connection[" + remoteAddress + "]";
+	}
+
+}
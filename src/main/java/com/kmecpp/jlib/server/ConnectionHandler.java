@@ -0,0 +1,26 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Serves a single client of a {@link BlockingServer} with blocking I/O. Each
+ * connection is handled on its own thread, which is a virtual thread when the
+ * JVM supports them, so handlers can read requests and write responses in a
+ * simple loop.
+ */
+@FunctionalInterface
+public interface ConnectionHandler {
+
+	/**
+	 * Serves the client until it disconnects or the handler is done. The
+	 * socket is closed once this method returns.
+	 *
+	 * @param socket
+	 *            the client socket
+	 * @throws IOException
+	 *             if an I/O error occurs, which closes the connection
+	 */
+	void handle(Socket socket) throws IOException;
+
+}
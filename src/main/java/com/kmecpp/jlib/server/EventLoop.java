@@ -0,0 +1,118 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread which multiplexes the I/O of many connections with a single
+ * {@link Selector}. Tasks are run on the loop thread between selections,
+ * both before and after the ready connections are handled, so tasks submitted
+ * by the loop thread itself run at the end of the current iteration.
+ */
+final class EventLoop implements Runnable {
+
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean closed;
+
+	EventLoop(String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	Selector getSelector() {
+		return selector;
+	}
+
+	boolean inLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Runs the task on the loop thread
+	 *
+	 * @param task
+	 *            the task to run
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		if (!inLoop()) {
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				runTasks();
+				for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+					SelectionKey key = it.next();
+					it.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isWritable()) {
+							connection.flush();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.read();
+						}
+					} catch (CancelledKeyException e) {
+						connection.closeNow();
+					}
+				}
+				runTasks(); //Flushes the writes made while handling the ready connections
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			runTasks();
+			for (SelectionKey key : new ArrayList<>(selector.keys())) {
+				((Connection) key.attachment()).closeNow();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Stops the loop, closing every connection it serves
+	 */
+	void shutdown() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	void join() throws InterruptedException {
+		if (!inLoop()) {
+			thread.join();
+		}
+	}
+
+}
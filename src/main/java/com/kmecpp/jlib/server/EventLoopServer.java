@@ -0,0 +1,160 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking TCP server which serves its connections on a fixed number of
+ * event loop threads, each multiplexing many connections with a
+ * {@link java.nio.channels.Selector}. Connections are accepted on a separate
+ * thread and assigned to the event loops in turn, and each connection is
+ * served by the same loop until it is closed.
+ *
+ * <br>
+ * <br>
+ *
+ * Since a thread is not needed per connection, a single process can hold
+ * thousands of mostly idle connections. The {@link Handler} is called on the
+ * event loop threads and must not block.
+ */
+public class EventLoopServer extends Server {
+
+	private static final int BACKLOG = 1024;
+
+	private final ServerSocketChannel channel;
+	private final Handler handler;
+	private final EventLoop[] loops;
+	private final Thread acceptor;
+
+	private volatile boolean closed;
+
+	/**
+	 * Starts a server listening on the given port
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for an ephemeral port
+	 * @param maxClient
+	 *            the maximum number of simultaneous clients
+	 * @param threads
+	 *            the number of event loop threads
+	 * @param handler
+	 *            the handler for the events of every connection
+	 * @throws IOException
+	 *             if the server cannot be bound to the port
+	 */
+	public EventLoopServer(int port, int maxClient, int threads, Handler handler) throws IOException {
+		super(maxClient);
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+		}
+		this.handler = handler;
+		this.channel = ServerSocketChannel.open();
+		this.loops = new EventLoop[threads];
+		try {
+			channel.bind(new InetSocketAddress(port), BACKLOG);
+			for (int i = 0; i < threads; i++) {
+				loops[i] = new EventLoop("EventLoopServer-" + getPort() + "-" + i);
+			}
+		} catch (IOException e) {
+			for (EventLoop loop : loops) {
+				if (loop != null) {
+					try {
+						loop.getSelector().close(); //Never started, so nothing else closes it
+					} catch (IOException suppressed) {
+						e.addSuppressed(suppressed);
+					}
+				}
+			}
+			channel.close();
+			throw e;
+		}
+		for (EventLoop loop : loops) {
+			loop.start();
+		}
+		this.acceptor = new Thread(this::accept, "EventLoopServer-" + getPort() + "-Acceptor");
+		this.acceptor.start();
+	}
+
+	@Override
+	public int getPort() {
+		return channel.socket().getLocalPort();
+	}
+
+	/**
+	 * Gets the number of event loop threads
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return loops.length;
+	}
+
+	private void accept() {
+		int next = 0;
+		while (!closed) {
+			SocketChannel client;
+			try {
+				client = channel.accept();
+			} catch (ClosedChannelException e) {
+				break;
+			} catch (IOException e) {
+				e.printStackTrace(); //Most likely out of file descriptors, keep serving existing clients
+				if (!backoff()) {
+					break;
+				}
+				continue;
+			}
+
+			if (!admit()) {
+				closeQuietly(client);
+				continue;
+			}
+			try {
+				client.socket().setTcpNoDelay(true);
+				EventLoop loop = loops[next];
+				next = (next + 1) % loops.length;
+				Connection connection = new Connection(this, loop, client, handler);
+				loop.execute(connection::register);
+			} catch (IOException e) {
+				release();
+				closeQuietly(client);
+			}
+		}
+	}
+
+	private static void closeQuietly(SocketChannel client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			//Ignore
+		}
+	}
+
+	/**
+	 * Stops accepting clients, closes every connection and waits for the event
+	 * loop threads to terminate
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		channel.close();
+		try {
+			acceptor.join();
+			for (EventLoop loop : loops) {
+				loop.shutdown();
+			}
+			for (EventLoop loop : loops) {
+				loop.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a stream of bytes into messages and frames outgoing messages the
+ * same way. Codecs are stateless and may be shared by every connection.
+ *
+ * @see LengthPrefixedCodec
+ * @see LineCodec
+ */
+public interface FrameCodec {
+
+	/**
+	 * Reads the next complete message from the buffer, advancing its position
+	 * past the frame. Nothing is consumed if the buffer does not contain a
+	 * complete frame yet.
+	 *
+	 * @param data
+	 *            the received data
+	 * @return a new buffer containing the message, or null if the frame is
+	 *         incomplete
+	 * @throws IOException
+	 *             if the data is not a valid frame, or the frame is too long
+	 */
+	ByteBuffer decode(ByteBuffer data) throws IOException;
+
+	/**
+	 * Frames a message without copying it
+	 *
+	 * @param message
+	 *            the message to send
+	 * @return the buffers to send, in order
+	 */
+	ByteBuffer[] encode(ByteBuffer message);
+
+}
@@ -0,0 +1,55 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Handles the events of the connections of an {@link EventLoopServer}.
+ * Handlers are called on the event loop thread of the connection, so they
+ * must not block, and a single handler is shared by every connection. State
+ * which belongs to one connection can be stored with
+ * {@link Connection#setAttachment(Object)}.
+ *
+ * <br>
+ * <br>
+ *
+ * If a handler throws an exception the connection is closed.
+ */
+@FunctionalInterface
+public interface Handler {
+
+	/**
+	 * Called once a client has been accepted, before any data is received
+	 *
+	 * @param connection
+	 *            the new connection
+	 * @throws IOException
+	 *             to close the connection
+	 */
+	default void onConnect(Connection connection) throws IOException {
+	}
+
+	/**
+	 * Called whenever data has been received. Bytes which are left in the
+	 * buffer are kept and passed again, followed by the next data received,
+	 * which allows a message to be handled once it has arrived completely.
+	 *
+	 * @param connection
+	 *            the connection the data was received on
+	 * @param data
+	 *            the buffered data, ready to be read
+	 * @throws IOException
+	 *             to close the connection
+	 */
+	void onData(Connection connection, ByteBuffer data) throws IOException;
+
+	/**
+	 * Called once after the connection has been closed by either side
+	 *
+	 * @param connection
+	 *            the closed connection
+	 */
+	default void onClose(Connection connection) {
+	}
+
+}
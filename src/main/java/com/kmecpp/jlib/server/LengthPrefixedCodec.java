@@ -0,0 +1,63 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FrameCodec} for messages which are preceded by their length as a
+ * four byte big-endian integer
+ */
+public class LengthPrefixedCodec implements FrameCodec {
+
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 1 << 20;
+
+	private final int maxFrameLength;
+
+	public LengthPrefixedCodec() {
+		this(DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * Creates a codec which rejects long messages
+	 *
+	 * @param maxFrameLength
+	 *            the maximum length of a message, excluding its prefix. A
+	 *            whole frame must fit in a connection's read buffer, so it
+	 *            may be at most 4 bytes less than 16 MB.
+	 */
+	public LengthPrefixedCodec(int maxFrameLength) {
+		if (maxFrameLength <= 0 || maxFrameLength > Connection.MAX_READ_BUFFER - 4) {
+			throw new IllegalArgumentException("Invalid maximum frame length: " + maxFrameLength);
+		}
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	@Override
+	public ByteBuffer decode(ByteBuffer data) throws IOException {
+		if (data.remaining() < 4) {
+			return null;
+		}
+		int length = data.getInt(data.position());
+		if (length < 0 || length > maxFrameLength) {
+			throw new IOException("Invalid frame length: " + length);
+		}
+		if (data.remaining() < 4 + length) {
+			return null;
+		}
+		data.position(data.position() + 4);
+		ByteBuffer message = ByteBuffer.allocate(length);
+		int limit = data.limit();
+		data.limit(data.position() + length);
+		message.put(data).flip();
+		data.limit(limit);
+		return message;
+	}
+
+	@Override
+	public ByteBuffer[] encode(ByteBuffer message) {
+		ByteBuffer prefix = ByteBuffer.allocate(4);
+		prefix.putInt(0, message.remaining());
+		return new ByteBuffer[] { prefix, message };
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FrameCodec} for messages which are terminated by a new line. A
+ * carriage return before the new line is not part of the message.
+ */
+public class LineCodec implements FrameCodec {
+
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 8192;
+
+	private static final ByteBuffer NEW_LINE = ByteBuffer.wrap(new byte[] { '\n' }).asReadOnlyBuffer();
+
+	private final int maxFrameLength;
+
+	public LineCodec() {
+		this(DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * Creates a codec which rejects long lines
+	 *
+	 * @param maxFrameLength
+	 *            the maximum length of a line, excluding its terminator. A
+	 *            whole line must fit in a connection's read buffer, so it
+	 *            may be at most 2 bytes less than 16 MB.
+	 */
+	public LineCodec(int maxFrameLength) {
+		if (maxFrameLength <= 0 || maxFrameLength > Connection.MAX_READ_BUFFER - 2) {
+			throw new IllegalArgumentException("Invalid maximum frame length: " + maxFrameLength);
+		}
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	@Override
+	public ByteBuffer decode(ByteBuffer data) throws IOException {
+		int start = data.position();
+		int end = Math.min(data.limit(), start + maxFrameLength + 2);
+		for (int i = start; i < end; i++) {
+			if (data.get(i) == '\n') {
+				int length = i > start && data.get(i - 1) == '\r' ? i - 1 - start : i - start;
+				if (length > maxFrameLength) {
+					break;
+				}
+				ByteBuffer line = data.duplicate();
+				line.limit(start + length);
+				ByteBuffer message = ByteBuffer.allocate(length);
+				message.put(line).flip();
+				data.position(i + 1);
+				return message;
+			}
+		}
+		if (data.limit() - start > maxFrameLength + 1) {
+			throw new IOException("Line exceeds " + maxFrameLength + " bytes");
+		}
+		return null;
+	}
+
+	@Override
+	public ByteBuffer[] encode(ByteBuffer message) {
+		return new ByteBuffer[] { message, NEW_LINE.duplicate() };
+	}
+
+}
@@ -0,0 +1,186 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A {@link Handler} for request/response protocols which decodes requests
+ * with a {@link FrameCodec}, passes them to a {@link RequestHandler} and
+ * sends the responses in the order the requests were received.
+ *
+ * <br>
+ * <br>
+ *
+ * Clients may pipeline requests, sending more before the earlier ones have
+ * been answered. Requests are handled as soon as they are decoded, and may
+ * complete out of order, but a response is held back until every earlier
+ * response has been sent. The responses which become ready together are
+ * written with a single call, which the connection sends with one gathering
+ * write. Once the maximum number of requests are waiting for a response the
+ * connection stops reading until half of them have been answered.
+ *
+ * <br>
+ * <br>
+ *
+ * This handler keeps its per connection state in the
+ * {@link Connection#getAttachment() attachment} of the connection.
+ */
+public class PipelineHandler implements Handler {
+
+	public static final int DEFAULT_MAX_PIPELINED = 256;
+
+	private final FrameCodec codec;
+	private final RequestHandler handler;
+	private final int maxPipelined;
+
+	/**
+	 * Creates a handler which allows up to the
+	 * {@link #DEFAULT_MAX_PIPELINED default} number of pipelined requests
+	 *
+	 * @param codec
+	 *            the codec for requests and responses
+	 * @param handler
+	 *            the handler for requests
+	 */
+	public PipelineHandler(FrameCodec codec, RequestHandler handler) {
+		this(codec, handler, DEFAULT_MAX_PIPELINED);
+	}
+
+	/**
+	 * Creates a handler
+	 *
+	 * @param codec
+	 *            the codec for requests and responses
+	 * @param handler
+	 *            the handler for requests
+	 * @param maxPipelined
+	 *            the maximum number of requests of a connection which are
+	 *            waiting for a response
+	 */
+	public PipelineHandler(FrameCodec codec, RequestHandler handler, int maxPipelined) {
+		if (maxPipelined < 1) {
+			throw new IllegalArgumentException("The pipeline limit must be positive: " + maxPipelined);
+		}
+		this.codec = codec;
+		this.handler = handler;
+		this.maxPipelined = maxPipelined;
+	}
+
+	@Override
+	public void onConnect(Connection connection) {
+		connection.setAttachment(new Pipeline(connection));
+	}
+
+	@Override
+	public void onData(Connection connection, ByteBuffer data) throws IOException {
+		Pipeline pipeline = (Pipeline) connection.getAttachment();
+		while (true) {
+			if (pipeline.pauseIfFull()) {
+				return; //The rest of the data stays buffered until responses are sent
+			}
+
+			ByteBuffer request = codec.decode(data);
+			if (request == null) {
+				return;
+			}
+			CompletableFuture<ByteBuffer> response = handler.handle(connection, request);
+			if (response == null) {
+				throw new IOException("Request handler returned null");
+			}
+			synchronized (pipeline) {
+				pipeline.pending.add(response);
+			}
+			response.whenComplete((result, error) -> pipeline.send());
+		}
+	}
+
+	@Override
+	public void onClose(Connection connection) {
+		Pipeline pipeline = (Pipeline) connection.getAttachment();
+		if (pipeline != null) {
+			ArrayList<CompletableFuture<ByteBuffer>> pending;
+			synchronized (pipeline) {
+				pending = new ArrayList<>(pipeline.pending);
+				pipeline.pending.clear();
+			}
+			for (CompletableFuture<ByteBuffer> response : pending) {
+				response.cancel(false);
+			}
+		}
+	}
+
+	private final class Pipeline {
+
+		private final Connection connection;
+		private final ArrayDeque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+		private boolean paused;
+
+		private Pipeline(Connection connection) {
+			this.connection = connection;
+		}
+
+		/**
+		 * Pauses reading if the pipeline is full. The flag and the connection
+		 * are updated under the same lock as {@link #send()}, so a response
+		 * completing concurrently either sees neither or both and cannot
+		 * resume reading before it has been paused. The lock order is always
+		 * pipeline, then connection.
+		 *
+		 * @return true if reading was paused
+		 */
+		private synchronized boolean pauseIfFull() {
+			if (pending.size() < maxPipelined) {
+				return false;
+			}
+			paused = true;
+			connection.pauseReading();
+			return true;
+		}
+
+		/**
+		 * Sends the completed responses at the head of the pipeline
+		 */
+		private synchronized void send() {
+			ArrayList<ByteBuffer> buffers = new ArrayList<>();
+			boolean failed = false;
+			CompletableFuture<ByteBuffer> head;
+			while ((head = pending.peek()) != null && head.isDone()) {
+				pending.poll();
+				ByteBuffer response;
+				try {
+					response = head.join();
+				} catch (CancellationException e) {
+					failed = true; //Later responses cannot be sent in order without this one
+					break;
+				} catch (CompletionException e) {
+					if (!(e.getCause() instanceof IOException)) {
+						e.getCause().printStackTrace();
+					}
+					failed = true;
+					break;
+				}
+				if (response != null) {
+					Collections.addAll(buffers, codec.encode(response));
+				}
+			}
+
+			if (!buffers.isEmpty()) {
+				connection.write(buffers.toArray(new ByteBuffer[buffers.size()]));
+			}
+			if (failed) {
+				connection.close();
+			} else if (paused && pending.size() <= maxPipelined / 2) {
+				paused = false;
+				connection.resumeReading();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.kmecpp.jlib.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Answers the requests decoded by a {@link PipelineHandler}. Handlers are
+ * called on the event loop thread, so a request which needs to block must be
+ * handled on another thread, completing the returned future once the
+ * response is ready.
+ */
+@FunctionalInterface
+public interface RequestHandler {
+
+	/**
+	 * Handles a request
+	 *
+	 * @param connection
+	 *            the connection the request was received on
+	 * @param request
+	 *            the decoded request
+	 * @return a future completed with the response, or with null if the
+	 *         request has no response
+	 * @throws IOException
+	 *             to close the connection
+	 */
+	CompletableFuture<ByteBuffer> handle(Connection connection, ByteBuffer request) throws IOException;
+
+}
@@ -1,37 +1,174 @@
 package com.kmecpp.jlib.server;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class Server {
-
-	// private final int port;
-	//
-	// private Server(int port) {
-	// this.port = port;
-	// }
-
-	public static void create(final int port, final int maxClient) throws IOException {
-		new Thread(new Runnable() {
-
-			@Override
-			public void run() {
-				//				try {
-				//					ServerSocket server = new ServerSocket(port);
-				//				} catch (IOException e) {
-				//
-				//				}
-				while (true) {
-					break;
-					//					Socket client = server.accept();
-				}
+/**
+ * A TCP server which accepts at most a fixed number of simultaneous clients.
+ * Clients which connect while the server is full are disconnected
+ * immediately. Clients are served either by a few event loop threads, see
+ * {@link EventLoopServer}, or by a thread per connection, see
+ * {@link BlockingServer}.
+ */
+public abstract class Server implements Closeable {
 
+	/**
+	 * How long the acceptor waits after accepting a client failed, in
+	 * milliseconds
+	 */
+	static final long ACCEPT_BACKOFF = 100;
+
+	private final int maxClient;
+	private final AtomicInteger clients = new AtomicInteger();
+	private final AtomicLong accepted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	protected Server(int maxClient) {
+		if (maxClient < 1) {
+			throw new IllegalArgumentException("The maximum number of clients must be positive: " + maxClient);
+		}
+		this.maxClient = maxClient;
+	}
+
+	/**
+	 * Starts an {@link EventLoopServer} which echoes everything its clients
+	 * send
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for an ephemeral port
+	 * @param maxClient
+	 *            the maximum number of simultaneous clients
+	 * @return the server
+	 * @throws IOException
+	 *             if the server cannot be bound to the port
+	 */
+	public static Server create(int port, int maxClient) throws IOException {
+		return create(port, maxClient, (connection, data) -> {
+			ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+			copy.put(data).flip();
+			connection.write(copy);
+		});
+	}
+
+	/**
+	 * Starts an {@link EventLoopServer} with one event loop per available
+	 * processor
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for an ephemeral port
+	 * @param maxClient
+	 *            the maximum number of simultaneous clients
+	 * @param handler
+	 *            the handler for the events of every connection
+	 * @return the server
+	 * @throws IOException
+	 *             if the server cannot be bound to the port
+	 */
+	public static EventLoopServer create(int port, int maxClient, Handler handler) throws IOException {
+		return new EventLoopServer(port, maxClient, Runtime.getRuntime().availableProcessors(), handler);
+	}
+
+	/**
+	 * Starts a {@link BlockingServer} which serves each client on its own
+	 * virtual thread, or on a bounded pool of platform threads if the JVM
+	 * does not support virtual threads
+	 *
+	 * @param port
+	 *            the port to listen on, or 0 for an ephemeral port
+	 * @param maxClient
+	 *            the maximum number of simultaneous clients
+	 * @param handler
+	 *            the handler which serves each client
+	 * @return the server
+	 * @throws IOException
+	 *             if the server cannot be bound to the port
+	 */
+	public static BlockingServer createBlocking(int port, int maxClient, ConnectionHandler handler) throws IOException {
+		return new BlockingServer(port, maxClient, handler);
+	}
+
+	/**
+	 * Gets the port this server is listening on
+	 *
+	 * @return the local port
+	 */
+	public abstract int getPort();
+
+	public int getMaxClient() {
+		return maxClient;
+	}
+
+	/**
+	 * Gets the number of clients which are currently connected
+	 *
+	 * @return the number of clients
+	 */
+	public int getClientCount() {
+		return clients.get();
+	}
+
+	/**
+	 * Gets the number of clients which were accepted since the server started
+	 *
+	 * @return the number of accepted clients
+	 */
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * Gets the number of clients which were disconnected because the server
+	 * was full
+	 *
+	 * @return the number of rejected clients
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Reserves a slot for a new client
+	 *
+	 * @return true if the client may be served, false if the server is full
+	 */
+	protected boolean admit() {
+		while (true) {
+			int current = clients.get();
+			if (current >= maxClient) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			if (clients.compareAndSet(current, current + 1)) {
+				accepted.incrementAndGet();
+				return true;
 			}
+		}
+	}
 
-		}).start();
+	/**
+	 * Frees the slot of a client which has disconnected
+	 */
+	protected void release() {
+		clients.decrementAndGet();
 	}
 
-	// public int getPort() {
-	// return port;
-	// }
+	/**
+	 * Waits before accepting again after accepting a client failed, so a
+	 * persistent error such as running out of file descriptors does not make
+	 * the acceptor spin
+	 *
+	 * @return false if the acceptor was interrupted
+	 */
+	protected static boolean backoff() {
+		try {
+			Thread.sleep(ACCEPT_BACKOFF);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
 
 }
@@ -3,7 +3,26 @@ package com.kmecpp.jlib.utils;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import com.kmecpp.jlib.http.BatchingClient;
+import com.kmecpp.jlib.http.CircuitOpenException;
+import com.kmecpp.jlib.http.HttpClient;
+import com.kmecpp.jlib.http.HttpRequest;
+import com.kmecpp.jlib.http.HttpResponse;
+import com.kmecpp.jlib.http.RequestPolicy;
+import com.kmecpp.jlib.http.StreamingResponse;
+
+/**
+ * Utilities for HTTP requests, sent with the {@link HttpClient#getDefault()
+ * default} {@link HttpClient}. Its default {@link RequestPolicy} retries
+ * idempotent requests which fail with an I/O error or a 429, 502, 503 or 504
+ * response. After 5 consecutive I/O errors or 502, 503 or 504 responses from a
+ * host, requests to that host fail with a {@link CircuitOpenException} for 10
+ * seconds. Use {@link NetworkUtil#setPolicy(RequestPolicy)} to change this, or
+ * pass null to send every request once.
+ */
 public class HTTP {
 
 	/**
@@ -32,14 +51,23 @@ public class HTTP {
 		}
 	}
 
+	/**
+	 * Posts the data to the given URL over a pooled keep-alive connection of
+	 * the {@link HttpClient#getDefault() default} {@link HttpClient}
+	 * 
+	 * @param url
+	 *            the URL to post to
+	 * @param data
+	 *            the data to post
+	 */
 	public static void post(URL url, String data) {
-		post(getConnection(url), data);
-
+		postAndRead(url, data);
 	}
 
 	/**
 	 * Attempts to read data into a String from the given URL and returns that
-	 * String
+	 * String. The request is sent over a pooled keep-alive connection of the
+	 * {@link HttpClient#getDefault() default} {@link HttpClient}.
 	 * 
 	 * @param url
 	 *            the url to read from
@@ -48,28 +76,115 @@ public class HTTP {
 	 *             if an error occurs while reading from the URL
 	 */
 	public static String read(URL url) {
-		return read(getConnection(url));
+		return send(HttpRequest.get(url));
+	}
+
+	/**
+	 * Opens a GET request to the given URL whose body is streamed from the
+	 * connection instead of being read into memory. Compressed bodies are
+	 * decoded transparently and the charset is taken from the Content-Type.
+	 * 
+	 * @param url
+	 *            the url to read from
+	 * @return the response, which must be closed
+	 */
+	public static StreamingResponse stream(URL url) {
+		try {
+			return HttpClient.getDefault().stream(HttpRequest.get(url)).checkStatus();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	public static String postAndRead(URL url, String data) {
-		HttpURLConnection connection = getConnection(url);
-		post(connection, data);
-		return read(connection);
+		return send(HttpRequest.post(url, data.getBytes(), "application/x-www-form-urlencoded"));
+	}
+
+	/**
+	 * Asynchronously reads the content of the given URL on the executor of
+	 * the {@link HttpClient#getDefault() default} {@link HttpClient}
+	 * 
+	 * @param url
+	 *            the url to read from
+	 * @return a future completed with the data read from the URL, which can
+	 *         be cancelled to abort the request
+	 */
+	public static CompletableFuture<String> readAsync(URL url) {
+		return sendAsync(HttpRequest.get(url));
+	}
+
+	/**
+	 * Asynchronously posts the data to the given URL and reads the response
+	 * 
+	 * @param url
+	 *            the URL to post to
+	 * @param data
+	 *            the data to post
+	 * @return a future completed with the response
+	 */
+	public static CompletableFuture<String> postAndReadAsync(URL url, String data) {
+		return sendAsync(HttpRequest.post(url, data.getBytes(), "application/x-www-form-urlencoded"));
 	}
 
-	private static String read(HttpURLConnection connection) {
+	/**
+	 * Asynchronously reads the content of the given URL, sharing the response
+	 * of an identical request which is already in flight instead of sending
+	 * another one
+	 * 
+	 * @param url
+	 *            the url to read from
+	 * @return a future completed with the data read from the URL
+	 * @see BatchingClient#get(URL)
+	 */
+	public static CompletableFuture<String> readCoalesced(URL url) {
+		return getBody(BatchingClient.getDefault().get(url));
+	}
+
+	/**
+	 * Adds the data to a batch of posts to the given URL which is sent as a
+	 * single request once it is large enough or old enough, blocking while
+	 * too many posts are pending. The receiving endpoint must accept new line
+	 * separated payloads.
+	 * 
+	 * @param url
+	 *            the URL to post to
+	 * @param data
+	 *            the data to post
+	 * @return a future completed with the response to the batch
+	 * @see BatchingClient#post(URL, String)
+	 */
+	public static CompletableFuture<String> postBatched(URL url, String data) {
 		try {
-			return IOUtil.readString(connection.getInputStream());
-		} catch (IOException e) {
+			return getBody(BatchingClient.getDefault().post(url, data));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
 		}
 	}
 
-	private static void post(HttpURLConnection connection, String data) {
+	static CompletableFuture<String> sendAsync(HttpRequest request) {
+		return getBody(HttpClient.getDefault().sendAsync(request));
+	}
+
+	private static CompletableFuture<String> getBody(CompletableFuture<HttpResponse> future) {
+		CompletableFuture<String> result = future.thenApply(response -> {
+			try {
+				return response.checkStatus().getBodyAsString();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		});
+		result.whenComplete((value, error) -> {
+			if (result.isCancelled()) {
+				future.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	private static String send(HttpRequest request) {
 		try {
-			connection.setDoOutput(true);
-			connection.setRequestMethod("POST");
-			connection.getOutputStream().write(data.getBytes());
+			return HttpClient.getDefault().send(request).checkStatus().getBodyAsString();
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -1,23 +1,50 @@
 package com.kmecpp.jlib.utils;
 
-import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.kmecpp.jlib.io.BufferPool;
+import com.kmecpp.jlib.io.ChannelWriter;
+import com.kmecpp.jlib.io.FileTreeWorker;
+import com.kmecpp.jlib.io.FileWatcher;
+import com.kmecpp.jlib.io.LineIterator;
+import com.kmecpp.jlib.io.LineSpliterator;
 
 public class IOUtil {
 
 	public static final short DEFAULT_BUFFER_SIZE = 4096;
 
+	/**
+	 * The largest array which the JVM can reliably allocate
+	 */
+	public static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The largest array allocated up front for a stream of an expected
+	 * length, so a wrong length cannot force a huge allocation
+	 */
+	private static final int MAX_PREALLOCATION = 8 << 20;
+
 	protected IOUtil() {
 	}
 
@@ -50,7 +77,8 @@ public class IOUtil {
 	}
 
 	/**
-	 * Copies the specified file or folder to the new directory
+	 * Copies the specified file or folder to the new directory. Directory
+	 * trees are copied in parallel by a {@link FileTreeWorker}.
 	 * 
 	 * @param source
 	 *            the source file to copy
@@ -60,17 +88,7 @@ public class IOUtil {
 	 */
 	public static void copyFile(File source, File destination) throws IOException {
 		if (source.isDirectory()) {
-			if (!destination.exists()) {
-				destination.mkdirs();
-			}
-			String files[] = source.list();
-			if (files != null) {
-				for (String file : files) {
-					File srcFile = new File(source, file);
-					File destFile = new File(destination, file);
-					copyFile(srcFile, destFile);
-				}
-			}
+			new FileTreeWorker().copy(source.toPath(), destination.toPath());
 		} else {
 			try (FileChannel in = new FileInputStream(source).getChannel(); FileChannel out = new FileOutputStream(destination).getChannel()) {
 				out.transferFrom(in, 0, in.size());
@@ -79,29 +97,30 @@ public class IOUtil {
 	}
 
 	/**
-	 * Deletes a file or folder if it exists, regardless of its contents
+	 * Deletes a file or folder if it exists, regardless of its contents.
+	 * Directory trees are deleted by a {@link FileTreeWorker}. This is a best
+	 * effort and failures are ignored, use {@link FileTreeWorker#delete(java.nio.file.Path)}
+	 * to find out whether the tree was deleted.
 	 * 
 	 * @param file
 	 *            the file or directory to delete
 	 */
 	public static void deleteFile(File file) {
-		if (file.exists() && file.isDirectory()) {
-			File[] files = file.listFiles();
-			if (files != null) {
-				for (File f : files) {
-					if (f.isFile()) {
-						f.delete();
-					} else {
-						deleteFile(f);
-					}
-				}
+		try {
+			if (file.isDirectory()) {
+				new FileTreeWorker().delete(file.toPath());
+			} else {
+				Files.deleteIfExists(file.toPath());
 			}
-			file.delete();
+		} catch (IOException e) {
+			//Ignore
 		}
 	}
 
 	/**
-	 * Reads the given URL into a byte array
+	 * Reads the given URL into a byte array. File URLs are read directly with
+	 * {@link #readBytes(File)}, and when the connection reports the length of
+	 * an unencoded body the data is read straight into an exactly sized array.
 	 * 
 	 * @param url
 	 *            the url to read
@@ -110,18 +129,191 @@ public class IOUtil {
 	 *             if an IO exception occurs
 	 */
 	public static byte[] readBytes(URL url) throws IOException {
-		InputStream inputStream = url.openStream();
-		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		File file = toFile(url);
+		if (file != null) {
+			return readBytes(file);
+		}
+
+		URLConnection connection = url.openConnection();
+		try (InputStream inputStream = connection.getInputStream()) {
+			long length = connection.getContentLengthLong();
+			if (length >= 0 && length <= MAX_ARRAY_SIZE && connection.getContentEncoding() == null) {
+				return readBytes(inputStream, (int) length);
+			}
+			return readBytes(inputStream);
+		}
+	}
+
+	/**
+	 * Reads the given URL into a read only {@link ByteBuffer}. File URLs are
+	 * memory mapped with {@link #map(File)} rather than copied onto the heap,
+	 * while other URLs are read with {@link #readBytes(URL)} and wrapped
+	 * without copying.
+	 * 
+	 * @param url
+	 *            the url to read
+	 * @return a read only buffer over the contents of the URL
+	 * @throws IOException
+	 *             if an IO exception occurs
+	 */
+	public static ByteBuffer readBuffer(URL url) throws IOException {
+		File file = toFile(url);
+		if (file != null) {
+			return map(file);
+		}
+		return ByteBuffer.wrap(readBytes(url)).asReadOnlyBuffer();
+	}
 
-		byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+	/**
+	 * Reads the given {@link InputStream} into an array of the expected
+	 * length. If the stream turns out to be shorter the array is truncated,
+	 * and if it is longer the remaining data is appended. At most 8 MB are
+	 * allocated before any data arrives, and the array grows from there as
+	 * the data is read.
+	 * 
+	 * @param inputStream
+	 *            the input stream from which to read
+	 * @param length
+	 *            the expected number of bytes
+	 * @return the bytes read from the stream
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static byte[] readBytes(InputStream inputStream, int length) throws IOException {
+		byte[] data = new byte[Math.min(length, MAX_PREALLOCATION)];
 		int pos = 0;
-		while ((pos = inputStream.read(buffer, 0, buffer.length)) != -1) {
-			data.write(buffer, 0, pos);
+		int read;
+		while (pos < length) {
+			if (pos == data.length) {
+				data = Arrays.copyOf(data, Math.min(length, grow(data.length)));
+			}
+			if ((read = inputStream.read(data, pos, data.length - pos)) == -1) {
+				break;
+			}
+			pos += read;
+		}
+		if (pos < length) {
+			return Arrays.copyOf(data, pos);
+		}
+
+		int next = inputStream.read();
+		if (next == -1) {
+			return data;
+		}
+		byte[] rest = readBytes(inputStream);
+		byte[] result = Arrays.copyOf(data, length + 1 + rest.length);
+		result[length] = (byte) next;
+		System.arraycopy(rest, 0, result, length + 1, rest.length);
+		return result;
+	}
+
+	private static File toFile(URL url) {
+		if (!"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			File file = new File(url.toURI());
+			return file.isFile() ? file : null;
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the remaining contents of the given {@link InputStream} into an
+	 * exactly sized byte array. The data is accumulated in buffers borrowed
+	 * from the {@link BufferPool}, so the only allocation is the result
+	 * itself. The stream is not closed.
+	 * 
+	 * @param inputStream
+	 *            the input stream from which to read
+	 * @return the bytes read from the stream
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static byte[] readBytes(InputStream inputStream) throws IOException {
+		byte[] buffer = BufferPool.acquireBytes(DEFAULT_BUFFER_SIZE);
+		try {
+			int length = 0;
+			int read;
+			while ((read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				if (length == buffer.length) {
+					byte[] larger = BufferPool.acquireBytes(grow(buffer.length));
+					System.arraycopy(buffer, 0, larger, 0, length);
+					BufferPool.release(buffer);
+					buffer = larger;
+				}
+			}
+			return Arrays.copyOf(buffer, length);
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * Reads the given file into an exactly sized byte array with positional
+	 * reads straight into the array. If the file shrinks while it is being
+	 * read, the array is truncated to the data which was read.
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @return the contents of the file
+	 * @throws IOException
+	 *             if an I/O error occurs or the file is larger than 2 GB
+	 */
+	public static byte[] readBytes(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			byte[] data = new byte[checkSize(file, channel.size())];
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, buffer.position()) == -1) {
+					return Arrays.copyOf(data, buffer.position());
+				}
+			}
+			return data;
 		}
+	}
 
-		data.flush();
+	/**
+	 * Memory maps the given file as a read only buffer. The mapping remains
+	 * valid until the buffer is garbage collected, even after the file is
+	 * closed.
+	 * 
+	 * @param file
+	 *            the file to map
+	 * @return a read only buffer over the contents of the file
+	 * @throws IOException
+	 *             if an I/O error occurs or the file is larger than 2 GB
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(MapMode.READ_ONLY, 0, checkSize(file, channel.size()));
+		}
+	}
 
-		return data.toByteArray();
+	private static int checkSize(File file, long size) throws IOException {
+		if (size > MAX_ARRAY_SIZE) {
+			throw new IOException("File is too large to be read into memory: " + file);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Gets the capacity a full buffer should grow to. The capacity doubles
+	 * until it reaches {@link #MAX_ARRAY_SIZE}.
+	 * 
+	 * @param capacity
+	 *            the current capacity
+	 * @return the new capacity
+	 * @throws OutOfMemoryError
+	 *             if the buffer already has the maximum capacity
+	 */
+	static int grow(int capacity) {
+		if (capacity >= MAX_ARRAY_SIZE) {
+			throw new OutOfMemoryError("Required array size too large");
+		}
+		return capacity > MAX_ARRAY_SIZE >> 1 ? MAX_ARRAY_SIZE : capacity << 1;
 	}
 
 	/**
@@ -152,6 +344,98 @@ public class IOUtil {
 		return StringUtil.getLines(readString(file));
 	}
 
+	/**
+	 * Lazily streams the lines of the given file using the platform charset
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @return a stream of the file's lines, which must be closed
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 * @see #lines(File, Charset)
+	 */
+	public static Stream<String> lines(File file) throws IOException {
+		return lines(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * Watches the given file, or the direct children of the given directory,
+	 * using the {@link FileWatcher#getShared() shared} {@link FileWatcher}.
+	 * Bursts of changes are debounced and delivered as a single batch, so
+	 * callers can reload only what changed instead of polling.
+	 * 
+	 * @param file
+	 *            the file or directory to watch
+	 * @param listener
+	 *            the listener to notify of changes
+	 * @return a handle which stops watching when closed
+	 * @throws IOException
+	 *             if the file cannot be watched
+	 */
+	public static Closeable watch(File file, FileWatcher.Listener listener) throws IOException {
+		return FileWatcher.getShared().watch(file.toPath(), listener);
+	}
+
+	/**
+	 * Lazily streams the lines of the given file in constant memory. Lines
+	 * may be terminated by "\n" or "\r\n". For ASCII compatible charsets the
+	 * returned stream can be made parallel, in which case the file is split
+	 * into line aligned byte ranges which are read concurrently. The stream
+	 * must be closed to release the file.
+	 * 
+	 * @param file
+	 *            the file to read
+	 * @param charset
+	 *            the charset of the file
+	 * @return a stream of the file's lines
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public static Stream<String> lines(File file, Charset charset) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (!LineSpliterator.isSupported(charset)) {
+				return new LineIterator(Channels.newInputStream(channel), charset).stream();
+			}
+			return StreamSupport.stream(new LineSpliterator(channel, charset), false).onClose(() -> close(channel));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Lazily streams the lines of the data at the given URL in constant
+	 * memory. The stream must be closed to release the connection.
+	 * 
+	 * @param url
+	 *            the URL to read
+	 * @param charset
+	 *            the charset of the data
+	 * @return a sequential stream of the lines
+	 * @throws IOException
+	 *             if the URL cannot be opened
+	 */
+	public static Stream<String> lines(URL url, Charset charset) throws IOException {
+		return lineIterator(url, charset).stream();
+	}
+
+	/**
+	 * Gets an iterator which lazily reads the lines of the data at the given
+	 * URL. The connection is closed once the iterator is exhausted or closed.
+	 * 
+	 * @param url
+	 *            the URL to read
+	 * @param charset
+	 *            the charset of the data
+	 * @return an iterator over the lines
+	 * @throws IOException
+	 *             if the URL cannot be opened
+	 */
+	public static LineIterator lineIterator(URL url, Charset charset) throws IOException {
+		return new LineIterator(url.openStream(), charset);
+	}
+
 	/**
 	 * Attempts to read data into a String from the given path and returns that
 	 * String
@@ -177,7 +461,24 @@ public class IOUtil {
 	 *             if an error occurs while reading
 	 */
 	public static String readString(File file) throws IOException {
-		return readString(file.toURI().toURL());
+		return readString(file, Charset.defaultCharset());
+	}
+
+	/**
+	 * Reads the given file into a String using the given charset. The file is
+	 * read into an exactly sized array with {@link #readBytes(File)} and
+	 * decoded in a single pass.
+	 * 
+	 * @param file
+	 *            the file to read from
+	 * @param charset
+	 *            the charset of the file
+	 * @return the data contained in the file
+	 * @throws IOException
+	 *             if an error occurs while reading
+	 */
+	public static String readString(File file, Charset charset) throws IOException {
+		return new String(readBytes(file), charset);
 	}
 
 	/**
@@ -204,14 +505,7 @@ public class IOUtil {
 	 *             if an IOException occurs
 	 */
 	public static String readString(InputStream inputStream) throws IOException {
-		InputStreamReader reader = new InputStreamReader(inputStream);
-		StringWriter sw = new StringWriter();
-		char[] buffer = new char[4096];
-		int pos = 0;
-		while ((pos = reader.read(buffer)) != -1) {
-			sw.write(buffer, 0, pos);
-		}
-		return sw.toString();
+		return StringUtil.read(new InputStreamReader(inputStream));
 	}
 
 	/**
@@ -272,9 +566,43 @@ public class IOUtil {
 	 *             if an error occurs
 	 */
 	public static void write(File file, String text) throws IOException {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), DEFAULT_BUFFER_SIZE)) {
-			writer.write(text);
-		}
+		write(file, text, Charset.defaultCharset());
+	}
+
+	/**
+	 * Writes the given text to the file, encoding it directly into a reusable
+	 * direct buffer rather than through a {@link java.io.Writer}
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * @param text
+	 *            the text to write
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static void write(File file, CharSequence text, Charset charset) throws IOException {
+		ChannelWriter.write(file.toPath(), text, charset);
+	}
+
+	/**
+	 * Atomically replaces the contents of the file with the given text. The
+	 * text is written to a temporary file which is forced to disk and renamed
+	 * over the original, so the file is never observed partially written,
+	 * even after a crash.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * @param text
+	 *            the text to write
+	 * @param charset
+	 *            the charset to encode the text with
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static void writeAtomic(File file, CharSequence text, Charset charset) throws IOException {
+		ChannelWriter.writeAtomic(file.toPath(), text, charset);
 	}
 
 }
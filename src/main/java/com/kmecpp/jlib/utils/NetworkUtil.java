@@ -1,12 +1,27 @@
 package com.kmecpp.jlib.utils;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
+import com.kmecpp.jlib.http.CircuitOpenException;
+import com.kmecpp.jlib.http.HttpClient;
+import com.kmecpp.jlib.http.HttpRequest;
+import com.kmecpp.jlib.http.RequestPolicy;
+import com.kmecpp.jlib.http.ResponseCache;
+import com.kmecpp.jlib.http.StreamingResponse;
+
+/**
+ * Utilities for HTTP requests, sent with the {@link HttpClient#getDefault()
+ * default} {@link HttpClient}. Its default {@link RequestPolicy} retries
+ * idempotent requests which fail with an I/O error or a 429, 502, 503 or 504
+ * response. After 5 consecutive I/O errors or 502, 503 or 504 responses from a
+ * host, requests to that host fail with a {@link CircuitOpenException} for 10
+ * seconds. Use {@link #setPolicy(RequestPolicy)} to change this, or
+ * pass null to send every request once.
+ */
 public class NetworkUtil {
 
 	protected NetworkUtil() {
@@ -51,7 +66,36 @@ public class NetworkUtil {
 	}
 
 	/**
-	 * Method for reading the content of an HTTP URL
+	 * Caches the responses to GET requests made through this class, and every
+	 * other request sent with the {@link HttpClient#getDefault() default}
+	 * {@link HttpClient}, in the given cache
+	 * 
+	 * @param cache
+	 *            the cache, or null to disable caching
+	 */
+	public static void setCache(ResponseCache cache) {
+		HttpClient.getDefault().setCache(cache);
+	}
+
+	/**
+	 * Sets the retry, hedging and circuit breaking policy of the requests
+	 * made through this class and the {@link HttpClient#getDefault() default}
+	 * {@link HttpClient}, instead of retrying failed requests by hand. The
+	 * default client starts with a {@link RequestPolicy} with the default
+	 * settings.
+	 * 
+	 * @param policy
+	 *            the policy, or null to send every request once
+	 */
+	public static void setPolicy(RequestPolicy policy) {
+		HttpClient.getDefault().setPolicy(policy);
+	}
+
+	/**
+	 * Method for reading the content of an HTTP URL. The request is sent over
+	 * a pooled keep-alive connection of the {@link HttpClient#getDefault()
+	 * default} {@link HttpClient}, and is served from its cache if one has
+	 * been set with {@link #setCache(ResponseCache)}.
 	 * 
 	 * @param url
 	 *            the URL to read from
@@ -60,12 +104,33 @@ public class NetworkUtil {
 	 *             if a problem occurred when reading the data
 	 */
 	public static String get(URL url) throws IOException {
-		HttpURLConnection connection = getConnection(url);
-		connection.setRequestProperty("User-Agent", "Mozilla/5.0");
-		connection.addRequestProperty("Content-Type", "application/json");
-		connection.addRequestProperty("Accept", "application/json");
+		return HttpClient.getDefault().send(getRequest(url)).checkStatus().getBodyAsString();
+	}
+
+	/**
+	 * Opens a GET request to the given URL whose body is streamed from the
+	 * connection instead of being read into memory
+	 * 
+	 * @param url
+	 *            the URL to read from
+	 * @return the response, which must be closed
+	 * @throws IOException
+	 *             if the request fails or the server returns an error
+	 */
+	public static StreamingResponse stream(URL url) throws IOException {
+		return HttpClient.getDefault().stream(getRequest(url)).checkStatus();
+	}
 
-		return StringUtil.read(new InputStreamReader(connection.getInputStream()));
+	/**
+	 * Asynchronously reads the content of an HTTP URL
+	 * 
+	 * @param url
+	 *            the URL to read from
+	 * @return a future completed with the data fetched from the URL, which can
+	 *         be cancelled to abort the request
+	 */
+	public static CompletableFuture<String> getAsync(URL url) {
+		return HTTP.sendAsync(getRequest(url));
 	}
 
 	/**
@@ -80,24 +145,31 @@ public class NetworkUtil {
 	 *             if an I/O error occurs
 	 */
 	public static String post(URL url, String data) throws IOException {
-		HttpURLConnection connection = getConnection(url);
-		connection.setRequestMethod("POST");
-		connection.setRequestProperty("User-Agent", "Mozilla/5.0");
-		connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-		connection.setRequestProperty("Content-Length", "" + Integer.toString(data.getBytes().length));
-
-		connection.setUseCaches(false);
-		connection.setDoInput(true);
-		connection.setDoOutput(true);
-
-		//Send Post
-		DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-		wr.writeBytes(data);
-		wr.flush();
-		wr.close();
-
-		//Get Response
-		return StringUtil.read(new InputStreamReader(connection.getInputStream()));
+		return HttpClient.getDefault().send(postRequest(url, data)).checkStatus().getBodyAsString();
+	}
+
+	/**
+	 * Asynchronously sends an HTTP POST request to the specified URL
+	 * 
+	 * @param url
+	 *            the URL to post the data to
+	 * @param data
+	 *            the data to post
+	 * @return a future completed with the webpage, after the data has been
+	 *         posted
+	 */
+	public static CompletableFuture<String> postAsync(URL url, String data) {
+		return HTTP.sendAsync(postRequest(url, data));
+	}
+
+	private static HttpRequest getRequest(URL url) {
+		return HttpRequest.get(url)
+				.header("Content-Type", "application/json")
+				.header("Accept", "application/json");
+	}
+
+	private static HttpRequest postRequest(URL url, String data) {
+		return HttpRequest.post(url, data.getBytes(), "application/x-www-form-urlencoded");
 	}
 
 }
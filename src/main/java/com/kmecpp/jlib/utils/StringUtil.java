@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.UUID;
 
+import com.kmecpp.jlib.io.BufferPool;
 import com.kmecpp.jlib.reflection.Reflection;
 
 /**
@@ -898,13 +899,23 @@ public class StringUtil {
 	 *             if an I/O occurs while reading from the reader
 	 */
 	public static String read(Reader reader) throws IOException {
-		StringWriter sw = new StringWriter();
-		char[] buffer = new char[4096];
-		int pos = 0;
-		while ((pos = reader.read(buffer)) != -1) {
-			sw.write(buffer, 0, pos);
+		char[] buffer = BufferPool.acquireChars(4096);
+		try {
+			int length = 0;
+			int read;
+			while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				if (length == buffer.length) {
+					char[] larger = BufferPool.acquireChars(IOUtil.grow(buffer.length));
+					System.arraycopy(buffer, 0, larger, 0, length);
+					BufferPool.release(buffer);
+					buffer = larger;
+				}
+			}
+			return new String(buffer, 0, length);
+		} finally {
+			BufferPool.release(buffer);
 		}
-		return sw.toString();
 	}
 
 }
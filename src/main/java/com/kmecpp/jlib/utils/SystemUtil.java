@@ -1,14 +1,27 @@
 package com.kmecpp.jlib.utils;
 
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 import java.util.Calendar;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SystemUtil {
 
 	public static final long MEGABYTE = 1048576L;
 	public static final long GIGABYTE = 1073741824L;
 
+	private static final Method VIRTUAL_THREAD_EXECUTOR = getVirtualThreadExecutor();
+	private static final MethodHandle IS_VIRTUAL = getIsVirtual();
+
 	private static TimeZone timeZone = TimeZone.getDefault();
 
 	protected SystemUtil() {
@@ -163,4 +176,78 @@ public class SystemUtil {
 		return getDiskRoot().getTotalSpace() / GIGABYTE;
 	}
 
+	/**
+	 * Checks whether the running JVM supports virtual threads
+	 *
+	 * @return true if virtual threads are available
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * Checks whether the given thread is a virtual thread. Always false on
+	 * JVMs without virtual threads.
+	 *
+	 * @param thread
+	 *            the thread to check
+	 * @return true if the thread is virtual
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (boolean) IS_VIRTUAL.invokeExact(thread);
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates an executor which runs each task on its own virtual thread when
+	 * the JVM supports them. On older JVMs the tasks run on a pool of at most
+	 * the given number of daemon platform threads, which time out when idle.
+	 *
+	 * @param name
+	 *            the name of the fallback threads
+	 * @param fallbackThreads
+	 *            the size of the fallback pool
+	 * @return the executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor(String name, int fallbackThreads) {
+		if (VIRTUAL_THREAD_EXECUTOR != null) {
+			try {
+				return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				//Fall back to platform threads
+			}
+		}
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(fallbackThreads, fallbackThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), runnable -> {
+					Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static Method getVirtualThreadExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static MethodHandle getIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,269 @@
+package com.kmecpp.jlib.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kmecpp.jlib.utils.IOUtil;
+import com.kmecpp.jlib.utils.StringUtil;
+
+public class HttpClientTest {
+
+	private static final String TEXT = StringUtil.repeat("caf\u00e9 line\n", 5000);
+	private static final byte[] GZIPPED = gzip(TEXT.getBytes(StandardCharsets.ISO_8859_1));
+	private static final byte[] EMPTY = new byte[0];
+
+	private StubServer server;
+
+	@Before
+	public void start() throws IOException {
+		server = new StubServer();
+		server.handle("/echo", request -> {
+			String query = request.getQuery();
+			return new StubServer.Response(200, (request.getMethod() + ":" + request.getBodyAsString() + (query == null ? "" : query)).getBytes(StandardCharsets.UTF_8));
+		});
+		server.handle("/chunked", request -> StubServer.Response.chunked(200, "hello", " world").chunkExtension("ext=1"));
+		server.handle("/redirect", request -> new StubServer.Response(302, EMPTY).header("Location", "/echo"));
+		server.handle("/slow", request -> {
+			Thread.sleep(10000);
+			return new StubServer.Response(200, EMPTY);
+		});
+		server.handle("/delay", request -> {
+			Thread.sleep(300);
+			return new StubServer.Response(200, "delayed".getBytes(StandardCharsets.UTF_8));
+		});
+		server.handle("/cached", request -> new StubServer.Response(200, "cached".getBytes(StandardCharsets.UTF_8)).header("Cache-Control", "max-age=60"));
+		server.handle("/etag", request -> "\"v1\"".equals(request.getHeaders().get("If-None-Match"))
+				? new StubServer.Response(304, EMPTY).header("ETag", "\"v1\"")
+				: new StubServer.Response(200, "version".getBytes(StandardCharsets.UTF_8)).header("ETag", "\"v1\"").header("Cache-Control", "no-cache"));
+		server.handle("/gzip", request -> new StubServer.Response(200, GZIPPED)
+				.header("Content-Type", "text/plain; charset=ISO-8859-1")
+				.header("Content-Encoding", "gzip"));
+		server.handle("/cached-gzip", request -> new StubServer.Response(200, GZIPPED)
+				.header("Content-Type", "text/plain; charset=ISO-8859-1")
+				.header("Content-Encoding", "gzip")
+				.header("Cache-Control", "max-age=60")
+				.header("Vary", "Accept-Encoding"));
+		server.handle("/missing", request -> new StubServer.Response(404, EMPTY));
+	}
+
+	@After
+	public void stop() throws IOException {
+		server.close();
+	}
+
+	private URL url(String path) {
+		return server.getUrl(path);
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		try (HttpClient client = new HttpClient()) {
+			for (int i = 0; i < 10; i++) {
+				assertEquals("GET:", client.get(url("/echo")).getBodyAsString());
+			}
+			assertEquals("POST:data", client.send(HttpRequest.post(url("/echo"), "data", "text/plain")).getBodyAsString());
+			assertEquals("hello world", client.get(url("/chunked")).getBodyAsString());
+			assertEquals("GET:", client.get(url("/redirect")).getBodyAsString());
+			assertEquals(404, client.get(url("/missing")).getStatus());
+
+			assertEquals(1, server.getConnections());
+			assertEquals(1, client.getPool().getCreated());
+			assertEquals(1, client.getPool().getIdleCount());
+		}
+	}
+
+	@Test
+	public void testEvictIdle() throws Exception {
+		try (HttpClient client = new HttpClient(new ConnectionPool(2, 1, TimeUnit.MILLISECONDS))) {
+			client.get(url("/echo"));
+			Thread.sleep(20);
+			client.getPool().evictIdle();
+			assertEquals(0, client.getPool().getConnectionCount());
+			client.get(url("/echo"));
+			assertEquals(2, server.getConnections());
+			client.getPool().close();
+		}
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(client.sendAsync(HttpRequest.get(url("/echo?" + i))));
+			}
+			for (int i = 0; i < 20; i++) {
+				assertEquals("GET:" + i, futures.get(i).get(10, TimeUnit.SECONDS).getBodyAsString());
+			}
+
+			CompletableFuture<HttpResponse> slow = client.sendAsync(HttpRequest.get(url("/slow")));
+			Thread.sleep(200);
+			assertTrue(slow.cancel(true));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (client.getPool().getConnectionCount() > client.getPool().getIdleCount() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(client.getPool().getIdleCount(), client.getPool().getConnectionCount());
+		}
+	}
+
+	@Test
+	public void testCancelAfterExchange() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			HttpClient.Call call = new HttpClient.Call();
+			HttpClient.Exchange exchange = client.execute(HttpRequest.get(url("/echo")), call);
+			exchange.body.close(); //Returns the connection to the pool before the call completes
+			assertTrue(call.cancel(true));
+
+			assertEquals(1, client.getPool().getIdleCount());
+			assertEquals("GET:", client.get(url("/echo")).getBodyAsString());
+			assertEquals(1, client.getPool().getCreated());
+			assertEquals(1, server.getConnections());
+		}
+	}
+
+	@Test
+	public void testPipelined() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			List<HttpRequest> requests = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				requests.add(HttpRequest.get(url("/echo?" + i)));
+			}
+			requests.add(HttpRequest.get(url("/chunked")));
+			List<CompletableFuture<HttpResponse>> futures = client.sendPipelined(requests);
+			for (int i = 0; i < 10; i++) {
+				assertEquals("GET:" + i, futures.get(i).get(10, TimeUnit.SECONDS).getBodyAsString());
+			}
+			assertEquals("hello world", futures.get(10).get(10, TimeUnit.SECONDS).getBodyAsString());
+			assertEquals(1, server.getConnections());
+		}
+	}
+
+	@Test
+	public void testStreaming() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			assertEquals(TEXT, client.get(url("/gzip")).getBodyAsString());
+
+			try (StreamingResponse response = client.stream(HttpRequest.get(url("/gzip")))) {
+				assertEquals(StandardCharsets.ISO_8859_1, response.getCharset());
+				assertEquals(null, response.getHeader("Content-Encoding"));
+				try (Stream<String> lines = response.lines()) {
+					assertEquals(5000, lines.filter("caf\u00e9 line"::equals).count());
+				}
+			}
+
+			try (StreamingResponse response = client.stream(HttpRequest.get(url("/gzip")))) {
+				assertEquals(TEXT.length(), response.forEachChunk(chunk -> assertTrue(chunk.remaining() > 0)));
+			}
+
+			try (StreamingResponse response = client.stream(HttpRequest.get(url("/chunked")))) {
+				assertEquals('h', response.getBody().read());
+			}
+			assertEquals("GET:", client.get(url("/echo")).getBodyAsString());
+			assertEquals(1, server.getConnections());
+		}
+	}
+
+	@Test
+	public void testBatching() throws Exception {
+		try (HttpClient client = new HttpClient(); BatchingClient batching = new BatchingClient(client, 5, 1 << 20, 10, TimeUnit.SECONDS, 100)) {
+			List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 7; i++) {
+				futures.add(batching.post(url("/echo"), "p" + i));
+			}
+			assertEquals("POST:p0\np1\np2\np3\np4", futures.get(0).get(10, TimeUnit.SECONDS).getBodyAsString());
+			assertEquals(2, batching.getPending());
+			batching.flush();
+			assertEquals("POST:p5\np6", futures.get(6).get(10, TimeUnit.SECONDS).getBodyAsString());
+			assertEquals(7, batching.getPosts());
+			assertEquals(2, batching.getRequests());
+
+			List<CompletableFuture<HttpResponse>> gets = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				gets.add(batching.get(url("/delay")));
+			}
+			for (CompletableFuture<HttpResponse> get : gets) {
+				assertEquals("delayed", get.get(10, TimeUnit.SECONDS).getBodyAsString());
+			}
+			assertEquals(4, batching.getCoalescedGets());
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		File directory = Files.createTempDirectory("cache").toFile();
+		try (HttpClient client = new HttpClient()) {
+			ResponseCache cache = new ResponseCache(1 << 20, directory, 1 << 20);
+			client.setCache(cache);
+
+			for (int i = 0; i < 3; i++) {
+				assertEquals("cached", client.get(url("/cached")).getBodyAsString());
+				assertEquals("version", client.get(url("/etag")).getBodyAsString());
+			}
+			assertEquals(4, server.getRequests());
+			assertEquals(2, cache.getHits());
+			assertEquals(2, cache.getRevalidated());
+			assertEquals(2, cache.getMisses());
+
+			cache.clearMemory();
+			assertEquals("cached", client.get(url("/cached")).getBodyAsString());
+			assertEquals(4, server.getRequests());
+		} finally {
+			IOUtil.deleteFile(directory);
+		}
+	}
+
+	@Test
+	public void testCacheAcceptEncoding() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			ResponseCache cache = new ResponseCache(1 << 20);
+			client.setCache(cache);
+
+			HttpRequest raw = HttpRequest.get(url("/cached-gzip")).header("Accept-Encoding", "gzip");
+			assertArrayEquals(GZIPPED, client.send(raw).getBody()); //Not decoded, so never cached
+			assertEquals(TEXT, client.get(url("/cached-gzip")).getBodyAsString());
+			assertEquals(TEXT, client.get(url("/cached-gzip")).getBodyAsString());
+			assertArrayEquals(GZIPPED, client.send(HttpRequest.get(url("/cached-gzip")).header("Accept-Encoding", "gzip")).getBody());
+			assertEquals(1, cache.getHits());
+			assertEquals(3, server.getRequests());
+		}
+	}
+
+	private static byte[] gzip(byte[] data) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+				gzip.write(data);
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test(expected = HttpException.class)
+	public void testCheckStatus() throws IOException {
+		try (HttpClient client = new HttpClient()) {
+			client.get(url("/missing")).checkStatus();
+		}
+	}
+
+}
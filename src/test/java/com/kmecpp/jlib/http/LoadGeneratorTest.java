@@ -0,0 +1,68 @@
+package com.kmecpp.jlib.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kmecpp.jlib.utils.HTTP;
+import com.kmecpp.jlib.utils.NetworkUtil;
+
+public class LoadGeneratorTest {
+
+	private StubServer server;
+
+	@Before
+	public void start() throws IOException {
+		server = new StubServer();
+	}
+
+	@After
+	public void stop() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void testStubServer() throws IOException {
+		server.setPayloadSize(1000);
+		assertEquals(1000, HTTP.read(server.getUrl("/")).length());
+		assertEquals("data", HTTP.postAndRead(server.getUrl("/"), "data"));
+
+		server.handle("/hello", request -> StubServer.Response.text(200, "hello " + request.getQuery()));
+		assertEquals("hello a=1", NetworkUtil.get(server.getUrl("/hello?a=1")));
+		assertEquals(1, server.getConnections());
+		assertEquals(3, server.getRequests());
+
+		server.setStatus(503);
+		try {
+			NetworkUtil.get(server.getUrl("/"));
+			fail();
+		} catch (HttpException e) {
+			assertEquals(503, e.getStatus());
+		}
+	}
+
+	@Test
+	public void testLoadGenerator() throws Exception {
+		server.setLatency(5, TimeUnit.MILLISECONDS);
+		LoadGenerator.Report report = new LoadGenerator(8).run(() -> HTTP.read(server.getUrl("/")), 200, 500, TimeUnit.MILLISECONDS);
+		assertEquals(100, report.getCount());
+		assertEquals(0, report.getErrors());
+		assertTrue(report.getPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(5));
+		assertTrue(report.getPercentile(50) <= report.getPercentile(99));
+		assertTrue(report.getPercentile(99) <= report.getMax());
+		assertTrue(report.getThroughput() > 100);
+
+		server.setStatus(500);
+		report = new LoadGenerator(2).run(() -> NetworkUtil.post(server.getUrl("/"), "x"), 100, 100, TimeUnit.MILLISECONDS);
+		assertEquals(10, report.getCount());
+		assertEquals(10, report.getErrors());
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.kmecpp.jlib.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestPolicyTest {
+
+	private StubServer server;
+	private HttpClient client;
+	private RequestPolicy policy;
+	private final AtomicInteger calls = new AtomicInteger();
+
+	@Before
+	public void start() throws IOException {
+		server = new StubServer();
+		policy = new RequestPolicy().setRetries(2, 1, 5, TimeUnit.MILLISECONDS);
+		client = new HttpClient().setPolicy(policy);
+	}
+
+	@After
+	public void stop() throws IOException {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testRetry() throws IOException {
+		server.handle("/flaky", request -> StubServer.Response.text(calls.incrementAndGet() <= 2 ? 503 : 200, "ok"));
+		HttpResponse response = client.get(server.getUrl("/flaky"));
+		assertEquals(200, response.getStatus());
+		assertEquals(3, calls.get());
+		assertEquals(2, policy.getRetries());
+
+		calls.set(0);
+		response = client.send(HttpRequest.post(server.getUrl("/flaky"), "data", "text/plain"));
+		assertEquals(503, response.getStatus()); //Not idempotent, so not retried
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		policy.setRetries(0, 0, 0, TimeUnit.MILLISECONDS).setCircuitBreaker(3, 200, TimeUnit.MILLISECONDS);
+		server.setStatus(500);
+		URL url = server.getUrl("/");
+		for (int i = 0; i < 5; i++) {
+			assertEquals(500, client.get(url).getStatus()); //The host is up, so these do not count
+		}
+		assertEquals(RequestPolicy.CircuitState.CLOSED, policy.getCircuitState(url));
+
+		server.setStatus(503);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(503, client.get(url).getStatus());
+		}
+		assertEquals(RequestPolicy.CircuitState.OPEN, policy.getCircuitState(url));
+		try {
+			client.get(url);
+			fail();
+		} catch (CircuitOpenException e) {
+			assertEquals(8, server.getRequests());
+			assertEquals(1, policy.getRejections());
+		}
+
+		Thread.sleep(250);
+		server.setStatus(200);
+		assertEquals(200, client.get(url).getStatus()); //Probe
+		assertEquals(RequestPolicy.CircuitState.CLOSED, policy.getCircuitState(url));
+	}
+
+	@Test
+	public void testHedging() throws IOException {
+		policy.setHedging(90);
+		server.handle("/hedge", request -> {
+			if (calls.incrementAndGet() == RequestPolicy.MIN_HEDGE_SAMPLES + 1) {
+				Thread.sleep(3000);
+			}
+			return StubServer.Response.text(200, "ok");
+		});
+		URL url = server.getUrl("/hedge");
+		for (int i = 0; i < RequestPolicy.MIN_HEDGE_SAMPLES; i++) {
+			client.get(url);
+		}
+		assertEquals(0, policy.getHedges());
+
+		long start = System.nanoTime();
+		assertEquals("ok", client.get(url).getBodyAsString());
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, policy.getHedges());
+	}
+
+}
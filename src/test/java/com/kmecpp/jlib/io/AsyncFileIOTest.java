@@ -0,0 +1,84 @@
+package com.kmecpp.jlib.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncFileIOTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadAndWrite() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (AsyncFileIO io = new AsyncFileIO(executor, 2)) {
+			ArrayList<CompletableFuture<Void>> writes = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				writes.add(io.write(new File(folder.getRoot(), "file" + i), "contents of file " + i, StandardCharsets.UTF_8));
+			}
+			CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+
+			ArrayList<CompletableFuture<String>> reads = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				reads.add(io.readString(new File(folder.getRoot(), "file" + i), StandardCharsets.UTF_8));
+			}
+			for (int i = 0; i < 20; i++) {
+				assertEquals("contents of file " + i, reads.get(i).get());
+			}
+			assertEquals(0, io.getInFlight());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueuedFailures() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch blocked = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try (AsyncFileIO io = new AsyncFileIO(executor, 1)) {
+			File missing = new File(folder.getRoot(), "missing");
+			ArrayList<CompletableFuture<byte[]>> reads = new ArrayList<>();
+			for (int i = 0; i < 10000; i++) {
+				reads.add(io.readBytes(missing));
+			}
+			assertEquals(1, io.getInFlight());
+			blocked.countDown(); //Every read fails immediately once it starts
+
+			for (CompletableFuture<byte[]> read : reads) {
+				try {
+					read.get();
+					fail();
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof NoSuchFileException);
+				}
+			}
+			assertEquals(0, io.getInFlight());
+			assertEquals(0, io.getQueued());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.kmecpp.jlib.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.kmecpp.jlib.utils.IOUtil;
+import com.kmecpp.jlib.utils.StringUtil;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		byte[] bytes = BufferPool.acquireBytes(1000);
+		assertEquals(4096, bytes.length);
+		BufferPool.release(bytes);
+		assertSame(bytes, BufferPool.acquireBytes(4000));
+		BufferPool.release(bytes);
+
+		ByteBuffer buffer = BufferPool.acquireDirect(5000);
+		assertTrue(buffer.isDirect());
+		assertEquals(1 << 14, buffer.capacity());
+		buffer.put((byte) 1);
+		BufferPool.release(buffer);
+		ByteBuffer reused = BufferPool.acquireDirect(1 << 14);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		BufferPool.release(reused);
+
+		char[] large = BufferPool.acquireChars((1 << 18) + 1);
+		assertEquals((1 << 18) + 1, large.length);
+	}
+
+	@Test
+	public void testSharedPool() throws Exception {
+		AtomicBoolean reused = new AtomicBoolean();
+		Thread thread = new Thread(() -> {
+			char[][] arrays = new char[3][];
+			drain(); //Empty the shared pool other tests released into
+			for (int i = 0; i < arrays.length; i++) {
+				arrays[i] = BufferPool.acquireChars(1 << 18);
+			}
+			for (char[] array : arrays) {
+				BufferPool.release(array); //Only the first fits in the thread cache
+			}
+			List<char[]> acquired = new ArrayList<>();
+			for (int i = 0; i < arrays.length; i++) {
+				acquired.add(BufferPool.acquireChars(1 << 18));
+			}
+			reused.set(acquired.containsAll(Arrays.asList(arrays)));
+		});
+		thread.start();
+		thread.join();
+		assertTrue(reused.get());
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + i % 26);
+		}
+		assertTrue(Arrays.equals(data, IOUtil.readBytes(new ByteArrayInputStream(data))));
+
+		String text = new String(data, "US-ASCII");
+		long hits = BufferPool.getHits();
+		assertEquals(text, StringUtil.read(new StringReader(text)));
+		assertEquals(text, StringUtil.read(new StringReader(text)));
+		assertTrue(BufferPool.getHits() > hits);
+	}
+
+	private static void drain() {
+		for (int size = 1 << 12; size <= 1 << 18; size <<= 2) {
+			for (int i = 0; i < 3; i++) {
+				BufferPool.acquireBytes(size);
+				BufferPool.acquireChars(size);
+				BufferPool.acquireDirect(size);
+			}
+		}
+	}
+
+}
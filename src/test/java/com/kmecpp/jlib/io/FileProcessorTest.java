@@ -0,0 +1,50 @@
+package com.kmecpp.jlib.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testProcess() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		ArrayList<String> expected = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			String line = (i % 7 == 0 ? "ERROR " : "INFO ") + i;
+			expected.add(line);
+			sb.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		File file = folder.newFile("log.txt");
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		FileProcessor processor = new FileProcessor(ForkJoinPool.commonPool(), 4096, StandardCharsets.UTF_8);
+		FileProcessor.Result<ArrayList<String>> result = processor.process(file, ArrayList::new, ArrayList::add, (a, b) -> {
+			a.addAll(b);
+			return a;
+		});
+		assertEquals(expected, result.getValue());
+		assertEquals(10000, result.getLines());
+		assertEquals(file.length(), result.getBytes());
+		assertTrue(result.getChunks() > 1);
+
+		FileProcessor.Result<long[]> errors = processor.process(file, () -> new long[1],
+				(count, line) -> count[0] += line.startsWith("ERROR") ? 1 : 0,
+				(a, b) -> new long[] { a[0] + b[0] });
+		assertEquals(1429, errors.getValue()[0]);
+	}
+
+}
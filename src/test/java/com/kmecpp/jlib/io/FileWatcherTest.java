@@ -0,0 +1,54 @@
+package com.kmecpp.jlib.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileWatcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCoalesce() {
+		assertEquals(FileChange.Kind.CREATED, FileChange.Kind.CREATED.merge(FileChange.Kind.MODIFIED));
+		assertEquals(null, FileChange.Kind.CREATED.merge(FileChange.Kind.DELETED));
+		assertEquals(FileChange.Kind.MODIFIED, FileChange.Kind.DELETED.merge(FileChange.Kind.CREATED));
+		assertEquals(FileChange.Kind.DELETED, FileChange.Kind.MODIFIED.merge(FileChange.Kind.DELETED));
+	}
+
+	@Test
+	public void testWatchFile() throws Exception {
+		Path watched = folder.newFile("watched.txt").toPath();
+		Path other = folder.getRoot().toPath().resolve("other.txt");
+		LinkedBlockingQueue<List<FileChange>> batches = new LinkedBlockingQueue<>();
+
+		try (FileWatcher watcher = new FileWatcher(200, TimeUnit.MILLISECONDS, Runnable::run)) {
+			Closeable registration = watcher.watch(watched, batches::add);
+			for (int i = 0; i < 5; i++) {
+				Files.write(watched, ("update " + i).getBytes());
+			}
+			Files.write(other, "ignored".getBytes());
+
+			List<FileChange> changes = batches.poll(30, TimeUnit.SECONDS);
+			assertEquals(1, changes.size());
+			assertEquals(watched, changes.get(0).getPath());
+			assertEquals(FileChange.Kind.MODIFIED, changes.get(0).getKind());
+
+			registration.close();
+			Files.write(watched, "after close".getBytes());
+			assertTrue(batches.poll(1, TimeUnit.SECONDS) == null);
+		}
+	}
+
+}
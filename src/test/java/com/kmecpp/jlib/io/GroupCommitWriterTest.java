@@ -0,0 +1,81 @@
+package com.kmecpp.jlib.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GroupCommitWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		File file = folder.newFile("batched.txt");
+		try (GroupCommitWriter writer = new GroupCommitWriter(file.toPath(), StandardCharsets.UTF_8, true)) {
+			List<CompletableFuture<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				futures.add(writer.append("record " + i + "\n"));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+			assertEquals(1000, writer.getRecords());
+			assertTrue("Writes were not batched: " + writer.getBatches(), writer.getBatches() < writer.getRecords());
+		}
+		assertEquals(1000, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	@Test
+	public void testAppendAfterClose() throws Exception {
+		GroupCommitWriter writer = new GroupCommitWriter(folder.newFile("closed.txt").toPath(), StandardCharsets.UTF_8, false);
+		writer.close();
+		try {
+			writer.append("late");
+			fail();
+		} catch (IOException e) {
+			//Closed
+		}
+	}
+
+	@Test
+	public void testConcurrentAppends() throws Exception {
+		File file = folder.newFile("log.txt");
+		ArrayList<Thread> threads = new ArrayList<>();
+		try (GroupCommitWriter writer = new GroupCommitWriter(file.toPath(), StandardCharsets.UTF_8, false)) {
+			for (int t = 0; t < 4; t++) {
+				final int id = t;
+				Thread thread = new Thread(() -> {
+					for (int i = 0; i < 1000; i++) {
+						try {
+							writer.write("thread " + id + " record " + i + "\n");
+						} catch (IOException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(4000, writer.getRecords());
+		}
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(4000, lines.size());
+		assertTrue(lines.contains("thread 3 record 999"));
+	}
+
+}
@@ -0,0 +1,170 @@
+package com.kmecpp.jlib.reflection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ReflectionTest {
+
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Marker {
+	}
+
+	public static class Target {
+
+		@Marker
+		private int count;
+		private long total;
+		private String name = "target";
+
+		public Target() {
+		}
+
+		public Target(String name) {
+			this.name = name;
+		}
+
+		private Target(String name, Integer count) {
+			this.name = name;
+			this.count = count;
+		}
+
+		private Integer add(Integer a, Integer b) {
+			return a + b;
+		}
+
+		private String add(String a, String b) {
+			return a + b;
+		}
+
+		@Marker
+		private void increment() {
+			count++;
+		}
+
+		private static String echo(Object obj) {
+			return String.valueOf(obj);
+		}
+
+	}
+
+	@Test
+	public void testInvokeMethod() {
+		Target target = new Target();
+		assertEquals(Integer.valueOf(5), Reflection.invokeMethod(target, "add", 2, 3));
+		assertEquals("ab", Reflection.invokeMethod(target, "add", "a", "b"));
+		assertNull(Reflection.invokeMethod(target, "increment"));
+		assertEquals(1, target.count);
+		assertEquals("test", Reflection.invokeStaticMethod(Target.class, "echo", "test"));
+
+		long hits = MethodCache.getHits();
+		for (int i = 0; i < 10; i++) {
+			Reflection.invokeMethod(target, "increment");
+		}
+		assertEquals(11, target.count);
+		assertTrue(MethodCache.getHits() >= hits + 10);
+	}
+
+	@Test
+	public void testFieldAccessor() throws Exception {
+		Target target = new Target();
+		FieldAccessor total = Reflection.getFieldAccessor(Target.class.getDeclaredField("total"));
+		total.setLong(target, 42L);
+		assertEquals(42L, total.getLong(target));
+		assertEquals(42L, total.get(target));
+
+		Reflection.setField(Target.class, target, "name", "renamed");
+		assertEquals("renamed", Reflection.getFieldValue(target, "name"));
+		assertSame(Reflection.getFieldAccessor(Target.class, "name"), Reflection.getFieldAccessor(target, "name"));
+	}
+
+	@Test
+	public void testReadOnlyFieldAccessor() {
+		String value = "captured";
+		Runnable lambda = () -> value.length();
+		FieldAccessor accessor = Reflection.getFieldAccessor(lambda.getClass().getDeclaredFields()[0]);
+		assertEquals(value, accessor.get(lambda)); //Lambdas are hidden classes on newer JVMs, whose finals have no setter
+	}
+
+	@Test(expected = ReflectionException.class)
+	public void testFieldAccessorTypeMismatch() {
+		Reflection.getFieldAccessor(Target.class, "total").getInt(new Target());
+	}
+
+	@Test
+	public void testInvokeMethodException() {
+		try {
+			Reflection.invokeStaticMethod(Integer.class, "parseInt", "invalid");
+			fail();
+		} catch (ReflectionException e) {
+			assertTrue(e.getCause() instanceof InvocationTargetException);
+			assertTrue(e.getCause().getCause() instanceof NumberFormatException);
+		}
+	}
+
+	@Test
+	public void testGetSubclasses() {
+		HashSet<Class<RuntimeException>> subclasses = Reflection.getSubclasses("com.kmecpp.jlib.reflection", RuntimeException.class);
+		assertEquals(Collections.singleton(ReflectionException.class), subclasses);
+	}
+
+	@Test
+	public void testAnnotatedMembers() throws Exception {
+		Field[] fields = Reflection.getFieldsWith(Target.class, Marker.class);
+		assertArrayEquals(new Field[] { Target.class.getDeclaredField("count") }, fields);
+		assertArrayEquals(fields, Reflection.getFieldsWith(new Target(), Marker.class));
+		fields[0] = null;
+		assertArrayEquals(new Field[] { Target.class.getDeclaredField("count") }, Reflection.getFieldsWith(Target.class, Marker.class));
+
+		Method[] methods = Reflection.getMethodsWith(Target.class, Marker.class);
+		assertArrayEquals(new Method[] { Target.class.getDeclaredMethod("increment") }, methods);
+		assertEquals(0, Reflection.getMethodsWith(Target.class, Deprecated.class).length);
+
+		ClassMetadata metadata = ClassMetadata.of(Target.class);
+		assertSame(metadata.getFieldsWith(Marker.class), metadata.getFieldsWith(Marker.class));
+		try {
+			metadata.getMethodsWith(Marker.class).clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			//Cached lists are read only
+		}
+	}
+
+	@Test
+	public void testInstanceFactory() {
+		assertEquals("target", Reflection.getInstanceFactory(Target.class).newInstance().name);
+		assertEquals("factory", Reflection.getInstanceFactory(Target.class, String.class).newInstance("factory").name);
+
+		Target target = Reflection.newInstance(Target.class, "private", 3);
+		assertEquals("private", target.name);
+		assertEquals(3, target.count);
+	}
+
+	@Test
+	public void testInstanceFactoryChildClassLoader() throws Exception {
+		URL location = ReflectionTest.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { location }, null)) {
+			Class<?> isolated = loader.loadClass(Target.class.getName());
+			assertNotSame(Target.class, isolated);
+			assertSame(isolated, Reflection.getInstanceFactory(isolated).newInstance().getClass());
+			assertSame(isolated, Reflection.getInstanceFactory(isolated, String.class).newInstance("child").getClass());
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.kmecpp.jlib.reflection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanIndexTest {
+
+	private static final String PACKAGE = "com.kmecpp.jlib.reflection";
+	private static final String INDEXED = PACKAGE + ".Indexed";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFingerprint() throws IOException {
+		File root = folder.newFolder("classes");
+		copyClass(root, ClassInfo.class);
+		ScanIndex.generate(root);
+		long[] fingerprint = ScanIndex.fingerprint(root);
+
+		ScanIndex.generate(root);
+		assertArrayEquals(fingerprint, ScanIndex.fingerprint(root)); //The index itself is excluded
+
+		copyClass(root, ScanIndex.class);
+		assertFalse(Arrays.equals(fingerprint, ScanIndex.fingerprint(root)));
+	}
+
+	@Test
+	public void testEmbeddedIndex() throws IOException {
+		File root = folder.newFolder("classes");
+		copyClass(root, ClassInfo.class);
+		copyClass(root, ScanIndex.class);
+		assertEquals(2, ScanIndex.generate(root));
+		assertEquals(names(ClassInfo.class, ScanIndex.class), scan(root));
+
+		addIndexEntry(root); //Only visible if the index is used
+		assertEquals(names(ClassInfo.class, ScanIndex.class, INDEXED), scan(root));
+
+		copyClass(root, ClassScanner.class);
+		assertEquals(names(ClassInfo.class, ScanIndex.class, ClassScanner.class), scan(root));
+
+		assertEquals(3, ScanIndex.generate(root));
+		addIndexEntry(root);
+		assertEquals(names(ClassInfo.class, ScanIndex.class, ClassScanner.class, INDEXED), scan(root));
+	}
+
+	@Test
+	public void testPersistentIndex() throws IOException {
+		File root = folder.newFolder("classes");
+		copyClass(root, ClassInfo.class);
+		File file = new File(folder.getRoot(), "scan.idx");
+
+		ScanIndex index = new ScanIndex(file);
+		List<ClassInfo> classes = ClassScanner.scanAll(root);
+		index.put(root, 1, 2, classes);
+		index.put(folder.getRoot(), 3, 4, classes);
+		assertFalse(file.exists()); //Written once by flush
+		index.flush();
+		assertTrue(file.isFile());
+
+		ScanIndex loaded = new ScanIndex(file);
+		assertEquals(ClassInfo.class.getName(), loaded.get(root, 1, 2).get(0).getName());
+		assertNull(loaded.get(root, 1, 3));
+
+		File defaultFile = new File(folder.getRoot(), "default.idx");
+		ScanIndex.setDefault(defaultFile);
+		try {
+			assertEquals(names(ClassInfo.class), scan(root));
+			assertTrue(defaultFile.isFile());
+			long[] fingerprint = ScanIndex.fingerprint(root);
+			assertEquals(1, new ScanIndex(defaultFile).get(root, fingerprint[0], fingerprint[1]).size());
+		} finally {
+			ScanIndex.setDefault(null);
+		}
+	}
+
+	private static void copyClass(File root, Class<?> cls) throws IOException {
+		File file = new File(root, cls.getName().replace('.', '/') + ".class");
+		file.getParentFile().mkdirs();
+		try (InputStream in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+			Files.copy(in, file.toPath());
+		}
+	}
+
+	private static void addIndexEntry(File root) throws IOException {
+		String entry = "1\t" + INDEXED + "\tjava.lang.Object\t\t\n";
+		Files.write(new File(root, ScanIndex.ENTRY).toPath(), entry.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+	}
+
+	private static TreeSet<String> scan(File root) {
+		TreeSet<String> names = new TreeSet<>();
+		for (ClassInfo info : ClassScanner.scan(new File(root, ClassScanner.toPath(PACKAGE)), PACKAGE)) {
+			names.add(info.getName());
+		}
+		return names;
+	}
+
+	private static TreeSet<String> names(Object... classes) {
+		TreeSet<String> names = new TreeSet<>();
+		for (Object c : classes) {
+			names.add(c instanceof Class ? ((Class<?>) c).getName() : (String) c);
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,165 @@
+package com.kmecpp.jlib.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PipelineHandlerTest {
+
+	@Test
+	public void testLineCodec() throws IOException {
+		LineCodec codec = new LineCodec(8);
+		ByteBuffer data = ByteBuffer.wrap("one\r\ntwo\nthr".getBytes(StandardCharsets.UTF_8));
+		assertEquals("one", toString(codec.decode(data)));
+		assertEquals("two", toString(codec.decode(data)));
+		assertNull(codec.decode(data));
+		assertEquals(3, data.remaining());
+
+		try {
+			codec.decode(ByteBuffer.wrap("123456789\n".getBytes(StandardCharsets.UTF_8)));
+			fail();
+		} catch (IOException e) {
+			//Too long
+		}
+	}
+
+	@Test
+	public void testLengthPrefixedCodec() throws IOException {
+		LengthPrefixedCodec codec = new LengthPrefixedCodec();
+		ByteBuffer data = ByteBuffer.allocate(64);
+		for (ByteBuffer buffer : codec.encode(ByteBuffer.wrap("hello".getBytes(StandardCharsets.UTF_8)))) {
+			data.put(buffer);
+		}
+		data.put((byte) 0).flip();
+		assertEquals("hello", toString(codec.decode(data)));
+		assertNull(codec.decode(data));
+		assertEquals(1, data.remaining());
+	}
+
+	@Test
+	public void testMaxFrameLength() {
+		new LengthPrefixedCodec(Connection.MAX_READ_BUFFER - 4);
+		new LineCodec(Connection.MAX_READ_BUFFER - 2);
+		for (int length : new int[] { 0, Connection.MAX_READ_BUFFER, Integer.MAX_VALUE }) {
+			try {
+				new LengthPrefixedCodec(length);
+				fail();
+			} catch (IllegalArgumentException e) {
+				//Can never be decoded
+			}
+			try {
+				new LineCodec(length);
+				fail();
+			} catch (IllegalArgumentException e) {
+				//Can never be decoded
+			}
+		}
+	}
+
+	@Test
+	public void testPipelineOrder() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		PipelineHandler handler = new PipelineHandler(new LineCodec(), (connection, request) -> CompletableFuture.supplyAsync(() -> {
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return ByteBuffer.wrap(toString(request).toUpperCase().getBytes(StandardCharsets.UTF_8));
+		}, executor), 4);
+
+		try (Server server = Server.create(0, 10, handler); Socket socket = connect(server)) {
+			StringBuilder requests = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				requests.append("request").append(i).append('\n');
+			}
+			socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.UTF_8));
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			for (int i = 0; i < 100; i++) {
+				assertEquals("REQUEST" + i, reader.readLine());
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testPauseResumeStress() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		PipelineHandler handler = new PipelineHandler(new LineCodec(), (connection, request) -> CompletableFuture.supplyAsync(() -> request, executor), 2);
+		try (Server server = Server.create(0, 10, handler); Socket socket = connect(server)) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			for (int round = 0; round < 50; round++) {
+				StringBuilder requests = new StringBuilder();
+				for (int i = 0; i < 50; i++) {
+					requests.append(round).append('-').append(i).append('\n');
+				}
+				socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.UTF_8));
+				for (int i = 0; i < 50; i++) {
+					assertEquals(round + "-" + i, reader.readLine());
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testWriteCoalescing() throws Exception {
+		AtomicReference<Connection> client = new AtomicReference<>();
+		LengthPrefixedCodec codec = new LengthPrefixedCodec();
+		PipelineHandler handler = new PipelineHandler(codec, (connection, request) -> {
+			client.set(connection);
+			return CompletableFuture.completedFuture(request);
+		});
+
+		try (Server server = Server.create(0, 10, handler); Socket socket = connect(server)) {
+			ByteBuffer requests = ByteBuffer.allocate(200 * 8);
+			for (int i = 0; i < 200; i++) {
+				requests.putInt(4).putInt(i);
+			}
+			socket.getOutputStream().write(requests.array());
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			for (int i = 0; i < 200; i++) {
+				assertEquals(4, in.readInt());
+				assertEquals(i, in.readInt());
+			}
+			assertTrue("Responses were not coalesced: " + client.get().getWriteCalls(), client.get().getWriteCalls() < 200);
+		}
+	}
+
+	private static Socket connect(Server server) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static String toString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
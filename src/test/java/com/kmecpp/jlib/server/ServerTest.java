@@ -0,0 +1,157 @@
+package com.kmecpp.jlib.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ServerTest {
+
+	@Test
+	public void testEcho() throws IOException {
+		try (Server server = Server.create(0, 10); Socket socket = connect(server)) {
+			assertEquals("hello", echo(socket, "hello"));
+			assertEquals("world", echo(socket, "world"));
+			assertEquals(1, server.getClientCount());
+		}
+	}
+
+	@Test
+	public void testMaxClient() throws Exception {
+		try (Server server = Server.create(0, 2)) {
+			Socket first = connect(server);
+			Socket second = connect(server);
+			assertEquals("a", echo(first, "a"));
+			assertEquals("b", echo(second, "b"));
+
+			try (Socket rejected = connect(server)) {
+				assertEquals(-1, rejected.getInputStream().read());
+			}
+			assertEquals(1, server.getRejected());
+
+			first.close();
+			while (server.getClientCount() > 1) {
+				Thread.sleep(10);
+			}
+			try (Socket third = connect(server)) {
+				assertEquals("c", echo(third, "c"));
+			}
+			second.close();
+		}
+	}
+
+	@Test
+	public void testManyConnections() throws IOException {
+		try (EventLoopServer server = Server.create(0, 1000, (connection, data) -> {
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			connection.write(new String(bytes, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8));
+		})) {
+			List<Socket> sockets = new ArrayList<>();
+			try {
+				for (int i = 0; i < 500; i++) {
+					sockets.add(connect(server));
+				}
+				for (int i = 0; i < sockets.size(); i++) {
+					assertEquals("CLIENT" + i, echo(sockets.get(i), "client" + i));
+				}
+				assertEquals(500, server.getClientCount());
+			} finally {
+				for (Socket socket : sockets) {
+					socket.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBlocking() throws Exception {
+		BlockingServer server = Server.createBlocking(0, 2, socket -> {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				writer.write(line + "\n");
+				writer.flush();
+			}
+		});
+		try (Socket first = connect(server); Socket second = connect(server)) {
+			assertEquals("a\n", echo(first, "a\n"));
+			assertEquals("b\n", echo(second, "b\n"));
+			try (Socket rejected = connect(server)) {
+				assertEquals(-1, rejected.getInputStream().read());
+			}
+			assertEquals(2, server.getClientCount());
+			assertEquals(1, server.getRejected());
+
+			assertFalse(server.shutdown(100, TimeUnit.MILLISECONDS)); //Both handlers are blocked reading
+			assertTrue(server.isShuttingDown());
+			assertEquals(-1, first.getInputStream().read());
+			assertEquals(0, server.getClientCount());
+		}
+	}
+
+	@Test
+	public void testGracefulShutdown() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		BlockingServer server = Server.createBlocking(0, 10, socket -> {
+			started.countDown();
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				return;
+			}
+			socket.getOutputStream().write('x');
+		});
+		try (Socket socket = connect(server)) {
+			started.await();
+			assertTrue(server.shutdown(5, TimeUnit.SECONDS));
+			assertEquals('x', socket.getInputStream().read());
+			try (Socket late = new Socket()) {
+				late.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), 1000);
+				fail();
+			} catch (IOException e) {
+				//No longer accepting
+			}
+		}
+	}
+
+	private static Socket connect(Server server) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static String echo(Socket socket, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		socket.getOutputStream().write(bytes);
+		InputStream in = socket.getInputStream();
+		byte[] response = new byte[bytes.length];
+		for (int read = 0; read < response.length;) {
+			int count = in.read(response, read, response.length - read);
+			if (count == -1) {
+				throw new IOException("Connection closed");
+			}
+			read += count;
+		}
+		return new String(response, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.kmecpp.jlib.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IOUtilTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadString() throws IOException {
+		String small = "small file\nwith é two lines";
+		String large = StringUtil.repeat("large é file line\n", 10000);
+		assertEquals(small, IOUtil.readString(write("small.txt", small), StandardCharsets.UTF_8));
+		assertEquals(large, IOUtil.readString(write("large.txt", large), StandardCharsets.UTF_8));
+		assertEquals(large, IOUtil.readString(write("large16.txt", large, StandardCharsets.UTF_16), StandardCharsets.UTF_16));
+		assertArrayEquals(large.getBytes(StandardCharsets.UTF_8), IOUtil.readBytes(new File(folder.getRoot(), "large.txt")));
+	}
+
+	@Test
+	public void testReadURL() throws IOException {
+		byte[] data = StringUtil.repeat("url data\n", 10000).getBytes(StandardCharsets.UTF_8);
+		File file = folder.newFile("url.txt");
+		Files.write(file.toPath(), data);
+		assertArrayEquals(data, IOUtil.readBytes(file.toURI().toURL()));
+
+		ByteBuffer buffer = IOUtil.readBuffer(file.toURI().toURL());
+		assertTrue(buffer.isReadOnly());
+		byte[] mapped = new byte[buffer.remaining()];
+		buffer.get(mapped);
+		assertArrayEquals(data, mapped);
+
+		assertArrayEquals(Arrays.copyOf(data, 10), IOUtil.readBytes(new ByteArrayInputStream(data, 0, 10), 20));
+		assertArrayEquals(data, IOUtil.readBytes(new ByteArrayInputStream(data), 100));
+		assertArrayEquals(data, IOUtil.readBytes(new ByteArrayInputStream(data), IOUtil.MAX_ARRAY_SIZE));
+
+		byte[] large = new byte[20 << 20];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+		assertArrayEquals(large, IOUtil.readBytes(new ByteArrayInputStream(large), large.length));
+	}
+
+	@Test
+	public void testGrow() {
+		assertEquals(8192, IOUtil.grow(4096));
+		assertEquals(IOUtil.MAX_ARRAY_SIZE, IOUtil.grow(1 << 30));
+		try {
+			IOUtil.grow(IOUtil.MAX_ARRAY_SIZE);
+			fail();
+		} catch (OutOfMemoryError e) {
+			//Expected
+		}
+	}
+
+	@Test
+	public void testLines() throws IOException {
+		File file = write("lines.txt", "first\r\n\nthird\nlast");
+		try (Stream<String> lines = IOUtil.lines(file, StandardCharsets.UTF_8)) {
+			assertEquals(Arrays.asList("first", "", "third", "last"), lines.collect(Collectors.toList()));
+		}
+		File utf16 = write("utf16.txt", "a\nb\n", StandardCharsets.UTF_16);
+		try (Stream<String> lines = IOUtil.lines(utf16, StandardCharsets.UTF_16)) {
+			assertEquals(Arrays.asList("a", "b"), lines.collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testParallelLines() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 200000; i++) {
+			String line = "line number " + i + StringUtil.repeat('x', i % 50);
+			expected.add(line);
+			sb.append(line).append('\n');
+		}
+		File file = write("parallel.txt", sb.toString());
+		try (Stream<String> lines = IOUtil.lines(file, StandardCharsets.UTF_8)) {
+			assertEquals(expected, lines.parallel().collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testCopyAndDeleteTree() throws IOException {
+		File source = folder.newFolder("source");
+		for (int i = 0; i < 200; i++) {
+			File dir = new File(source, "dir" + i % 4 + "/sub" + i % 3);
+			dir.mkdirs();
+			Files.write(new File(dir, "file" + i).toPath(), ("content " + i).getBytes(StandardCharsets.UTF_8));
+		}
+		new File(source, "empty").mkdir();
+
+		File destination = new File(folder.getRoot(), "destination");
+		IOUtil.copyFile(source, destination);
+		assertEquals("content 13", IOUtil.readString(new File(destination, "dir1/sub1/file13"), StandardCharsets.UTF_8));
+		assertTrue(new File(destination, "empty").isDirectory());
+
+		IOUtil.deleteFile(destination);
+		assertFalse(destination.exists());
+		assertTrue(source.exists());
+		IOUtil.deleteFile(destination); //Missing files are ignored
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		File file = new File(folder.getRoot(), "state/snapshot.txt");
+		String large = StringUtil.repeat("snapshot ü line\n", 20000);
+		IOUtil.writeAtomic(file, large, StandardCharsets.UTF_8);
+		assertEquals(large, IOUtil.readString(file, StandardCharsets.UTF_8));
+		IOUtil.writeAtomic(file, "replaced", StandardCharsets.UTF_8);
+		assertEquals("replaced", IOUtil.readString(file, StandardCharsets.UTF_8));
+		assertEquals(1, file.getParentFile().list().length);
+
+		if (Files.getFileStore(file.toPath()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r--r--");
+			Files.setPosixFilePermissions(file.toPath(), permissions);
+			IOUtil.writeAtomic(file, "permissions", StandardCharsets.UTF_8);
+			assertEquals(permissions, Files.getPosixFilePermissions(file.toPath()));
+		}
+
+		IOUtil.write(file, "", StandardCharsets.UTF_8);
+		assertEquals(0, file.length());
+	}
+
+	private File write(String name, String text) throws IOException {
+		return write(name, text, StandardCharsets.UTF_8);
+	}
+
+	private File write(String name, String text, Charset charset) throws IOException {
+		File file = folder.newFile(name);
+		Files.write(file.toPath(), text.getBytes(charset));
+		return file;
+	}
+
+}